@@ -57,8 +57,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
-import org.tlhInganHol.android.klingonassistant.service.KwotdService;
-import org.tlhInganHol.android.klingonassistant.service.UpdateDatabaseService;
+import org.tlhInganHol.android.klingonassistant.service.SyncService;
 
 // import android.support.design.widget.Snackbar;
 
@@ -93,17 +92,23 @@ public class BaseActivity extends AppCompatActivity
   // For beta languages, query for autotranslated definitions.
   private static final String QUERY_FOR_AUTOTRANSLATED_DEFINITIONS = "[AUTOTRANSLATED]";
 
-  // Job ID for the KwotdService jobs. Just has to be unique.
-  private static final int KWOTD_SERVICE_PERSISTED_JOB_ID = 0;
-  private static final int KWOTD_SERVICE_ONE_OFF_JOB_ID = 1;
+  // Job IDs for the SyncService jobs. Just have to be unique.
+  private static final int SYNC_SERVICE_PERSISTED_JOB_ID = 20;
+  private static final int KWOTD_ONE_OFF_JOB_ID = 1;
+  private static final int UPDATE_DB_ONE_OFF_JOB_ID = 11;
 
-  // Job ID for the UpdateDatabaseService jobs. Just has to be unique.
-  private static final int UPDATE_DB_SERVICE_PERSISTED_JOB_ID = 10;
-  private static final int UPDATE_DB_SERVICE_ONE_OFF_JOB_ID = 11;
+  // Job IDs of the persisted jobs which ran the KWOTD and update database services separately,
+  // before they were combined into SyncService. These have to be cancelled.
+  private static final int OLD_KWOTD_SERVICE_PERSISTED_JOB_ID = 0;
+  private static final int OLD_UPDATE_DB_SERVICE_PERSISTED_JOB_ID = 10;
 
   // References to UI components.
   private DrawerLayout mDrawer = null;
 
+  // Runs this activity's queries in the background. It's created lazily, since not every activity
+  // queries the database.
+  private QueryRunner mQueryRunner = null;
+
   // Helper method to determine whether the device is (likely) a tablet in horizontal orientation.
   public boolean isHorizontalTablet() {
     // Configuration config = getResources().getConfiguration();
@@ -211,21 +216,32 @@ public class BaseActivity extends AppCompatActivity
     //   drawer.setDrawerLockMode(DrawerLayout.LOCK_MODE_LOCKED_OPEN);
     // }
 
-    // Schedule the KWOTD service if it hasn't already been started.
-    if (sharedPrefs.getBoolean(Preferences.KEY_KWOTD_CHECKBOX_PREFERENCE, /* default */ true)) {
-      runKwotdServiceJob(/* isOneOffJob */ false);
-    }
-
-    // Schedule the update database service if it hasn't already been started.
-    if (sharedPrefs.getBoolean(Preferences.KEY_UPDATE_DB_CHECKBOX_PREFERENCE, /* default */ true)) {
-      runUpdateDatabaseServiceJob(/* isOneOffJob */ false);
-    }
+    // Schedule the sync service if it hasn't already been started.
+    scheduleSyncServiceJob();
 
     // Activate type-to-search for local search. Typing will automatically
     // start a search of the database.
     setDefaultKeyMode(DEFAULT_KEYS_SEARCH_LOCAL);
   }
 
+  @Override
+  protected void onDestroy() {
+    if (mQueryRunner != null) {
+      // Abort any searches which are still running, and close the cursors.
+      mQueryRunner.destroy();
+      mQueryRunner = null;
+    }
+    super.onDestroy();
+  }
+
+  // Returns the runner for this activity's queries. Must only be called on the main thread.
+  protected QueryRunner getQueryRunner() {
+    if (mQueryRunner == null) {
+      mQueryRunner = new QueryRunner(this);
+    }
+    return mQueryRunner;
+  }
+
   @Override
   protected void onResume() {
     super.onResume();
@@ -233,28 +249,12 @@ public class BaseActivity extends AppCompatActivity
     // Change locale to Klingon if Klingon UI option is set.
     updateLocaleConfiguration();
 
-    // Schedule the KWOTD service if it hasn't already been started. It's necessary to do this here
-    // because the setting might have changed in Preferences.
-    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
-    if (sharedPrefs.getBoolean(Preferences.KEY_KWOTD_CHECKBOX_PREFERENCE, /* default */ true)) {
-      runKwotdServiceJob(/* isOneOffJob */ false);
-    } else {
-      // If the preference is unchecked, cancel the persisted job.
-      JobScheduler scheduler = (JobScheduler) getSystemService(Context.JOB_SCHEDULER_SERVICE);
-      scheduler.cancel(KWOTD_SERVICE_PERSISTED_JOB_ID);
-    }
-
-    // Schedule the update database service if it hasn't already been started. It's necessary to do
-    // this here because the setting might have changed in Preferences.
-    if (sharedPrefs.getBoolean(Preferences.KEY_UPDATE_DB_CHECKBOX_PREFERENCE, /* default */ true)) {
-      runUpdateDatabaseServiceJob(/* isOneOffJob */ false);
-    } else {
-      // If the preference is unchecked, cancel the persisted job.
-      JobScheduler scheduler = (JobScheduler) getSystemService(Context.JOB_SCHEDULER_SERVICE);
-      scheduler.cancel(UPDATE_DB_SERVICE_PERSISTED_JOB_ID);
-    }
+    // Schedule the sync service if it hasn't already been started, or cancel it. It's necessary to
+    // do this here because the settings might have changed in Preferences.
+    scheduleSyncServiceJob();
 
     // Put a notification dot in the hamburger menu if a database update is available.
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
     if (sharedPrefs.getBoolean(
         Preferences.KEY_SHOW_UNSUPPORTED_FEATURES_CHECKBOX_PREFERENCE, /* default */ false)) {
       String installedVersion =
@@ -380,9 +380,15 @@ public class BaseActivity extends AppCompatActivity
       MenuItem kwotdButton = menu.findItem(R.id.action_kwotd);
       kwotdButton.setVisible(true);
 
+      MenuItem kwotdHistoryButton = menu.findItem(R.id.action_kwotd_history);
+      kwotdHistoryButton.setVisible(true);
+
       MenuItem updateDatabaseButton = menu.findItem(R.id.action_update_db);
       updateDatabaseButton.setVisible(true);
 
+      MenuItem syncLogButton = menu.findItem(R.id.action_sync_log);
+      syncLogButton.setVisible(true);
+
       final String editLang =
           sharedPrefs.getString(
               Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
@@ -587,27 +593,32 @@ public class BaseActivity extends AppCompatActivity
 
   // Protected method to display the "help" entries.
   protected void displayHelp(String helpQuery) {
-    // Note: managedQuery is deprecated since API 11.
-    Cursor cursor =
-        managedQuery(
+    getQueryRunner()
+        .query(
             Uri.parse(KlingonContentProvider.CONTENT_URI + "/lookup"),
             null /* all columns */,
-            null,
             new String[] {helpQuery},
-            null);
-    // Assume cursor.getCount() == 1.
-    Uri uri =
-        Uri.parse(
-            KlingonContentProvider.CONTENT_URI
-                + "/get_entry_by_id/"
-                + cursor.getString(KlingonContentDatabase.COLUMN_ID));
-
-    Intent entryIntent = new Intent(this, EntryActivity.class);
-
-    // Form the URI for the entry.
-    entryIntent.setData(uri);
-
-    startActivity(entryIntent);
+            new QueryRunner.Callback<Cursor>() {
+              @Override
+              public void onQueryComplete(Cursor cursor) {
+                // Assume cursor.getCount() == 1.
+                if (cursor == null || !cursor.moveToFirst()) {
+                  return;
+                }
+                Uri uri =
+                    Uri.parse(
+                        KlingonContentProvider.CONTENT_URI
+                            + "/get_entry_by_id/"
+                            + cursor.getString(KlingonContentDatabase.COLUMN_ID));
+
+                Intent entryIntent = new Intent(BaseActivity.this, EntryActivity.class);
+
+                // Form the URI for the entry.
+                entryIntent.setData(uri);
+
+                startActivity(entryIntent);
+              }
+            });
   }
 
   // Protected method to display the prefix chart.
@@ -664,10 +675,16 @@ public class BaseActivity extends AppCompatActivity
           return true;
         */
       case R.id.action_kwotd:
-        runKwotdServiceJob(/* isOneOffJob */ true);
+        runKwotdServiceJob();
+        return true;
+      case R.id.action_kwotd_history:
+        startActivity(new Intent(this, KwotdHistoryActivity.class));
         return true;
       case R.id.action_update_db:
-        runUpdateDatabaseServiceJob(/* isOneOffJob */ true);
+        runUpdateDatabaseServiceJob();
+        return true;
+      case R.id.action_sync_log:
+        startActivity(new Intent(this, SyncLogActivity.class));
         return true;
       case R.id.action_autotranslate:
         displaySearchResults(QUERY_FOR_AUTOTRANSLATED_DEFINITIONS);
@@ -686,144 +703,98 @@ public class BaseActivity extends AppCompatActivity
     return super.onOptionsItemSelected(item);
   }
 
-  // Helper method to run the KWOTD service job. If isOneOffJob is set to true,
-  // this will trigger a job immediately which runs only once. Otherwise, this
-  // will schedule a job to run once every 24 hours, if one hasn't already been
-  // scheduled.
-  protected void runKwotdServiceJob(boolean isOneOffJob) {
-    boolean jobAlreadyExists = false;
+  // Helper method to schedule the persisted sync service job, which fetches the KWOTD and checks
+  // for a database update in a single network window, if either is turned on and the job hasn't
+  // already been scheduled. If both are turned off, the job is cancelled.
+  protected void scheduleSyncServiceJob() {
     JobScheduler scheduler = (JobScheduler) getSystemService(Context.JOB_SCHEDULER_SERVICE);
-    if (!isOneOffJob) {
-      // Check if persisted job is already running.
-      for (JobInfo jobInfo : scheduler.getAllPendingJobs()) {
-        if (jobInfo.getId() == KWOTD_SERVICE_PERSISTED_JOB_ID) {
-          // Log.d(TAG, "KWOTD job already exists.");
-          jobAlreadyExists = true;
-          break;
-        }
-      }
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
+    if (!sharedPrefs.getBoolean(Preferences.KEY_KWOTD_CHECKBOX_PREFERENCE, /* default */ true)
+        && !sharedPrefs.getBoolean(
+            Preferences.KEY_UPDATE_DB_CHECKBOX_PREFERENCE, /* default */ true)) {
+      scheduler.cancel(SYNC_SERVICE_PERSISTED_JOB_ID);
+      return;
     }
 
-    // Start job.
-    if (!jobAlreadyExists) {
-      JobInfo.Builder builder;
-
-      if (isOneOffJob) {
-        // A one-off request to the KWOTD server needs Internet access.
-        ConnectivityManager cm =
-            (ConnectivityManager) getBaseContext().getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-        if (activeNetwork == null || !activeNetwork.isConnectedOrConnecting()) {
-          // Inform the user the fetch will happen when there is an Internet connection.
-          Toast.makeText(
-                  this,
-                  getResources().getString(R.string.kwotd_requires_internet),
-                  Toast.LENGTH_LONG)
-              .show();
-        } else {
-          // Inform the user operation is under way.
-          Toast.makeText(
-                  this, getResources().getString(R.string.kwotd_fetching), Toast.LENGTH_SHORT)
-              .show();
-        }
-
-        // Either way, schedule the job for when Internet access is available.
-        builder =
-            new JobInfo.Builder(
-                KWOTD_SERVICE_ONE_OFF_JOB_ID, new ComponentName(this, KwotdService.class));
-        builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
-
-      } else {
-        // Set the job to run every 24 hours, during a window with network connectivity, and
-        // exponentially back off if it fails with a delay of 1 hour. (Note that Android caps the
-        // backoff at 5 hours, so this will retry at 1 hour, 2 hours, and 4 hours, before it
-        // gives up.)
-        builder =
-            new JobInfo.Builder(
-                KWOTD_SERVICE_PERSISTED_JOB_ID, new ComponentName(this, KwotdService.class));
-        builder.setPeriodic(TimeUnit.HOURS.toMillis(24));
-        builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
-        builder.setBackoffCriteria(TimeUnit.HOURS.toMillis(1), JobInfo.BACKOFF_POLICY_EXPONENTIAL);
-        builder.setRequiresCharging(false);
-        builder.setPersisted(true);
+    // Check if persisted job is already running.
+    for (JobInfo jobInfo : scheduler.getAllPendingJobs()) {
+      if (jobInfo.getId() == SYNC_SERVICE_PERSISTED_JOB_ID) {
+        // Log.d(TAG, "Sync job already exists.");
+        return;
       }
+    }
+    scheduler.cancel(OLD_KWOTD_SERVICE_PERSISTED_JOB_ID);
+    scheduler.cancel(OLD_UPDATE_DB_SERVICE_PERSISTED_JOB_ID);
+
+    // Set the job to run every 24 hours, during a window with unmetered network connectivity while
+    // the device is charging, so that it doesn't wake the radio up on its own. Exponentially back
+    // off if a task fails (or the KWOTD hasn't changed yet) with a delay of 1 hour. (Note that
+    // Android caps the backoff at 5 hours, so this will retry at 1 hour, 2 hours, and 4 hours,
+    // before it gives up.) Each task decides for itself whether it's due, so the database is only
+    // checked about once a month.
+    JobInfo.Builder builder =
+        new JobInfo.Builder(
+            SYNC_SERVICE_PERSISTED_JOB_ID, new ComponentName(this, SyncService.class));
+    builder.setPeriodic(TimeUnit.HOURS.toMillis(24));
+    builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED);
+    builder.setBackoffCriteria(TimeUnit.HOURS.toMillis(1), JobInfo.BACKOFF_POLICY_EXPONENTIAL);
+    builder.setRequiresCharging(true);
+    builder.setPersisted(true);
+
+    Log.d(TAG, "Scheduling SyncService persisted job");
+    scheduler.schedule(builder.build());
+  }
 
-      // Pass custom params to job.
-      PersistableBundle extras = new PersistableBundle();
-      extras.putBoolean(KwotdService.KEY_IS_ONE_OFF_JOB, isOneOffJob);
-      builder.setExtras(extras);
+  // Helper method to fetch the KWOTD right away, in a one-off sync service job.
+  protected void runKwotdServiceJob() {
+    runOneOffSyncServiceJob(
+        KWOTD_ONE_OFF_JOB_ID,
+        SyncService.TASK_KWOTD,
+        R.string.kwotd_requires_internet,
+        R.string.kwotd_fetching);
+  }
 
-      Log.d(TAG, "Scheduling KwotdService job, isOneOffJob: " + isOneOffJob);
-      scheduler.schedule(builder.build());
-    }
+  // Helper method to check for a database update right away, in a one-off sync service job.
+  protected void runUpdateDatabaseServiceJob() {
+    runOneOffSyncServiceJob(
+        UPDATE_DB_ONE_OFF_JOB_ID,
+        SyncService.TASK_UPDATE_DATABASE,
+        R.string.update_db_requires_internet,
+        R.string.update_db_fetching);
   }
 
-  // Helper method to run the update database service job. If isOneOffJob is set to true,
-  // this will trigger a job immediately which runs only once. Otherwise, this
-  // will schedule a job to run once every 30 days, if one hasn't already been
-  // scheduled.
-  // TODO: Refactor and combine with runKwotdServiceJob.
-  protected void runUpdateDatabaseServiceJob(boolean isOneOffJob) {
-    boolean jobAlreadyExists = false;
-    JobScheduler scheduler = (JobScheduler) getSystemService(Context.JOB_SCHEDULER_SERVICE);
-    if (!isOneOffJob) {
-      // Check if persisted job is already running.
-      for (JobInfo jobInfo : scheduler.getAllPendingJobs()) {
-        if (jobInfo.getId() == UPDATE_DB_SERVICE_PERSISTED_JOB_ID) {
-          // Log.d(TAG, "Update database job already exists.");
-          jobAlreadyExists = true;
-          break;
-        }
-      }
+  // Helper method to trigger a sync service job immediately which runs the given task only once.
+  private void runOneOffSyncServiceJob(
+      int jobId, String taskName, int requiresInternetResId, int fetchingResId) {
+    // A one-off request to the server needs Internet access.
+    ConnectivityManager cm =
+        (ConnectivityManager) getBaseContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+    NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+    if (activeNetwork == null || !activeNetwork.isConnectedOrConnecting()) {
+      // Inform the user the fetch will happen when there is an Internet connection.
+      Toast.makeText(this, getResources().getString(requiresInternetResId), Toast.LENGTH_LONG)
+          .show();
+    } else {
+      // Inform the user operation is under way.
+      Toast.makeText(this, getResources().getString(fetchingResId), Toast.LENGTH_SHORT).show();
     }
 
-    // Start job.
-    if (!jobAlreadyExists) {
-      JobInfo.Builder builder;
-
-      if (isOneOffJob) {
-        // A one-off request to the update database server needs Internet access.
-        ConnectivityManager cm =
-            (ConnectivityManager) getBaseContext().getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-        if (activeNetwork == null || !activeNetwork.isConnectedOrConnecting()) {
-          // Inform the user the fetch will happen when there is an Internet connection.
-          Toast.makeText(
-                  this,
-                  getResources().getString(R.string.update_db_requires_internet),
-                  Toast.LENGTH_LONG)
-              .show();
-        } else {
-          // Inform the user operation is under way.
-          Toast.makeText(
-                  this, getResources().getString(R.string.update_db_fetching), Toast.LENGTH_SHORT)
-              .show();
-        }
+    // Either way, schedule the job for when Internet access is available. For a one-off job, we
+    // don't care if Internet access is metered or the device isn't charging, since the job was
+    // triggered by the user.
+    JobInfo.Builder builder =
+        new JobInfo.Builder(jobId, new ComponentName(this, SyncService.class));
+    builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
 
-        // Either way, schedule the job for when Internet access is available. For a one-off job,
-        // we don't care if Internet access is metered, since the job was triggered by the user.
-        builder =
-            new JobInfo.Builder(
-                UPDATE_DB_SERVICE_ONE_OFF_JOB_ID,
-                new ComponentName(this, UpdateDatabaseService.class));
-        builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
-
-      } else {
-        // Set the job to run every 30 days, during a window with unmetered network connectivity.
-        builder =
-            new JobInfo.Builder(
-                UPDATE_DB_SERVICE_PERSISTED_JOB_ID,
-                new ComponentName(this, UpdateDatabaseService.class));
-        builder.setPeriodic(TimeUnit.DAYS.toMillis(30));
-        builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED);
-        builder.setBackoffCriteria(TimeUnit.HOURS.toMillis(1), JobInfo.BACKOFF_POLICY_EXPONENTIAL);
-        builder.setRequiresCharging(false);
-        builder.setPersisted(true);
-      }
+    // Pass custom params to job.
+    PersistableBundle extras = new PersistableBundle();
+    extras.putBoolean(SyncService.KEY_IS_ONE_OFF_JOB, true);
+    extras.putStringArray(SyncService.KEY_TASK_NAMES, new String[] {taskName});
+    builder.setExtras(extras);
 
-      Log.d(TAG, "Scheduling UpdateDatabaseService job, isOneOffJob: " + isOneOffJob);
-      scheduler.schedule(builder.build());
-    }
+    Log.d(TAG, "Scheduling SyncService one-off job for " + taskName);
+    JobScheduler scheduler = (JobScheduler) getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    scheduler.schedule(builder.build());
   }
 
   // Collapse slide-out menu if "Back" key is pressed and it's open.
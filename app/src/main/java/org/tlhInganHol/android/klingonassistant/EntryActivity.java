@@ -16,6 +16,8 @@
 
 package org.tlhInganHol.android.klingonassistant;
 
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
@@ -23,6 +25,8 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.speech.tts.TextToSpeech;
 import android.support.annotation.NonNull;
@@ -43,9 +47,10 @@ import android.view.View;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 /** Displays an entry and its definition. */
 public class EntryActivity extends BaseActivity
@@ -54,6 +59,11 @@ public class EntryActivity extends BaseActivity
 
   private static final String TAG = "EntryActivity";
 
+  // Intent extras for paging through a set of results: the session they were registered in with
+  // ResultSessions, and the position of the entry to show first.
+  public static final String EXTRA_RESULT_SESSION = "result_session";
+  public static final String EXTRA_RESULT_POSITION = "result_position";
+
   // The currently-displayed entry (which can change due to page selection).
   private KlingonContentProvider.Entry mEntry = null;
 
@@ -85,6 +95,18 @@ public class EntryActivity extends BaseActivity
   private PagerAdapter mPagerAdapter;
   private int mEntryIndex = -1;
 
+  // The entries on this many pages on either side of the current one are loaded and rendered in
+  // the background once the pager settles, so that they're shown fully rendered when swiped to.
+  // More are prefetched after a fast fling, since the user is likely to keep going.
+  private static final int PREFETCH_DISTANCE = 1;
+  private static final int FLING_PREFETCH_DISTANCE = 2;
+
+  // Pages selected within this many milliseconds of each other count as a fast fling.
+  private static final long FLING_INTERVAL_MS = 500;
+
+  // The entries being prefetched, so that they're not prefetched twice.
+  private final Set<Integer> mPrefetchingEntryIds = new HashSet<Integer>();
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -107,36 +129,42 @@ public class EntryActivity extends BaseActivity
     // TODO: Disable the "About" menu item if this is the "About" entry.
     // mParentQuery = getIntent().getStringExtra(SearchManager.QUERY);
 
-    // Determine whether we're launching a single entry, or a list of entries.
-    // If it's a single entry, the URI will end in "get_entry_by_id/" followed
-    // by the one ID. In the case of a list, the URI will end in "get_entry_by_id/"
-    // follwoed by a list of comma-separated IDs, with one additional item at the
-    // end for the position of the current entry. For a random entry, the URI will
-    // end in "get_random_entry", with no ID at all.
-    String[] ids = inputUri.getLastPathSegment().split(",");
-    Uri queryUri = null;
-    List<String> entryIdsList = new ArrayList<String>(Arrays.asList(ids));
-    if (entryIdsList.size() == 1) {
-      // There is only one entry to display. Either its ID was explicitly
-      // given, or we want a random entry.
-      queryUri = inputUri;
-      mEntryIndex = 0;
-    } else {
-      // Parse the comma-separated list, the last entry of which is the
-      // position index. We nees to construct the queryUri based on the
-      // intended current entry.
-      mEntryIndex = Integer.parseInt(entryIdsList.get(ids.length - 1));
-      entryIdsList.remove(ids.length - 1);
-      queryUri =
-          Uri.parse(
-              KlingonContentProvider.CONTENT_URI
-                  + "/get_entry_by_id/"
-                  + entryIdsList.get(mEntryIndex));
-    }
+    // Determine whether we're launching a single entry, or paging through a set of results. The
+    // URI is for the entry to show first. It ends in "get_entry_by_id/" followed by its ID, or in
+    // "get_random_entry" for a random entry. For a set of results, the intent also carries the
+    // session the results were registered in, and the position of the entry in them. If the
+    // session is gone (because the process has been restarted), or doesn't have the entry at that
+    // position, only the entry itself is shown.
+    int position = getIntent().getIntExtra(EXTRA_RESULT_POSITION, 0);
+    final int[] sessionEntryIds =
+        ResultSessions.get(
+            getIntent().getLongExtra(EXTRA_RESULT_SESSION, ResultSessions.NO_SESSION),
+            position,
+            inputUri.getLastPathSegment());
+    mEntryIndex = (sessionEntryIds != null) ? position : 0;
+
+    // Retrieve the entry's data in the background, then set up the pager.
+    getQueryRunner()
+        .query(
+            inputUri,
+            KlingonContentDatabase.ALL_KEYS,
+            null,
+            new QueryRunner.Callback<Cursor>() {
+              @Override
+              public void onQueryComplete(Cursor cursor) {
+                if (cursor != null && cursor.moveToFirst()) {
+                  onEntryLoaded(cursor, sessionEntryIds);
+                } else {
+                  // The entry isn't in the database, which can happen if its ID is from an older
+                  // version of the database.
+                  Log.e(TAG, "Entry not found: " + getIntent().getData());
+                  finish();
+                }
+              }
+            });
+  }
 
-    // Retrieve the entry's data.
-    // Note: managedQuery is deprecated since API 11.
-    Cursor cursor = managedQuery(queryUri, KlingonContentDatabase.ALL_KEYS, null, null, null);
+  private void onEntryLoaded(Cursor cursor, int[] sessionEntryIds) {
     final KlingonContentProvider.Entry entry =
         new KlingonContentProvider.Entry(cursor, getBaseContext());
     int entryId = entry.getId();
@@ -144,15 +172,17 @@ public class EntryActivity extends BaseActivity
     // Update the entry, which is used for TTS output. This is also updated in onPageSelected.
     mEntry = entry;
 
-    if (entryIdsList.size() == 1 && entryIdsList.get(0).equals("get_random_entry")) {
-      // For a random entry, replace "get_random_entry" with the ID of randomly
-      // chosen entry.
-      entryIdsList.clear();
-      entryIdsList.add(Integer.toString(entryId));
-    }
+    // Page through the results, if there are any. Otherwise, there is only this entry, which
+    // might have been chosen at random.
+    int[] entryIds = (sessionEntryIds != null) ? sessionEntryIds : new int[] {entryId};
 
     // Set the share intent. This is also done in onPageSelected.
     setShareEntryIntent(entry);
+    if (mShareActionProvider != null && mShareEntryIntent != null) {
+      // The menu was created before the entry was loaded, so enable the "Share" button here.
+      mShareActionProvider.setShareIntent(mShareEntryIntent);
+      mShareButton.setVisible(true);
+    }
 
     // Update the bottom navigation buttons. This is also done in onPageSelected.
     updateBottomNavigationButtons(entryId);
@@ -162,17 +192,18 @@ public class EntryActivity extends BaseActivity
 
     // Instantiate a ViewPager and a PagerAdapter.
     mPager = (ViewPager) findViewById(R.id.entry_pager);
-    mPagerAdapter = new SwipeAdapter(getSupportFragmentManager(), entryIdsList);
+    mPagerAdapter = new SwipeAdapter(getSupportFragmentManager(), entryIds);
     mPager.setAdapter(mPagerAdapter);
     mPager.setCurrentItem(mEntryIndex, /* smoothScroll */ false);
-    mPager.setOnPageChangeListener(new SwipePageChangeListener(entryIdsList));
+    mPager.setOnPageChangeListener(new SwipePageChangeListener(entryIds));
+    prefetchAdjacentEntries(entryIds, mEntryIndex, PREFETCH_DISTANCE);
 
     // Don't display the tab dots if there's only one entry, or if there are 25
     // or more (at which point the dots become not that useful). Note that the
     // entry with the most components at the moment ({cheqotlhchugh...}) has
     // 22 components. The Beginner's Conversation category has over 30 entries,
     // but being able to quickly go between them isn't that useful.
-    if (entryIdsList.size() > 1 && entryIdsList.size() < 25) {
+    if (entryIds.length > 1 && entryIds.length < 25) {
       TabLayout tabLayout = (TabLayout) findViewById(R.id.entry_tab_dots);
       tabLayout.setupWithViewPager(mPager, true);
     }
@@ -325,54 +356,79 @@ public class EntryActivity extends BaseActivity
 
   // Swipe
   private class SwipeAdapter extends FragmentStatePagerAdapter {
-    private List<EntryFragment> entryFragments = null;
+    private final int[] mEntryIds;
 
-    public SwipeAdapter(FragmentManager fm, List<String> entryIdsList) {
+    public SwipeAdapter(FragmentManager fm, int[] entryIds) {
       super(fm);
-
-      // Set up all of the entry fragments.
-      entryFragments = new ArrayList<EntryFragment>();
-      for (int i = 0; i < entryIdsList.size(); i++) {
-        Uri uri =
-            Uri.parse(
-                KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryIdsList.get(i));
-        entryFragments.add(EntryFragment.newInstance(uri));
-      }
+      mEntryIds = entryIds;
     }
 
     @Override
     public Fragment getItem(int position) {
-      return entryFragments.get(position);
+      // The fragments are created as they are paged to, since there can be many results.
+      return EntryFragment.newInstance(mEntryIds[position]);
     }
 
     @Override
     public int getCount() {
-      return entryFragments.size();
+      return mEntryIds.length;
     }
   }
 
   private class SwipePageChangeListener implements ViewPager.OnPageChangeListener {
-    List<String> mEntryIdsList = null;
+    private final int[] mEntryIds;
 
-    public SwipePageChangeListener(List<String> entryIdsList) {
-      mEntryIdsList = entryIdsList;
+    // When the last page was selected, and how long before that the one before it was.
+    private long mLastPageSelectedTime = 0;
+    private long mPageSelectedInterval = Long.MAX_VALUE;
+
+    public SwipePageChangeListener(int[] entryIds) {
+      mEntryIds = entryIds;
     }
 
     @Override
     public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {}
 
     @Override
-    public void onPageSelected(int position) {
+    public void onPageSelected(final int position) {
+      long now = SystemClock.uptimeMillis();
+      mPageSelectedInterval = now - mLastPageSelectedTime;
+      mLastPageSelectedTime = now;
+
+      // Use the entry right away if it has been prefetched, and only go to the database otherwise.
+      KlingonContentProvider.Entry cachedEntry =
+          EntryBodyCache.getEntry(
+              mEntryIds[position], SearchSettings.get(getBaseContext()).getVersion());
+      if (cachedEntry != null) {
+        onPageEntryLoaded(cachedEntry);
+        return;
+      }
+
       Uri uri =
           Uri.parse(
               KlingonContentProvider.CONTENT_URI
                   + "/get_entry_by_id/"
-                  + mEntryIdsList.get(position));
+                  + mEntryIds[position]);
+
+      getQueryRunner()
+          .query(
+              uri,
+              KlingonContentDatabase.ALL_KEYS,
+              null,
+              new QueryRunner.Callback<Cursor>() {
+                @Override
+                public void onQueryComplete(Cursor cursor) {
+                  // Drop the entry if another page has been selected since.
+                  if (cursor != null
+                      && cursor.moveToFirst()
+                      && mPager.getCurrentItem() == position) {
+                    onPageEntryLoaded(new KlingonContentProvider.Entry(cursor, getBaseContext()));
+                  }
+                }
+              });
+    }
 
-      // Note: managedQuery is deprecated since API 11.
-      Cursor cursor = managedQuery(uri, KlingonContentDatabase.ALL_KEYS, null, null, null);
-      final KlingonContentProvider.Entry entry =
-          new KlingonContentProvider.Entry(cursor, getBaseContext());
+    private void onPageEntryLoaded(KlingonContentProvider.Entry entry) {
       int entryId = entry.getId();
 
       // Update the entry (used for TTS output). This is also set in onCreate.
@@ -402,25 +458,155 @@ public class EntryActivity extends BaseActivity
     }
 
     @Override
-    public void onPageScrollStateChanged(int state) {}
+    public void onPageScrollStateChanged(int state) {
+      if (state == ViewPager.SCROLL_STATE_IDLE) {
+        prefetchAdjacentEntries(
+            mEntryIds,
+            mPager.getCurrentItem(),
+            mPageSelectedInterval < FLING_INTERVAL_MS
+                ? FLING_PREFETCH_DISTANCE
+                : PREFETCH_DISTANCE);
+      }
+    }
   }
 
-  private void updateBottomNavigationButtons(int entryId) {
-    BottomNavigationView bottomNavView =
-        (BottomNavigationView) findViewById(R.id.bottom_navigation);
-    Menu bottomNavMenu = bottomNavView.getMenu();
+  // Loads and renders the entries within the given distance of the given page in the background,
+  // nearest first, unless they already have been.
+  private void prefetchAdjacentEntries(int[] entryIds, int position, int distance) {
+    int settingsVersion = SearchSettings.get(getBaseContext()).getVersion();
+    final List<Integer> prefetchEntryIds = new ArrayList<Integer>();
+    for (int offset = 1; offset <= distance; offset++) {
+      for (int adjacentPosition : new int[] {position + offset, position - offset}) {
+        if (adjacentPosition < 0 || adjacentPosition >= entryIds.length) {
+          continue;
+        }
+        int entryId = entryIds[adjacentPosition];
+        if (!mPrefetchingEntryIds.contains(entryId)
+            && (EntryBodyCache.getEntry(entryId, settingsVersion) == null
+                || EntryBodyCache.get(entryId, settingsVersion) == null)) {
+          mPrefetchingEntryIds.add(entryId);
+          prefetchEntryIds.add(entryId);
+        }
+      }
+    }
+    if (prefetchEntryIds.isEmpty()) {
+      return;
+    }
 
-    // Check for a previous entry.
-    mPreviousEntryIntent = null;
-    for (int i = 1; i <= MAX_ENTRY_ID_DIFF; i++) {
-      Intent entryIntent = getEntryByIdIntent(entryId - i);
-      if (entryIntent != null) {
-        mPreviousEntryIntent = entryIntent;
-        break;
+    // The entries are kept beyond the lifetime of this activity, so they're loaded with the
+    // application context.
+    final Context context = getApplicationContext();
+    getQueryRunner()
+        .run(
+            new QueryRunner.Query<Void>() {
+              @Override
+              public Void run(ContentResolver resolver, CancellationSignal cancellationSignal) {
+                prefetchEntries(context, resolver, prefetchEntryIds, cancellationSignal);
+                return null;
+              }
+            },
+            new QueryRunner.Callback<Void>() {
+              @Override
+              public void onQueryComplete(Void result) {
+                mPrefetchingEntryIds.removeAll(prefetchEntryIds);
+              }
+            });
+  }
+
+  // Loads and renders the entries, and caches both for their pages. The entries are loaded with a
+  // single query. This is run in the background.
+  private static void prefetchEntries(
+      Context context,
+      ContentResolver resolver,
+      List<Integer> entryIds,
+      CancellationSignal cancellationSignal) {
+    // The entries capture the settings when they're loaded, so they're cached under those.
+    SearchSettings settings = SearchSettings.get(context);
+    int generation = EntryBodyCache.getGeneration();
+    String[] entryIdArgs = new String[entryIds.size()];
+    for (int i = 0; i < entryIdArgs.length; i++) {
+      entryIdArgs[i] = Integer.toString(entryIds.get(i));
+    }
+    Cursor cursor =
+        resolver.query(
+            Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entries_by_ids"),
+            KlingonContentDatabase.ALL_KEYS,
+            null,
+            entryIdArgs,
+            null,
+            cancellationSignal);
+    if (cursor == null) {
+      return;
+    }
+    List<KlingonContentProvider.Entry> entries = new ArrayList<KlingonContentProvider.Entry>();
+    try {
+      while (cursor.moveToNext()) {
+        entries.add(new KlingonContentProvider.Entry(cursor, context));
+      }
+    } finally {
+      cursor.close();
+    }
+
+    for (KlingonContentProvider.Entry entry : entries) {
+      cancellationSignal.throwIfCanceled();
+      if (EntryBodyCache.get(entry.getId(), settings.getVersion()) == null) {
+        EntryBodyCache.put(
+            entry.getId(),
+            settings.getVersion(),
+            generation,
+            EntryFragment.renderBody(context, entry, settings));
       }
+      EntryBodyCache.putEntry(entry, settings.getVersion(), generation);
     }
+  }
+
+  private void updateBottomNavigationButtons(final int entryId) {
+    // Until the adjacent entries are found, the buttons don't go anywhere.
+    mPreviousEntryIntent = null;
+    mNextEntryIntent = null;
+    getQueryRunner()
+        .run(
+            new QueryRunner.Query<Intent[]>() {
+              @Override
+              public Intent[] run(ContentResolver resolver, CancellationSignal cancellationSignal) {
+                // The provider finds the adjacent IDs in memory. It only reads the IDs from the
+                // database the first time, which is why this isn't run on the main thread.
+                Bundle adjacentIds =
+                    resolver.call(
+                        KlingonContentProvider.CONTENT_URI,
+                        KlingonContentProvider.METHOD_GET_ADJACENT_ENTRY_IDS,
+                        Integer.toString(entryId),
+                        null);
+                if (adjacentIds == null) {
+                  return new Intent[] {null, null};
+                }
+                return new Intent[] {
+                  getAdjacentEntryIntent(
+                      entryId,
+                      adjacentIds.getInt(KlingonContentProvider.KEY_PREVIOUS_ENTRY_ID)),
+                  getAdjacentEntryIntent(
+                      entryId, adjacentIds.getInt(KlingonContentProvider.KEY_NEXT_ENTRY_ID))
+                };
+              }
+            },
+            new QueryRunner.Callback<Intent[]>() {
+              @Override
+              public void onQueryComplete(Intent[] intents) {
+                // Drop the result if another entry has been selected since.
+                if (intents != null && mEntry != null && mEntry.getId() == entryId) {
+                  setBottomNavigationButtons(intents[0], intents[1]);
+                }
+              }
+            });
+  }
+
+  private void setBottomNavigationButtons(Intent previousEntryIntent, Intent nextEntryIntent) {
+    BottomNavigationView bottomNavView =
+        (BottomNavigationView) findViewById(R.id.bottom_navigation);
+    Menu bottomNavMenu = bottomNavView.getMenu();
 
     // Update the state of the "Previous" button.
+    mPreviousEntryIntent = previousEntryIntent;
     MenuItem previousButton = (MenuItem) bottomNavMenu.findItem(R.id.action_previous);
     if (mPreviousEntryIntent == null) {
       previousButton.setEnabled(false);
@@ -430,17 +616,8 @@ public class EntryActivity extends BaseActivity
       bottomNavView.findViewById(R.id.action_previous).setVisibility(View.VISIBLE);
     }
 
-    // Check for a next entry.
-    mNextEntryIntent = null;
-    for (int i = 1; i <= MAX_ENTRY_ID_DIFF; i++) {
-      Intent entryIntent = getEntryByIdIntent(entryId + i);
-      if (entryIntent != null) {
-        mNextEntryIntent = entryIntent;
-        break;
-      }
-    }
-
     // Update the state of the "Next" button.
+    mNextEntryIntent = nextEntryIntent;
     MenuItem nextButton = (MenuItem) bottomNavMenu.findItem(R.id.action_next);
     if (mNextEntryIntent == null) {
       nextButton.setEnabled(false);
@@ -530,30 +707,24 @@ public class EntryActivity extends BaseActivity
     }
   }
 
-  private Intent getEntryByIdIntent(int entryId) {
-    Cursor cursor;
-    cursor =
-        managedQuery(
-            Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryId),
-            null /* all columns */,
-            null,
-            null,
-            null);
-    if (cursor.getCount() == 1) {
-      Uri uri =
-          Uri.parse(
-              KlingonContentProvider.CONTENT_URI
-                  + "/get_entry_by_id/"
-                  + cursor.getString(KlingonContentDatabase.COLUMN_ID));
+  // Returns an intent for the given adjacent entry, or null if there isn't one within
+  // MAX_ENTRY_ID_DIFF of the current entry.
+  private Intent getAdjacentEntryIntent(int entryId, int adjacentEntryId) {
+    if (adjacentEntryId == KlingonContentDatabase.NO_ADJACENT_ENTRY
+        || Math.abs(adjacentEntryId - entryId) > MAX_ENTRY_ID_DIFF) {
+      return null;
+    }
+    return getEntryByIdIntent(adjacentEntryId);
+  }
 
-      Intent entryIntent = new Intent(this, EntryActivity.class);
+  private Intent getEntryByIdIntent(int entryId) {
+    Intent entryIntent = new Intent(this, EntryActivity.class);
 
-      // Form the URI for the entry.
-      entryIntent.setData(uri);
+    // Form the URI for the entry.
+    entryIntent.setData(
+        Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryId));
 
-      return entryIntent;
-    }
-    return null;
+    return entryIntent;
   }
 
   private void goToPreviousEntry() {
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.text.Spanned;
+import android.util.LruCache;
+
+/**
+ * The formatted bodies of recently shown entries, so that showing an entry again (swiping back to
+ * it, rotating, or going back) doesn't format it again. A body depends on the display settings as
+ * well as on the entry, so it's keyed by the entry ID and the {@link SearchSettings} version. The
+ * whole cache is dropped when the database is replaced.
+ *
+ * <p>Each time it's dropped, the cache moves on to a new generation. A caller takes the generation
+ * before it loads an entry, and passes it back when caching the entry or its body, so that one
+ * which was loaded from the old database and finished after the cache was dropped isn't put back.
+ *
+ * <p>The entries on the pages next to the one being shown are loaded and rendered ahead of time,
+ * so the entries themselves are kept here as well, under the same keys, for the pages to be shown
+ * without going to the database.
+ */
+final class EntryBodyCache {
+
+  // Roughly how much memory a span takes, in bytes, including its place in the span arrays.
+  private static final int BYTES_PER_SPAN = 64;
+
+  // Use up to 1/32 of the heap, measured in kilobytes.
+  private static final int MAX_SIZE_KB = (int) (Runtime.getRuntime().maxMemory() / 1024 / 32);
+
+  private static final LruCache<String, Spanned> sCache =
+      new LruCache<String, Spanned>(MAX_SIZE_KB) {
+        @Override
+        protected int sizeOf(String key, Spanned body) {
+          int spanCount = body.getSpans(0, body.length(), Object.class).length;
+          return (body.length() * 2 + spanCount * BYTES_PER_SPAN) / 1024 + 1;
+        }
+      };
+
+  // The number of entries to keep. Only the ones around the current page are needed.
+  private static final int MAX_ENTRIES = 32;
+
+  private static final LruCache<String, KlingonContentProvider.Entry> sEntries =
+      new LruCache<String, KlingonContentProvider.Entry>(MAX_ENTRIES);
+
+  // Counts the times the cache has been dropped.
+  private static int sGeneration = 0;
+
+  private EntryBodyCache() {}
+
+  /** Returns the current generation, to be taken before loading an entry to be cached. */
+  static synchronized int getGeneration() {
+    return sGeneration;
+  }
+
+  /** Returns the body of the entry as rendered with the given settings, or null. */
+  static Spanned get(int entryId, int settingsVersion) {
+    return sCache.get(getKey(entryId, settingsVersion));
+  }
+
+  // The body is dropped if the cache has been cleared since the given generation.
+  static synchronized void put(int entryId, int settingsVersion, int generation, Spanned body) {
+    if (generation == sGeneration) {
+      sCache.put(getKey(entryId, settingsVersion), body);
+    }
+  }
+
+  /** Returns the entry as loaded with the given settings, or null. */
+  static KlingonContentProvider.Entry getEntry(int entryId, int settingsVersion) {
+    return sEntries.get(getKey(entryId, settingsVersion));
+  }
+
+  // The entry should have been loaded with the application context, since it's kept beyond the
+  // lifetime of any activity. Like a body, it's dropped if the generation is out of date.
+  static synchronized void putEntry(
+      KlingonContentProvider.Entry entry, int settingsVersion, int generation) {
+    if (generation == sGeneration) {
+      sEntries.put(getKey(entry.getId(), settingsVersion), entry);
+    }
+  }
+
+  /** Drops every body and entry, since entry IDs refer to different entries in a new database. */
+  static synchronized void clear() {
+    sGeneration++;
+    sCache.evictAll();
+    sEntries.evictAll();
+  }
+
+  private static String getKey(int entryId, int settingsVersion) {
+    return entryId + ":" + settingsVersion;
+  }
+}
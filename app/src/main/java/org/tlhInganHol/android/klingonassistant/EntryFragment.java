@@ -16,14 +16,15 @@
 package org.tlhInganHol.android.klingonassistant;
 
 import android.app.SearchManager;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.CancellationSignal;
 import android.support.v4.app.Fragment;
 import android.text.Html;
 import android.text.SpannableStringBuilder;
@@ -40,20 +41,25 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 
 public class EntryFragment extends Fragment {
   private String mEntryName = null;
 
+  // Loads the entry and renders its body in the background, while the view exists.
+  private QueryRunner mQueryRunner = null;
+
   private static final int INTERMEDIATE_FLAGS =
       Spanned.SPAN_EXCLUSIVE_EXCLUSIVE | Spanned.SPAN_INTERMEDIATE;
   private static final int FINAL_FLAGS = Spanned.SPAN_EXCLUSIVE_EXCLUSIVE;
 
   // Static method for constructing EntryFragment.
-  public static EntryFragment newInstance(Uri uri) {
+  public static EntryFragment newInstance(int entryId) {
     EntryFragment entryFragment = new EntryFragment();
     Bundle args = new Bundle();
-    args.putString("uri", uri.toString());
+    args.putInt("entry_id", entryId);
     entryFragment.setArguments(args);
     return entryFragment;
   }
@@ -61,21 +67,48 @@ public class EntryFragment extends Fragment {
   @Override
   public View onCreateView(
       LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-    ViewGroup rootView = (ViewGroup) inflater.inflate(R.layout.entry, container, false);
+    final ViewGroup rootView = (ViewGroup) inflater.inflate(R.layout.entry, container, false);
+    mQueryRunner = new QueryRunner(getActivity());
+
+    // Display the entry right away if it has been prefetched by EntryActivity.
+    final int generation = EntryBodyCache.getGeneration();
+    int entryId = getArguments().getInt("entry_id");
+    KlingonContentProvider.Entry entry =
+        EntryBodyCache.getEntry(
+            entryId, SearchSettings.get(getActivity().getBaseContext()).getVersion());
+    if (entry != null) {
+      displayEntry(rootView, entry, generation);
+      return rootView;
+    }
 
-    Resources resources = getActivity().getResources();
+    // Otherwise, retrieve the entry's data in the background, then display it.
+    Uri uri = Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryId);
+    mQueryRunner.query(
+        uri,
+        KlingonContentDatabase.ALL_KEYS,
+        null,
+        new QueryRunner.Callback<Cursor>() {
+          @Override
+          public void onQueryComplete(Cursor cursor) {
+            // The entry might not be in the database, if its ID is from an older version of it.
+            if (cursor != null && cursor.moveToFirst()) {
+              displayEntry(
+                  rootView,
+                  new KlingonContentProvider.Entry(cursor, getActivity().getBaseContext()),
+                  generation);
+            }
+          }
+        });
 
-    TextView entryTitle = (TextView) rootView.findViewById(R.id.entry_title);
-    TextView entryBody = (TextView) rootView.findViewById(R.id.entry_body);
+    return rootView;
+  }
 
-    Uri uri = Uri.parse(getArguments().getString("uri"));
+  // The generation is that of the body cache when the entry was loaded.
+  private void displayEntry(
+      ViewGroup rootView, KlingonContentProvider.Entry entry, int generation) {
+    TextView entryTitle = (TextView) rootView.findViewById(R.id.entry_title);
+    final TextView entryBody = (TextView) rootView.findViewById(R.id.entry_body);
 
-    // Retrieve the entry's data.
-    // Note: managedQuery is deprecated since API 11.
-    Cursor cursor =
-        getActivity().managedQuery(uri, KlingonContentDatabase.ALL_KEYS, null, null, null);
-    final KlingonContentProvider.Entry entry =
-        new KlingonContentProvider.Entry(cursor, getActivity().getBaseContext());
     int entryId = entry.getId();
 
     // Handle alternative spellings here.
@@ -83,10 +116,6 @@ public class EntryFragment extends Fragment {
       // TODO: Immediate redirect to query in entry.getDefinition();
     }
 
-    // Get the shared preferences.
-    SharedPreferences sharedPrefs =
-        PreferenceManager.getDefaultSharedPreferences(getActivity().getBaseContext());
-
     // Set the entry's name (along with info like "slang", formatted in HTML).
     entryTitle.invalidate();
     boolean useKlingonFont = Preferences.useKlingonFont(getActivity().getBaseContext());
@@ -104,6 +133,61 @@ public class EntryFragment extends Fragment {
     // Set the colour for the entry name depending on its part of speech.
     entryTitle.setTextColor(entry.getTextColor());
 
+    // Display the definition. It's shown right away if it has been rendered with the current
+    // settings before. Otherwise, it's rendered in the background, since formatting a long entry
+    // with many links can take a while.
+    entryBody.setMovementMethod(LinkMovementMethod.getInstance());
+    SearchSettings settings = SearchSettings.get(getActivity().getBaseContext());
+    Spanned body = EntryBodyCache.get(entryId, settings.getVersion());
+    if (body != null) {
+      entryBody.setText(body);
+    } else {
+      mQueryRunner.run(
+          newRenderBodyQuery(getActivity().getBaseContext(), entry, settings, generation),
+          new QueryRunner.Callback<Spanned>() {
+            @Override
+            public void onQueryComplete(Spanned renderedBody) {
+              // The body is still cached if the fragment has gone away in the meantime.
+              if (isAdded() && renderedBody != null) {
+                entryBody.setText(renderedBody);
+              }
+            }
+          });
+    }
+  }
+
+  // Renders the body of an entry and caches it. This is static so that the query doesn't hold on
+  // to the fragment while it waits to run.
+  private static QueryRunner.Query<Spanned> newRenderBodyQuery(
+      final Context context,
+      final KlingonContentProvider.Entry entry,
+      final SearchSettings settings,
+      final int generation) {
+    return new QueryRunner.Query<Spanned>() {
+      @Override
+      public Spanned run(ContentResolver resolver, CancellationSignal cancellationSignal) {
+        Spanned body = renderBody(context, entry, settings);
+        EntryBodyCache.put(entry.getId(), settings.getVersion(), generation, body);
+        return body;
+      }
+    };
+  }
+
+  @Override
+  public void onDestroyView() {
+    super.onDestroyView();
+    if (mQueryRunner != null) {
+      mQueryRunner.destroy();
+      mQueryRunner = null;
+    }
+  }
+
+  // Formats the body of an entry (its definition, notes, examples, and so on) with the given
+  // settings. This doesn't touch any views, so that it can be run in the background.
+  static Spanned renderBody(
+      Context context, KlingonContentProvider.Entry entry, SearchSettings settings) {
+    Resources resources = context.getResources();
+
     // Create the expanded definition.
     String pos = entry.getFormattedPartOfSpeech(/* isHtml */ false);
     String expandedDefinition = pos;
@@ -128,9 +212,7 @@ public class EntryFragment extends Fragment {
     }
 
     // Experimental: Display other languages.
-    final boolean showUnsupportedFeatures =
-        sharedPrefs.getBoolean(
-            Preferences.KEY_SHOW_UNSUPPORTED_FEATURES_CHECKBOX_PREFERENCE, /* default */ false);
+    final boolean showUnsupportedFeatures = settings.showUnsupportedFeatures();
     if (!entry.isAlternativeSpelling() && showUnsupportedFeatures) {
       String definition_DE = entry.getDefinition_DE();
       String definition_FA = entry.getDefinition_FA();
@@ -297,9 +379,7 @@ public class EntryFragment extends Fragment {
 
     // If this is a verb (but not a prefix or suffix), show the transitivity information.
     String transitivity = "";
-    if (entry.isVerb()
-        && sharedPrefs.getBoolean(
-            Preferences.KEY_SHOW_TRANSITIVITY_CHECKBOX_PREFERENCE, /* default */ true)) {
+    if (entry.isVerb() && settings.showTransitivity()) {
       // This is a verb and show transitivity preference is set to true.
       transitivity = entry.getTransitivityString();
     }
@@ -313,8 +393,7 @@ public class EntryFragment extends Fragment {
 
     // Show the hidden notes.
     String hiddenNotes = "";
-    if (sharedPrefs.getBoolean(
-        Preferences.KEY_SHOW_ADDITIONAL_INFORMATION_CHECKBOX_PREFERENCE, /* default */ true)) {
+    if (settings.showAdditionalInformation()) {
       // Show additional information preference set to true.
       hiddenNotes = entry.getHiddenNotes();
     }
@@ -359,40 +438,53 @@ public class EntryFragment extends Fragment {
           hiddenNotesStart + hiddenNotesHeader.length() + hiddenNotes.length(),
           FINAL_FLAGS);
     }
-    processMixedText(ssb, entry);
-
-    // Display the entry name and definition.
-    entryBody.invalidate();
-    entryBody.setText(ssb);
-    entryBody.setMovementMethod(LinkMovementMethod.getInstance());
-
-    return rootView;
+    processMixedText(context, ssb, entry);
+    return ssb;
   }
 
   // Helper function to process text that includes Klingon text.
   protected void processMixedText(SpannableStringBuilder ssb, KlingonContentProvider.Entry entry) {
+    processMixedText(getActivity().getBaseContext(), ssb, entry);
+  }
+
+  private static void processMixedText(
+      Context context, SpannableStringBuilder ssb, KlingonContentProvider.Entry entry) {
     float smallTextScale = (float) 0.8;
-    boolean useKlingonFont = Preferences.useKlingonFont(getActivity().getBaseContext());
-    Typeface klingonTypeface =
-        KlingonAssistant.getKlingonFontTypeface(getActivity().getBaseContext());
+    boolean useKlingonFont = Preferences.useKlingonFont(context);
+    Typeface klingonTypeface = KlingonAssistant.getKlingonFontTypeface(context);
 
+    // Tokenize the text once. Rewriting a link only changes the text from its start up to the end
+    // of its part of speech, so each later link is where it was found, shifted by however much the
+    // text before it has grown or shrunk.
     String mixedText = ssb.toString();
+    List<MixedTextLink> links = new ArrayList<MixedTextLink>();
     Matcher m = KlingonContentProvider.Entry.ENTRY_PATTERN.matcher(mixedText);
     while (m.find()) {
-
       // Strip the brackets {} to get the query.
       String query = mixedText.substring(m.start() + 1, m.end() - 1);
-      LookupClickableSpan viewLauncher = new LookupClickableSpan(query);
 
       // Process the linked entry information.
       KlingonContentProvider.Entry linkedEntry =
-          new KlingonContentProvider.Entry(query, getActivity().getBaseContext());
+          new KlingonContentProvider.Entry(query, context);
       // Log.d(TAG, "linkedEntry.getEntryName() = " + linkedEntry.getEntryName());
+      links.add(new MixedTextLink(m.start(), m.end(), query, linkedEntry));
+    }
+
+    // Rewrite the links in a single forward pass. The edits are made in place, rather than by
+    // copying into a new builder, so that spans already set on the text (such as the sizes of the
+    // sections) are adjusted exactly as before.
+    int shift = 0;
+    for (MixedTextLink link : links) {
+      int start = link.mStart + shift;
+      int linkEnd = link.mEnd + shift;
+      int lengthBefore = ssb.length();
+      KlingonContentProvider.Entry linkedEntry = link.mLinkedEntry;
+      LookupClickableSpan viewLauncher = new LookupClickableSpan(link.mQuery);
 
       // Delete the brackets and metadata parts of the string (which includes analysis components).
-      ssb.delete(m.start() + 1 + linkedEntry.getEntryName().length(), m.end());
-      ssb.delete(m.start(), m.start() + 1);
-      int end = m.start() + linkedEntry.getEntryName().length();
+      ssb.delete(start + 1 + linkedEntry.getEntryName().length(), linkEnd);
+      ssb.delete(start, start + 1);
+      int end = start + linkedEntry.getEntryName().length();
 
       // Insert link to the category for a useful phrase.
       if (entry != null
@@ -400,10 +492,10 @@ public class EntryFragment extends Fragment {
           && !entry.getSentenceType().equals("")
           && linkedEntry.getEntryName().equals("*")) {
         // Delete the "*" placeholder.
-        ssb.delete(m.start(), m.start() + 1);
+        ssb.delete(start, start + 1);
 
         // Insert the category name.
-        ssb.insert(m.start(), entry.getSentenceType());
+        ssb.insert(start, entry.getSentenceType());
         end += entry.getSentenceType().length() - 1;
       }
 
@@ -422,16 +514,16 @@ public class EntryFragment extends Fragment {
         // If possible, link to the source.
         String url = linkedEntry.getURL();
         if (!url.equals("")) {
-          ssb.setSpan(new URLSpan(url), m.start(), end, INTERMEDIATE_FLAGS);
+          ssb.setSpan(new URLSpan(url), start, end, INTERMEDIATE_FLAGS);
         }
         // Names of sources are in italics.
         ssb.setSpan(
-            new StyleSpan(android.graphics.Typeface.ITALIC), m.start(), end, maybeFinalFlags);
+            new StyleSpan(android.graphics.Typeface.ITALIC), start, end, maybeFinalFlags);
       } else if (linkedEntry.isURL()) {
         // Linkify URL if there is one.
         String url = linkedEntry.getURL();
         if (!url.equals("")) {
-          ssb.setSpan(new URLSpan(url), m.start(), end, maybeFinalFlags);
+          ssb.setSpan(new URLSpan(url), start, end, maybeFinalFlags);
         }
       } else if (useKlingonFont) {
         // Display the text using the Klingon font. Categories (which have an entry of "*") must
@@ -442,7 +534,7 @@ public class EntryFragment extends Fragment {
           // This is just regular Klingon text. Display it in Klingon font.
           klingonEntryName = linkedEntry.getEntryNameInKlingonFont();
           replaceWithKlingonFontText = true;
-        } else if (Preferences.useKlingonUI(getActivity().getBaseContext())) {
+        } else if (Preferences.useKlingonUI(context)) {
           // This is a category, and the option to use Klingon UI is set, so this will be in
           // Klingon.
           // Display it in Klingon font.
@@ -456,37 +548,37 @@ public class EntryFragment extends Fragment {
           replaceWithKlingonFontText = false;
         }
         if (replaceWithKlingonFontText) {
-          ssb.delete(m.start(), end);
-          ssb.insert(m.start(), klingonEntryName);
-          end = m.start() + klingonEntryName.length();
+          ssb.delete(start, end);
+          ssb.insert(start, klingonEntryName);
+          end = start + klingonEntryName.length();
           ssb.setSpan(
-              new KlingonTypefaceSpan("", klingonTypeface), m.start(), end, maybeFinalFlags);
+              new KlingonTypefaceSpan("", klingonTypeface), start, end, maybeFinalFlags);
         }
       } else {
         // Klingon is in bold serif.
         ssb.setSpan(
-            new StyleSpan(android.graphics.Typeface.BOLD), m.start(), end, INTERMEDIATE_FLAGS);
-        ssb.setSpan(new TypefaceSpan("serif"), m.start(), end, maybeFinalFlags);
+            new StyleSpan(android.graphics.Typeface.BOLD), start, end, INTERMEDIATE_FLAGS);
+        ssb.setSpan(new TypefaceSpan("serif"), start, end, maybeFinalFlags);
       }
       // If linked entry is hypothetical or extended canon, insert a "?" in front.
       if (linkedEntry.isHypothetical() || linkedEntry.isExtendedCanon()) {
-        ssb.insert(m.start(), "?");
+        ssb.insert(start, "?");
         ssb.setSpan(
-            new RelativeSizeSpan(smallTextScale), m.start(), m.start() + 1, INTERMEDIATE_FLAGS);
-        ssb.setSpan(new SuperscriptSpan(), m.start(), m.start() + 1, maybeFinalFlags);
+            new RelativeSizeSpan(smallTextScale), start, start + 1, INTERMEDIATE_FLAGS);
+        ssb.setSpan(new SuperscriptSpan(), start, start + 1, maybeFinalFlags);
         end++;
       }
 
       // For a suffix, protect the hyphen from being separated from the rest of the suffix.
-      if (ssb.charAt(m.start()) == '-') {
+      if (ssb.charAt(start) == '-') {
         // U+2011 is the non-breaking hyphen.
-        ssb.replace(m.start(), m.start() + 1, "\u2011");
+        ssb.replace(start, start + 1, "\u2011");
       }
 
       // Only apply colours to verbs, nouns, and affixes (exclude BLUE and WHITE).
       if (!disableEntryLink) {
         // Link to view launcher.
-        ssb.setSpan(viewLauncher, m.start(), end, INTERMEDIATE_FLAGS);
+        ssb.setSpan(viewLauncher, start, end, INTERMEDIATE_FLAGS);
       }
       // Set the colour last, so it's not overridden by other spans.
       // There is a bug in Android 6 (API 23) and 7 (API 24 and 25) which
@@ -494,11 +586,11 @@ public class EntryFragment extends Fragment {
       // See: https://github.com/De7vID/klingon-assistant/issues/190
       // The work-around does not work when running on Chromebook (version
       // 61.0.3163.120).
-      ForegroundColorSpan[] oldSpans = ssb.getSpans(m.start(), end, ForegroundColorSpan.class);
+      ForegroundColorSpan[] oldSpans = ssb.getSpans(start, end, ForegroundColorSpan.class);
       for (ForegroundColorSpan span : oldSpans) {
         ssb.removeSpan(span);
       }
-      ssb.setSpan(new ForegroundColorSpan(linkedEntry.getTextColor()), m.start(), end, FINAL_FLAGS);
+      ssb.setSpan(new ForegroundColorSpan(linkedEntry.getTextColor()), start, end, FINAL_FLAGS);
       String linkedPos = linkedEntry.getBracketedPartOfSpeech(/* isHtml */ false);
       if (!linkedPos.equals("") && linkedPos.length() > 1) {
         ssb.insert(end, linkedPos);
@@ -515,14 +607,28 @@ public class EntryFragment extends Fragment {
         }
       }
 
-      // Rinse and repeat.
-      mixedText = ssb.toString();
-      m = KlingonContentProvider.Entry.ENTRY_PATTERN.matcher(mixedText);
+      shift += ssb.length() - lengthBefore;
+    }
+  }
+
+  // A {link} in mixed text, at its position in the text before any links were rewritten.
+  private static class MixedTextLink {
+    final int mStart;
+    final int mEnd;
+    final String mQuery;
+    final KlingonContentProvider.Entry mLinkedEntry;
+
+    MixedTextLink(int start, int end, String query, KlingonContentProvider.Entry linkedEntry) {
+      mStart = start;
+      mEnd = end;
+      mQuery = query;
+      mLinkedEntry = linkedEntry;
     }
   }
 
-  // Private class for handling clickable spans.
-  private class LookupClickableSpan extends ClickableSpan {
+  // Private class for handling clickable spans. This is static, since rendered bodies are cached
+  // beyond the lifetime of the fragment.
+  private static class LookupClickableSpan extends ClickableSpan {
     private String mQuery;
 
     LookupClickableSpan(String query) {
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An in-memory trie of entry names, used to find entries whose names are near matches for a
+ * (probably mistyped) query.
+ *
+ * <p>The search simulates a Levenshtein automaton for the query while walking the trie, keeping one
+ * row of edit costs per trie node and abandoning a branch as soon as every cost in its row exceeds
+ * the maximum. The costs are weighted for the mistakes which are common when typing Klingon:
+ * confusing the case of a letter (e.g., {q} and {Q}, or {I} and "i"), leaving out an apostrophe, and
+ * leaving out the "h" of {ch}, {gh}, or {tlh} each cost half as much as any other edit.
+ */
+public class EntryNameTrie {
+
+  // The maximum number of (full-cost) edits between a query and a near match.
+  public static final int MAX_EDIT_DISTANCE = 2;
+
+  // Costs are measured in half-edits, so that the cheap mistakes described above can cost half.
+  private static final int EDIT_COST = 2;
+  private static final int CHEAP_EDIT_COST = 1;
+  private static final int MAX_COST = MAX_EDIT_DISTANCE * EDIT_COST;
+
+  // Queries longer than this are not worth matching approximately.
+  private static final int MAX_QUERY_LENGTH = 32;
+
+  private static class Node {
+    char[] mKeys = new char[0];
+    Node[] mChildren = new Node[0];
+    // The ids of the entries whose names end at this node, or null if there are none.
+    int[] mIds = null;
+
+    Node getOrAddChild(char c) {
+      int i = Arrays.binarySearch(mKeys, c);
+      if (i >= 0) {
+        return mChildren[i];
+      }
+      i = -(i + 1);
+      char[] keys = new char[mKeys.length + 1];
+      Node[] children = new Node[mChildren.length + 1];
+      System.arraycopy(mKeys, 0, keys, 0, i);
+      System.arraycopy(mChildren, 0, children, 0, i);
+      System.arraycopy(mKeys, i, keys, i + 1, mKeys.length - i);
+      System.arraycopy(mChildren, i, children, i + 1, mChildren.length - i);
+      keys[i] = c;
+      children[i] = new Node();
+      mKeys = keys;
+      mChildren = children;
+      return children[i];
+    }
+
+    void addId(int id) {
+      if (mIds == null) {
+        mIds = new int[] {id};
+      } else {
+        mIds = Arrays.copyOf(mIds, mIds.length + 1);
+        mIds[mIds.length - 1] = id;
+      }
+    }
+  }
+
+  /** A near match for a query. */
+  public static class NearMatch {
+    private final int mId;
+    private final int mCost;
+
+    NearMatch(int id, int cost) {
+      mId = id;
+      mCost = cost;
+    }
+
+    public int getId() {
+      return mId;
+    }
+
+    /** The weighted edit distance from the query, in edits. A cheap edit counts as half. */
+    public float getDistance() {
+      return (float) mCost / EDIT_COST;
+    }
+  }
+
+  private final Node mRoot = new Node();
+
+  /** Adds an entry name with the given id. Homophones may be added under the same name. */
+  public void add(String entryName, int id) {
+    Node node = mRoot;
+    for (int i = 0; i < entryName.length(); i++) {
+      node = node.getOrAddChild(entryName.charAt(i));
+    }
+    node.addId(id);
+  }
+
+  /** Returns the ids of the entries with exactly the given name (homophones), or an empty array. */
+  public int[] findExact(String entryName) {
+    Node node = mRoot;
+    for (int i = 0; i < entryName.length(); i++) {
+      int j = Arrays.binarySearch(node.mKeys, entryName.charAt(i));
+      if (j < 0) {
+        return new int[0];
+      }
+      node = node.mChildren[j];
+    }
+    return node.mIds == null ? new int[0] : node.mIds.clone();
+  }
+
+  /**
+   * Finds the entries whose names are within the maximum edit distance of the query.
+   *
+   * @param query The query, after "xifan hol" expansion if applicable
+   * @param maxResults The maximum number of matches to return
+   * @return The matches, closest first, with ties broken by id
+   */
+  public List<NearMatch> findNearMatches(String query, int maxResults) {
+    ArrayList<NearMatch> matches = new ArrayList<NearMatch>();
+    if (query.isEmpty() || query.length() > MAX_QUERY_LENGTH) {
+      return matches;
+    }
+
+    // The first row of the automaton is the cost of deleting each prefix of the query.
+    int[] row = new int[query.length() + 1];
+    for (int j = 1; j <= query.length(); j++) {
+      row[j] = row[j - 1] + extraCharacterCost(query.charAt(j - 1));
+    }
+    for (int i = 0; i < mRoot.mKeys.length; i++) {
+      search(mRoot.mChildren[i], mRoot.mKeys[i], (char) 0, query, row, matches);
+    }
+
+    Collections.sort(
+        matches,
+        new Comparator<NearMatch>() {
+          @Override
+          public int compare(NearMatch a, NearMatch b) {
+            if (a.mCost != b.mCost) {
+              return a.mCost < b.mCost ? -1 : 1;
+            }
+            return a.mId < b.mId ? -1 : (a.mId == b.mId ? 0 : 1);
+          }
+        });
+    if (matches.size() > maxResults) {
+      return new ArrayList<NearMatch>(matches.subList(0, maxResults));
+    }
+    return matches;
+  }
+
+  // Advances the automaton by the trie character c (preceded by previous) and recurses.
+  private void search(
+      Node node,
+      char c,
+      char previous,
+      String query,
+      int[] previousRow,
+      ArrayList<NearMatch> matches) {
+    int[] row = new int[previousRow.length];
+    row[0] = previousRow[0] + missingCharacterCost(c, previous);
+    int minCost = row[0];
+    for (int j = 1; j < row.length; j++) {
+      char q = query.charAt(j - 1);
+      int cost = previousRow[j - 1] + substitutionCost(q, c);
+      cost = Math.min(cost, previousRow[j] + missingCharacterCost(c, previous));
+      cost = Math.min(cost, row[j - 1] + extraCharacterCost(q));
+      row[j] = cost;
+      minCost = Math.min(minCost, cost);
+    }
+    if (minCost > MAX_COST) {
+      return;
+    }
+
+    int cost = row[row.length - 1];
+    if (node.mIds != null && cost <= MAX_COST) {
+      for (int id : node.mIds) {
+        matches.add(new NearMatch(id, cost));
+      }
+    }
+    for (int i = 0; i < node.mKeys.length; i++) {
+      search(node.mChildren[i], node.mKeys[i], c, query, row, matches);
+    }
+  }
+
+  // The cost of the query having q where the entry name has c.
+  private static int substitutionCost(char q, char c) {
+    if (q == c) {
+      return 0;
+    }
+    if (Character.toLowerCase(q) == Character.toLowerCase(c)) {
+      return CHEAP_EDIT_COST;
+    }
+    return EDIT_COST;
+  }
+
+  // The cost of the query leaving out the character c of the entry name, which follows previous.
+  private static int missingCharacterCost(char c, char previous) {
+    if (c == '\'' || (c == 'h' && (previous == 'c' || previous == 'g' || previous == 'l'))) {
+      return CHEAP_EDIT_COST;
+    }
+    return EDIT_COST;
+  }
+
+  // The cost of the query having the character q which the entry name doesn't have.
+  private static int extraCharacterCost(char q) {
+    return q == '\'' ? CHEAP_EDIT_COST : EDIT_COST;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.Html;
+import android.text.SpannableStringBuilder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One row of a list of search results, with the entry's name and definition already formatted. The
+ * rows are built in the background along with the search, so that binding a row to a view while
+ * scrolling is just a matter of setting its text.
+ */
+final class EntryRow {
+  private final int mEntryId;
+  private final CharSequence mName;
+  private final CharSequence mDefinition;
+  private final int mTextColor;
+  private final boolean mUseSerif;
+
+  private EntryRow(
+      int entryId, CharSequence name, CharSequence definition, int textColor, boolean useSerif) {
+    mEntryId = entryId;
+    mName = name;
+    mDefinition = definition;
+    mTextColor = textColor;
+    mUseSerif = useSerif;
+  }
+
+  /** Builds a row for each entry in the cursor, in order. */
+  static List<EntryRow> fromCursor(Context context, Cursor cursor) {
+    List<EntryRow> rows = new ArrayList<EntryRow>(cursor.getCount());
+    boolean useKlingonFont = Preferences.useKlingonFont(context);
+    for (int i = 0; i < cursor.getCount(); i++) {
+      cursor.moveToPosition(i);
+      rows.add(fromEntry(new KlingonContentProvider.Entry(cursor, context), useKlingonFont));
+    }
+    return rows;
+  }
+
+  private static EntryRow fromEntry(KlingonContentProvider.Entry entry, boolean useKlingonFont) {
+    // We fully indent suffixes, but only half-indent verbs.
+    String indent1 =
+        entry.isIndented() ? (entry.isVerb() ? "&nbsp;&nbsp;" : "&nbsp;&nbsp;&nbsp;&nbsp;") : "";
+    String indent2 =
+        entry.isIndented()
+            ? (entry.isVerb()
+                ? "&nbsp;&nbsp;&nbsp;&nbsp;"
+                : "&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;")
+            : "";
+
+    CharSequence name;
+    if (useKlingonFont) {
+      // Preference is set to display this in {pIqaD}!
+      name =
+          new SpannableStringBuilder(Html.fromHtml(indent1))
+              .append(entry.getFormattedEntryNameInKlingonFont());
+    } else {
+      name = Html.fromHtml(indent1 + entry.getFormattedEntryName(/* isHtml */ true));
+    }
+    CharSequence definition =
+        Html.fromHtml(indent2 + entry.getFormattedDefinition(/* isHtml */ true));
+    return new EntryRow(
+        entry.getId(), name, definition, entry.getTextColor(), /* useSerif */ !useKlingonFont);
+  }
+
+  public int getEntryId() {
+    return mEntryId;
+  }
+
+  public CharSequence getName() {
+    return mName;
+  }
+
+  public CharSequence getDefinition() {
+    return mDefinition;
+  }
+
+  // The colour of the name, which depends on the entry's part of speech.
+  public int getTextColor() {
+    return mTextColor;
+  }
+
+  // Whether the name should be in serif, so capital-I and lowercase-l are distinguishable. This is
+  // false if it's in {pIqaD}.
+  public boolean useSerif() {
+    return mUseSerif;
+  }
+
+  /** Returns whether the other row for the same entry would be displayed the same way. */
+  boolean hasSameContents(EntryRow other) {
+    return mTextColor == other.mTextColor
+        && mUseSerif == other.mUseSerif
+        && mName.toString().equals(other.mName.toString())
+        && mDefinition.toString().equals(other.mDefinition.toString());
+  }
+}
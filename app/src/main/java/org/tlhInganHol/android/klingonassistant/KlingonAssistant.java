@@ -19,28 +19,30 @@ package org.tlhInganHol.android.klingonassistant;
 import android.annotation.TargetApi;
 import android.app.SearchManager;
 import android.content.ComponentName;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.CancellationSignal;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.text.Html;
-import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.BaseAdapter;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.TwoLineListItem;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -60,11 +62,19 @@ public class KlingonAssistant extends BaseActivity {
 
   // The two main views in app's main screen.
   private TextView mTextView;
-  private ListView mListView;
+  private RecyclerView mListView;
+  private EntryAdapter mEntryAdapter;
 
   // The query to pre-populate when the user presses the "Search" button.
   private String mPrepopulatedQuery = null;
 
+  // Counts the searches which have been started, so that the results of an earlier one can be
+  // dropped if they arrive late.
+  private int mSearchNumber = 0;
+
+  // Waits for the database to be ready before handling the intent, or null if it's ready.
+  private KlingonContentDatabase.InstallProgressListener mInstallProgressListener = null;
+
   // private int mTutorialCounter;
   @Override
   public void onCreate(Bundle savedInstanceState) {
@@ -73,9 +83,66 @@ public class KlingonAssistant extends BaseActivity {
     setDrawerContentView(R.layout.main);
 
     mTextView = (TextView) findViewById(R.id.text);
-    mListView = (ListView) findViewById(R.id.list);
+    mListView = (RecyclerView) findViewById(R.id.list);
+    mListView.setLayoutManager(new LinearLayoutManager(this));
+    mListView.addItemDecoration(
+        new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+    mEntryAdapter = new EntryAdapter();
+    mListView.setAdapter(mEntryAdapter);
+
+    // The database is initialised in the background. If it isn't ready yet, show the progress of
+    // installing it (if it's being installed) rather than blocking, and handle the intent later.
+    mInstallProgressListener =
+        new KlingonContentDatabase.InstallProgressListener() {
+          @Override
+          public void onInstallProgress(String version, int percent) {
+            mTextView.setText(
+                String.format(
+                    getResources().getString(R.string.database_installing), version, percent));
+          }
+
+          @Override
+          public void onDatabaseReady() {
+            mInstallProgressListener = null;
+            mTextView.setOnClickListener(null);
+            mTextView.setClickable(false);
+            handleIntent(getIntent());
+          }
 
-    handleIntent(getIntent());
+          @Override
+          public void onDatabaseFailed() {
+            // Let the user try again, e.g., after freeing up some storage.
+            mTextView.setText(R.string.database_failed);
+            mTextView.setOnClickListener(
+                new View.OnClickListener() {
+                  @Override
+                  public void onClick(View v) {
+                    mTextView.setOnClickListener(null);
+                    mTextView.setClickable(false);
+                    mTextView.setText(null);
+                    getContentResolver()
+                        .call(
+                            KlingonContentProvider.CONTENT_URI,
+                            KlingonContentProvider.METHOD_RETRY_DATABASE_INIT,
+                            null,
+                            null);
+                  }
+                });
+          }
+        };
+    if (KlingonContentDatabase.addInstallProgressListener(mInstallProgressListener)) {
+      mInstallProgressListener = null;
+      handleIntent(getIntent());
+    }
+  }
+
+  @Override
+  protected void onDestroy() {
+    if (mInstallProgressListener != null) {
+      KlingonContentDatabase.removeInstallProgressListener(mInstallProgressListener);
+      mInstallProgressListener = null;
+    }
+    super.onDestroy();
   }
 
   @Override
@@ -84,6 +151,11 @@ public class KlingonAssistant extends BaseActivity {
     // to deliver the intent if this activity is currently the foreground activity when
     // invoked again (when the user executes a search from this activity, we don't create
     // a new instance of this activity, so the system delivers the search intent here)
+    if (mInstallProgressListener != null) {
+      // Still waiting for the database, so handle this intent once it's ready.
+      setIntent(intent);
+      return;
+    }
     handleIntent(intent);
   }
 
@@ -198,42 +270,93 @@ public class KlingonAssistant extends BaseActivity {
     startActivity(entryIntent);
   }
 
-  class EntryAdapter extends BaseAdapter implements AdapterView.OnItemClickListener {
+  // Launch an entry activity which pages through the given entries, starting from the one at the
+  // given position. Only the ID of the session the entries are registered in is passed along.
+  private void launchEntries(int[] entryIds, int position) {
+    Intent entryIntent = new Intent(this, EntryActivity.class);
+
+    // Form the URI for the entry to show first.
+    Uri uri =
+        Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryIds[position]);
+    entryIntent.setData(uri);
+    entryIntent.putExtra(EntryActivity.EXTRA_RESULT_SESSION, ResultSessions.register(entryIds));
+    entryIntent.putExtra(EntryActivity.EXTRA_RESULT_POSITION, position);
+    startActivity(entryIntent);
+  }
+
+  // The results of a search, built in the background.
+  private static class SearchResults {
+    // The rows for the matching entries, or for the near matches if nothing matched.
+    final List<EntryRow> mRows;
+    final boolean mAreNearMatches;
+
+    // The changes from the rows which were shown when the search started.
+    final List<EntryRow> mOldRows;
+    final DiffUtil.DiffResult mDiff;
+
+    SearchResults(
+        List<EntryRow> rows,
+        boolean areNearMatches,
+        List<EntryRow> oldRows,
+        DiffUtil.DiffResult diff) {
+      mRows = rows;
+      mAreNearMatches = areNearMatches;
+      mOldRows = oldRows;
+      mDiff = diff;
+    }
+  }
+
+  class EntryAdapter extends RecyclerView.Adapter<EntryAdapter.ViewHolder> {
 
-    private final Cursor mCursor;
+    private List<EntryRow> mRows = Collections.<EntryRow>emptyList();
     private final LayoutInflater mInflater;
 
-    public EntryAdapter(Cursor cursor) {
-      mCursor = cursor;
+    public EntryAdapter() {
       mInflater =
           (LayoutInflater) KlingonAssistant.this.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
     }
 
-    @Override
-    public int getCount() {
-      return mCursor.getCount();
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+      final TwoLineListItem mItem;
+
+      ViewHolder(TwoLineListItem item) {
+        super(item);
+        mItem = item;
+        item.setOnClickListener(this);
+      }
+
+      @Override
+      public void onClick(View view) {
+        int position = getAdapterPosition();
+        if (position != RecyclerView.NO_POSITION) {
+          onItemClick(position);
+        }
+      }
     }
 
-    @Override
-    public Object getItem(int position) {
-      return position;
+    List<EntryRow> getRows() {
+      return mRows;
     }
 
-    @Override
-    public long getItemId(int position) {
-      return position;
+    // Shows the given rows. If the diff is from the rows being shown, only the rows which changed
+    // are bound again.
+    void setRows(List<EntryRow> rows, List<EntryRow> oldRows, DiffUtil.DiffResult diff) {
+      boolean canDispatchDiff = (diff != null && oldRows == mRows);
+      mRows = rows;
+      if (canDispatchDiff) {
+        diff.dispatchUpdatesTo(this);
+      } else {
+        notifyDataSetChanged();
+      }
     }
 
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-      TwoLineListItem view =
-          (convertView != null) ? (TwoLineListItem) convertView : createView(parent);
-      mCursor.moveToPosition(position);
-      bindView(view, mCursor);
-      return view;
+    public int getItemCount() {
+      return mRows.size();
     }
 
-    private TwoLineListItem createView(ViewGroup parent) {
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
       TwoLineListItem item =
           (TwoLineListItem) mInflater.inflate(android.R.layout.simple_list_item_2, parent, false);
 
@@ -241,71 +364,125 @@ public class KlingonAssistant extends BaseActivity {
       item.getText2().setSingleLine(false);
       item.getText2().setEllipsize(TextUtils.TruncateAt.END);
 
-      return item;
-    }
-
-    private void bindView(TwoLineListItem view, Cursor cursor) {
-      KlingonContentProvider.Entry entry =
-          new KlingonContentProvider.Entry(cursor, getBaseContext());
-
       // Note that we override the typeface and text size here, instead of in
       // the xml, because putting it there would also change the appearance of
-      // the Preferences page. We fully indent suffixes, but only half-indent verbs.
-      String indent1 =
-          entry.isIndented() ? (entry.isVerb() ? "&nbsp;&nbsp;" : "&nbsp;&nbsp;&nbsp;&nbsp;") : "";
-      String indent2 =
-          entry.isIndented()
-              ? (entry.isVerb()
-                  ? "&nbsp;&nbsp;&nbsp;&nbsp;"
-                  : "&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;")
-              : "";
-
-      SharedPreferences sharedPrefs =
-          PreferenceManager.getDefaultSharedPreferences(getBaseContext());
-      if (Preferences.useKlingonFont(getBaseContext())) {
-        // Preference is set to display this in {pIqaD}!
-        view.getText1().setText(
-            new SpannableStringBuilder(Html.fromHtml(indent1)).append(
-                entry.getFormattedEntryNameInKlingonFont()));
-      } else {
-        // Use serif for the entry, so capital-I and lowercase-l are distinguishable.
-        view.getText1().setTypeface(Typeface.SERIF);
-        view.getText1()
-            .setText(Html.fromHtml(indent1 + entry.getFormattedEntryName(/* isHtml */ true)));
-      }
-      view.getText1().setTextSize(22);
-
-      // TODO: Colour attached affixes differently from verb.
-      view.getText1().setTextColor(entry.getTextColor());
+      // the Preferences page.
+      item.getText1().setTextSize(22);
 
       // Use sans serif for the definition.
-      view.getText2().setTypeface(Typeface.SANS_SERIF);
-      view.getText2()
-          .setText(Html.fromHtml(indent2 + entry.getFormattedDefinition(/* isHtml */ true)));
-      view.getText2().setTextSize(14);
-      view.getText2().setTextColor(0xFFC0C0C0);
+      item.getText2().setTypeface(Typeface.SANS_SERIF);
+      item.getText2().setTextSize(14);
+      item.getText2().setTextColor(0xFFC0C0C0);
+      return new ViewHolder(item);
     }
 
     @Override
-    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-      if (getCount() == 1) {
+    public void onBindViewHolder(ViewHolder holder, int position) {
+      // The row has already been formatted, so this doesn't touch the database or parse HTML.
+      EntryRow row = mRows.get(position);
+      if (row.useSerif()) {
+        holder.mItem.getText1().setTypeface(Typeface.SERIF);
+      }
+      holder.mItem.getText1().setText(row.getName());
+
+      // TODO: Colour attached affixes differently from verb.
+      holder.mItem.getText1().setTextColor(row.getTextColor());
+      holder.mItem.getText2().setText(row.getDefinition());
+    }
+
+    private void onItemClick(int position) {
+      if (getItemCount() == 1) {
         // Launch entry the regular way, as there's only one result.
-        mCursor.moveToPosition(position);
-        launchEntry(mCursor.getString(KlingonContentDatabase.COLUMN_ID));
+        launchEntry(Integer.toString(mRows.get(position).getEntryId()));
       } else {
-        // There's a list of results, so launch a list of entries. Instead of passing in
-        // one ID, we pass in a comma-separated list. We also append the position of the
-        // selected entry to the end.
-        StringBuilder entryList = new StringBuilder();
-        for (int i = 0; i < getCount(); i++) {
-          mCursor.moveToPosition(i);
-          entryList.append(mCursor.getString(KlingonContentDatabase.COLUMN_ID));
-          entryList.append(",");
+        // There's a list of results, so register them as a session and page through them, starting
+        // from the selected entry.
+        int[] entryIds = new int[getItemCount()];
+        for (int i = 0; i < getItemCount(); i++) {
+          entryIds[i] = mRows.get(i).getEntryId();
+        }
+        launchEntries(entryIds, position);
+      }
+    }
+  }
+
+  // Runs the search, and builds the rows for its results, in the background. If nothing matches,
+  // the near matches are looked up instead. The rows are diffed against the ones being shown.
+  private QueryRunner.Query<SearchResults> createSearch(final String query) {
+    final List<EntryRow> oldRows = mEntryAdapter.getRows();
+    final Context context = getBaseContext();
+    return new QueryRunner.Query<SearchResults>() {
+      @Override
+      public SearchResults run(ContentResolver resolver, CancellationSignal cancellationSignal) {
+        List<EntryRow> rows =
+            queryRows(resolver, cancellationSignal, context, "/lookup", query);
+        boolean areNearMatches = false;
+        if (rows.isEmpty()) {
+          // There are no results. The user probably made a typo, so suggest near matches, if any.
+          // The near matches are found from the query as given, including any leading plus.
+          rows = queryRows(resolver, cancellationSignal, context, "/near_matches", query);
+          areNearMatches = true;
         }
-        entryList.append(position);
-        mCursor.moveToPosition(position);
-        launchEntry(entryList.toString());
+        cancellationSignal.throwIfCanceled();
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RowDiffCallback(oldRows, rows));
+        return new SearchResults(rows, areNearMatches, oldRows, diff);
       }
+    };
+  }
+
+  private static List<EntryRow> queryRows(
+      ContentResolver resolver,
+      CancellationSignal cancellationSignal,
+      Context context,
+      String path,
+      String query) {
+    // Only the columns shown in the list are read.
+    Cursor cursor =
+        resolver.query(
+            Uri.parse(KlingonContentProvider.CONTENT_URI + path),
+            KlingonContentDatabase.getListKeys(SearchSettings.get(context).getOtherLanguage()),
+            null,
+            new String[] {query},
+            null,
+            cancellationSignal);
+    if (cursor == null) {
+      return Collections.<EntryRow>emptyList();
+    }
+    try {
+      return EntryRow.fromCursor(context, cursor);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  // Compares rows by entry ID, and then by what is displayed.
+  private static class RowDiffCallback extends DiffUtil.Callback {
+    private final List<EntryRow> mOldRows;
+    private final List<EntryRow> mNewRows;
+
+    RowDiffCallback(List<EntryRow> oldRows, List<EntryRow> newRows) {
+      mOldRows = oldRows;
+      mNewRows = newRows;
+    }
+
+    @Override
+    public int getOldListSize() {
+      return mOldRows.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+      return mNewRows.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+      return mOldRows.get(oldPosition).getEntryId() == mNewRows.get(newPosition).getEntryId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+      return mOldRows.get(oldPosition).hasSameContents(mNewRows.get(newPosition));
     }
   }
 
@@ -315,31 +492,38 @@ public class KlingonAssistant extends BaseActivity {
    *
    * @param query The search query
    */
-  private void showResults(String query) {
-
-    // Note: managedQuery is deprecated since API 11.
-    Cursor cursor =
-        managedQuery(
-            Uri.parse(KlingonContentProvider.CONTENT_URI + "/lookup"),
-            null /* all columns */,
-            null,
-            new String[] {query},
-            null);
+  private void showResults(final String query) {
+    // The search is run in the background. If another search is started before it completes, its
+    // results are dropped.
+    final int searchNumber = ++mSearchNumber;
+    getQueryRunner()
+        .run(
+            createSearch(query),
+            new QueryRunner.Callback<SearchResults>() {
+              @Override
+              public void onQueryComplete(SearchResults results) {
+                if (results != null && searchNumber == mSearchNumber) {
+                  displayResults(query, results);
+                }
+              }
+            });
+  }
 
+  // Displays the results of the search for the given query, or the near matches if there are none.
+  private void displayResults(String query, SearchResults results) {
     // A query may be preceded by a plus to override (disable) "xifan hol" mode. This is used
-    // for internal searches. After it is passed to managedQuery (above), it can be removed.
+    // for internal searches. After it is passed to the provider (above), it can be removed.
     boolean overrideXifanHol = false;
     if (!query.isEmpty() && query.charAt(0) == '+') {
       overrideXifanHol = true;
       query = query.substring(1);
     }
 
-    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
+    SearchSettings settings = SearchSettings.get(getBaseContext());
     KlingonContentProvider.Entry queryEntry =
         new KlingonContentProvider.Entry(query, getBaseContext());
     boolean qWillBeRemapped = queryEntry.getEntryName().indexOf('q') != -1 &&
-            sharedPrefs.getBoolean(Preferences.KEY_XIFAN_HOL_CHECKBOX_PREFERENCE, /* default */ false) &&
-            sharedPrefs.getBoolean(Preferences.KEY_SWAP_QS_CHECKBOX_PREFERENCE, /* default */ false);
+            settings.isXifanHolEnabled() && settings.swapQs();
     String entryNameWithPoS =
         queryEntry.getEntryName() + queryEntry.getBracketedPartOfSpeech(/* isHtml */ true);
     if (!overrideXifanHol && qWillBeRemapped) {
@@ -350,16 +534,22 @@ public class KlingonAssistant extends BaseActivity {
       entryNameWithPoS += " [q=Q]";
     }
 
-    if (cursor == null || cursor.getCount() == 0) {
-      // There are no results.
-      mTextView.setText(
-          Html.fromHtml(getString(R.string.no_results, new Object[] {entryNameWithPoS})));
-      // The user probably made a typo, so allow them to edit the query.
+    List<EntryRow> rows = results.mRows;
+    if (results.mAreNearMatches) {
+      if (!rows.isEmpty()) {
+        mTextView.setText(
+            Html.fromHtml(getString(R.string.did_you_mean, new Object[] {entryNameWithPoS})));
+      } else {
+        mTextView.setText(
+            Html.fromHtml(getString(R.string.no_results, new Object[] {entryNameWithPoS})));
+      }
+      mEntryAdapter.setRows(rows, results.mOldRows, results.mDiff);
+      // Allow the user to edit the query.
       mPrepopulatedQuery = queryEntry.getEntryName();
 
     } else {
       // Display the number of results.
-      int count = cursor.getCount();
+      int count = rows.size();
       String countString;
       if (queryEntry.getEntryName().equals("*")) {
         // Searching for a class of phrases.
@@ -391,15 +581,14 @@ public class KlingonAssistant extends BaseActivity {
 
       // TODO: Allow TTS to speak queryEntry.getEntryName().
 
-      // Create a cursor adapter for the entries and apply them to the ListView.
-      EntryAdapter entryAdapter = new EntryAdapter(cursor);
-      mListView.setAdapter(entryAdapter);
-      mListView.setOnItemClickListener(entryAdapter);
+      // Show the rows for the entries. Only the rows which differ from the previous results are
+      // bound again.
+      mEntryAdapter.setRows(rows, results.mOldRows, results.mDiff);
 
       // Launch the entry automatically.
       // TODO: See if list view above can be skipped entirely.
       if (count == 1) {
-        launchEntry(cursor.getString(KlingonContentDatabase.COLUMN_ID));
+        launchEntry(Integer.toString(rows.get(0).getEntryId()));
       }
     }
   }
@@ -19,7 +19,11 @@ package org.tlhInganHol.android.klingonassistant;
 import android.app.SearchManager;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseErrorHandler;
+import android.database.DatabaseUtils;
 import android.database.MatrixCursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
@@ -27,20 +31,42 @@ import android.database.sqlite.SQLiteDiskIOException;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.provider.BaseColumns;
 import android.util.Log;
 import android.widget.Toast;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Contains logic to return specific entries from the database, and load the database table when it
@@ -121,7 +147,7 @@ public class KlingonContentDatabase {
   public static final int COLUMN_DEFINITION_SV = 21;
   public static final int COLUMN_NOTES_SV = 22;
   public static final int COLUMN_EXAMPLES_SV = 23;
-  public static final int COLUMN_SEARCH_TAGS_SV = 25;
+  public static final int COLUMN_SEARCH_TAGS_SV = 24;
   public static final int COLUMN_DEFINITION_RU = 25;
   public static final int COLUMN_NOTES_RU = 26;
   public static final int COLUMN_EXAMPLES_RU = 27;
@@ -184,12 +210,23 @@ public class KlingonContentDatabase {
     KEY_SEARCH_TAGS_FI,
   };
 
+  // The columns every search reads, whatever columns it was asked for, since it needs them to match
+  // and filter the entries. Any of these which weren't asked for are added after the others, so
+  // that the columns asked for keep their positions.
+  private static final String[] SEARCH_KEYS = {KEY_ID, KEY_ENTRY_NAME, KEY_PART_OF_SPEECH};
+
   // The name of the database and the database object for accessing it.
   private static final String DATABASE_NAME = "qawHaq.db";
-  private static final String FTS_VIRTUAL_TABLE = "mem";
+  public static final String FTS_VIRTUAL_TABLE = "mem";
+
+  // The asset holding the SHA-256 checksum of the bundled database, written by write_db.sh.
+  private static final String DATABASE_CHECKSUM_NAME = DATABASE_NAME + ".sha256";
 
-  // The name of the database for updates.
+  // The name of the database for updates, the name of the partially downloaded update, and the
+  // name of the previously installed database (kept so that an update can be rolled back).
   public static final String REPLACEMENT_DATABASE_NAME = "qawHaq_new.db";
+  public static final String STAGING_DATABASE_NAME = "qawHaq_new.db.part";
+  private static final String PREVIOUS_DATABASE_NAME = "qawHaq_old.db";
 
   // This should be kept in sync with the version number in the data/VERSION
   // file used to generate the database which is bundled into the app.
@@ -201,15 +238,54 @@ public class KlingonContentDatabase {
   public static final String KEY_UPDATED_DATABASE_VERSION = "updated_database_version";
   public static final String KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY =
       "updated_id_of_first_extra_entry";
+  public static final String KEY_PREVIOUS_DATABASE_VERSION = "previous_database_version";
+  public static final String KEY_PREVIOUS_ID_OF_FIRST_EXTRA_ENTRY =
+      "previous_id_of_first_extra_entry";
 
   // Arbitrary limit on max buffer length to prevent overflows and such.
   private static final int MAX_BUFFER_LENGTH = 1024;
 
+  // The size of the (direct) buffer used to copy the database in large blocks, and how many times
+  // to try copying the bundled database before giving up on a checksum mismatch.
+  private static final int COPY_BUFFER_LENGTH = 256 * 1024;
+  private static final int MAX_COPY_ATTEMPTS = 2;
+
+  // The {pIqaD} code points in the private use area, and their Latin transliterations, indexed from
+  // the first code point. Unassigned code points map to null.
+  private static final char PIQAD_FIRST_CODE_POINT = '\uF8D0';
+  private static final String[] PIQAD_TO_LATIN = {
+    "a", "b", "ch", "D", "e", "gh", "H", "I", // U+F8D0
+    "j", "l", "m", "n", "ng", "o", "p", "q", // U+F8D8
+    "Q", "r", "S", "t", "tlh", "u", "v", "w", // U+F8E0
+    "y", "'", null, null, null, null, null, null, // U+F8E8
+    "0", "1", "2", "3", "4", "5", "6", "7", // U+F8F0
+    "8", "9", // U+F8F8
+  };
+
+  // A buffer for sanitizeInput for each thread, to avoid allocating one per query.
+  private static final ThreadLocal<StringBuilder> SANITIZE_BUFFER =
+      new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+          return new StringBuilder();
+        }
+      };
+  private static final int MAX_SANITIZE_BUFFER_LENGTH = 4 * MAX_BUFFER_LENGTH;
+
+  // The most IDs to look up in a single statement, which is SQLite's default limit on the number
+  // of parameters.
+  private static final int MAX_IDS_PER_QUERY = 999;
+
+  // The signal for cancelling the query being run on each thread, if any. The multi-stage searches
+  // check it between stages, so that a screen which has gone away doesn't have to wait for them.
+  private static final ThreadLocal<CancellationSignal> sCancellationSignal =
+      new ThreadLocal<CancellationSignal>();
+
   // These are automatically updated by renumber.py in the data directory, and correspond to
   // the IDs of the first entry and one past the ID of the last non-hypothetical,
   // non-extended-canon entry in the database, respectively.
   private static final int ID_OF_FIRST_ENTRY = 10000;
-  private static final int ID_OF_FIRST_EXTRA_ENTRY = 15065;
+  static final int ID_OF_FIRST_EXTRA_ENTRY = 15065;
 
   private final KlingonDatabaseOpenHelper mDatabaseOpenHelper;
   private static final HashMap<String, String> mColumnMap = buildColumnMap();
@@ -218,6 +294,84 @@ public class KlingonContentDatabase {
   // Keeps track of whether db created/upgraded message has been displayed already.
   private static boolean mNewDatabaseMessageDisplayed = false;
 
+  /**
+   * Receives reports on the main thread while the database is initialised in the background, so
+   * that the UI can be shown before it's ready.
+   */
+  public interface InstallProgressListener {
+    // Called with the version of the database being installed and the percentage copied so far.
+    void onInstallProgress(String version, int percent);
+
+    // Called once the database is ready to be queried.
+    void onDatabaseReady();
+
+    // Called if the database couldn't be initialised. The listener stays registered, so that it is
+    // told if retrying succeeds.
+    void onDatabaseFailed();
+  }
+
+  // The listeners waiting for the database to be ready, whether it is, and whether initialising it
+  // failed. These are only accessed on the main thread.
+  private static final ArrayList<InstallProgressListener> sInstallProgressListeners =
+      new ArrayList<InstallProgressListener>();
+  private static boolean sDatabaseReady = false;
+  private static boolean sDatabaseFailed = false;
+  private static Handler sMainHandler = null;
+
+  // The "xifan hol" expanders and the exceptions they share, built lazily.
+  private Map<String, String> mXifanHolExceptions = null;
+  private XifanHolExpander mXifanHolExpander = null;
+  private XifanHolExpander mSwappedQsXifanHolExpander = null;
+
+  // The trie of entry names used to find near matches, built lazily.
+  private EntryNameTrie mEntryNameTrie = null;
+
+  // The IDs of all entries in ascending order, used to find the entries before and after an entry,
+  // loaded lazily.
+  private int[] mSortedEntryIds = null;
+
+  // The entries in each category to pick random entries from, built lazily.
+  private RandomEntrySampler mRandomEntrySampler = null;
+  private static final Random sRandom = new Random();
+
+  // Returned as an adjacent entry ID when there is no entry in that direction.
+  public static final int NO_ADJACENT_ENTRY = -1;
+
+  // The maximum number of near matches to suggest when a query has no results.
+  private static final int MAX_NEAR_MATCHES = 20;
+
+  // The languages whose definitions and search tags are used to correct misspelled queries. Chinese
+  // is excluded, since it isn't written in words made of letters, so edit distance is meaningless.
+  private static final String[] SPELLING_CORRECTION_LANGUAGES = {
+    "en", "de", "fa", "ru", "sv", "pt", "fi"
+  };
+
+  // The spelling correctors by language, loaded or built in the background for the installed
+  // database version, and saved in this directory (under the app's files directory). Building one
+  // takes a while, so queries skip correction in a language until its corrector is ready.
+  private static final String SPELLING_INDEX_DIRECTORY = "spelling";
+  private final ConcurrentHashMap<String, SpellingCorrector> mSpellingCorrectors =
+      new ConcurrentHashMap<String, SpellingCorrector>();
+  private final Object mSpellingCorrectorLock = new Object();
+
+  // The languages whose spelling correctors have been queued to be loaded or built in the
+  // background. A language stays here even if that fails (if the database couldn't be read), so
+  // that it isn't tried again for every query to this database.
+  private final HashSet<String> mSpellingCorrectorsRequested = new HashSet<String>();
+
+  // The spelling correctors of every database are loaded or built one at a time on this thread.
+  private static final long SPELLING_INDEX_KEEP_ALIVE_SECONDS = 30;
+  private static final ThreadPoolExecutor sSpellingIndexExecutor = createSpellingIndexExecutor();
+
+  // The version of the database this was opened on. A newer version may be installed while this
+  // one is still in use, so the indexes are saved under this version, not the installed one.
+  private final String mVersion;
+
+  // The number of references to this database: one while it is the current database, plus one for
+  // each query in progress and each cursor which hasn't been closed yet. Once there are none left,
+  // the database is closed and can't be used again.
+  private int mReferenceCount = 1;
+
   /**
    * Constructor
    *
@@ -241,9 +395,218 @@ public class KlingonContentDatabase {
       // Log.d(TAG, "2. Opening db.");
       mDatabaseOpenHelper.openDatabase();
     } catch (SQLException e) {
-      // Possibly an attempt to write a readonly database.
-      // Do nothing.
+      // Possibly an attempt to write a readonly database, in which case do nothing. But if the
+      // installed database is unusable, go back to the previous one, if there is one.
+      if (mDatabaseOpenHelper.rollBackDatabaseIfCorrupt()) {
+        try {
+          mDatabaseOpenHelper.openDatabase();
+        } catch (SQLException e2) {
+          // Do nothing.
+        }
+      }
+    }
+    mVersion =
+        PreferenceManager.getDefaultSharedPreferences(context)
+            .getString(KEY_INSTALLED_DATABASE_VERSION, /* default */ getBundledDatabaseVersion());
+
+    runOnMainThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            sDatabaseReady = true;
+            for (InstallProgressListener listener : sInstallProgressListeners) {
+              listener.onDatabaseReady();
+            }
+            sInstallProgressListeners.clear();
+          }
+        });
+  }
+
+  /**
+   * Returns whether an updated database has been downloaded which is newer than the installed one.
+   * If so, constructing a new KlingonContentDatabase will install it.
+   */
+  public static boolean hasUpdatedDatabase(Context context) {
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+    String installedVersion =
+        sharedPrefs.getString(
+            KEY_INSTALLED_DATABASE_VERSION, /* default */ getBundledDatabaseVersion());
+    String updatedVersion =
+        sharedPrefs.getString(KEY_UPDATED_DATABASE_VERSION, /* default */ installedVersion);
+    return updatedVersion.compareToIgnoreCase(installedVersion) > 0
+        && context.getDatabasePath(REPLACEMENT_DATABASE_NAME).exists();
+  }
+
+  /**
+   * Returns the file holding the newest database on the device, which is the downloaded update if
+   * there is one, and otherwise the installed database. Its version is KEY_UPDATED_DATABASE_VERSION
+   * or KEY_INSTALLED_DATABASE_VERSION respectively.
+   */
+  public static File getNewestDatabaseFile(Context context) {
+    return context.getDatabasePath(
+        hasUpdatedDatabase(context) ? REPLACEMENT_DATABASE_NAME : DATABASE_NAME);
+  }
+
+  /** Returns the version of the database this was opened on. */
+  public String getVersion() {
+    return mVersion;
+  }
+
+  /**
+   * Acquires a reference to this database, which must be released with {@link #release} (or by
+   * closing a cursor returned by {@link #releaseWhenClosed}).
+   *
+   * @return Whether the reference was acquired, which fails if the database has been closed
+   */
+  public synchronized boolean acquire() {
+    if (mReferenceCount == 0) {
+      return false;
     }
+    mReferenceCount++;
+    return true;
+  }
+
+  /** Releases a reference to this database, and closes it if that was the last one. */
+  public void release() {
+    synchronized (this) {
+      if (mReferenceCount == 0) {
+        throw new IllegalStateException("Database v" + mVersion + " has already been closed.");
+      }
+      if (--mReferenceCount > 0) {
+        return;
+      }
+    }
+    Log.d(TAG, "Closing database v" + mVersion + ".");
+    mDatabaseOpenHelper.close();
+  }
+
+  /**
+   * Releases a reference to this database once the given cursor is closed, or right away if the
+   * cursor doesn't read from the database.
+   *
+   * @return The cursor to use in place of the given one
+   */
+  public Cursor releaseWhenClosed(Cursor cursor) {
+    if (cursor == null || cursor instanceof MatrixCursor) {
+      release();
+      return cursor;
+    }
+    return new ReleasingCursor(cursor, this);
+  }
+
+  // A cursor which releases its reference to the database when it is closed.
+  private static class ReleasingCursor extends CursorWrapper {
+    private final KlingonContentDatabase mDatabase;
+    private boolean mReleased = false;
+
+    ReleasingCursor(Cursor cursor, KlingonContentDatabase database) {
+      super(cursor);
+      mDatabase = database;
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      synchronized (this) {
+        if (mReleased) {
+          return;
+        }
+        mReleased = true;
+      }
+      mDatabase.release();
+    }
+  }
+
+  /**
+   * Builds the in-memory indexes for the current settings, so that the first queries which need
+   * them don't have to wait. This is used to prepare a newly installed database before it replaces
+   * the one in use.
+   */
+  public void buildIndexes() {
+    SearchSettings settings = SearchSettings.get(mContext);
+    getXifanHolExpander(settings.swapQs());
+    getEntryNameTrie();
+    getSortedEntryIds();
+    getRandomEntrySampler();
+    loadSpellingCorrector("en");
+    loadSpellingCorrector(settings.getOtherLanguage());
+  }
+
+  /**
+   * Starts loading or building the spelling correctors for the current settings in the background,
+   * so that they're ready for the first query which needs one.
+   */
+  public void loadSpellingCorrectorsInBackground() {
+    SearchSettings settings = SearchSettings.get(mContext);
+    loadSpellingCorrectorInBackground("en");
+    loadSpellingCorrectorInBackground(settings.getOtherLanguage());
+  }
+
+  /**
+   * Registers a listener to be told about the progress of initialising the database, which must be
+   * called on the main thread. If the database is already ready, the listener is not registered.
+   * If initialising it has already failed, the listener is told so straight away.
+   *
+   * @return Whether the database is already ready
+   */
+  public static boolean addInstallProgressListener(InstallProgressListener listener) {
+    if (sDatabaseReady) {
+      return true;
+    }
+    sInstallProgressListeners.add(listener);
+    if (sDatabaseFailed) {
+      listener.onDatabaseFailed();
+    }
+    return false;
+  }
+
+  /** Unregisters a listener, which must be called on the main thread. */
+  public static void removeInstallProgressListener(InstallProgressListener listener) {
+    sInstallProgressListeners.remove(listener);
+  }
+
+  private static void reportInstallProgress(final String version, final int percent) {
+    runOnMainThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            for (InstallProgressListener listener : sInstallProgressListeners) {
+              listener.onInstallProgress(version, percent);
+            }
+          }
+        });
+  }
+
+  /** Tells the listeners that the database couldn't be initialised. */
+  static void reportDatabaseFailed() {
+    runOnMainThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            sDatabaseFailed = true;
+            for (InstallProgressListener listener : sInstallProgressListeners) {
+              listener.onDatabaseFailed();
+            }
+          }
+        });
+  }
+
+  /** Records that initialising the database is being retried after it failed. */
+  static void reportDatabaseRetrying() {
+    runOnMainThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            sDatabaseFailed = false;
+          }
+        });
+  }
+
+  private static synchronized void runOnMainThread(Runnable runnable) {
+    if (sMainHandler == null) {
+      sMainHandler = new Handler(Looper.getMainLooper());
+    }
+    sMainHandler.post(runnable);
   }
 
   /**
@@ -285,6 +648,34 @@ public class KlingonContentDatabase {
     return query(selection, selectionArgs, columns);
   }
 
+  /**
+   * Returns the columns needed to show entries in a list of results: their names, parts of speech,
+   * and definitions, along with their definitions in the given other language, if there is one.
+   */
+  public static String[] getListKeys(String otherLang) {
+    String otherLanguageDefinitionKey = getDefinitionKey(otherLang, /* useSearchTags */ false);
+    if (otherLanguageDefinitionKey.equals(KEY_DEFINITION)) {
+      return new String[] {KEY_ID, KEY_ENTRY_NAME, KEY_PART_OF_SPEECH, KEY_DEFINITION};
+    }
+    return new String[] {
+      KEY_ID, KEY_ENTRY_NAME, KEY_PART_OF_SPEECH, KEY_DEFINITION, otherLanguageDefinitionKey
+    };
+  }
+
+  // Returns the columns to read for a search which was asked for the given columns.
+  private static String[] getQueryColumns(String[] columns) {
+    if (columns == null) {
+      return ALL_KEYS;
+    }
+    List<String> queryColumns = new ArrayList<String>(Arrays.asList(columns));
+    for (String key : SEARCH_KEYS) {
+      if (!queryColumns.contains(key)) {
+        queryColumns.add(key);
+      }
+    }
+    return queryColumns.toArray(new String[queryColumns.size()]);
+  }
+
   /**
    * Convert a string written in "xifan hol" shorthand to {tlhIngan Hol}. This is a mapping which
    * makes it easier to type, since shifting is unnecessary.
@@ -295,102 +686,127 @@ public class KlingonContentDatabase {
    * <p>When replacing "h" with "H", the following must be preserved: ch -> ch gh -> gh tlh -> tlh
    * ngh -> ngh (n + gh) ngH -> ngH (ng + H)
    *
+   * <p>See {@link XifanHolExpander} for how the ambiguous "ngh" and "ng" are resolved.
+   *
    * <p>TODO: Consider allowing "invisible h". But this probably makes things too "loose". // c ->
    * ch (but ch -/> chh) // g -> gh (but gh -/> ghh and ng -/> ngh)
    */
-  private String expandShorthand(String shorthand) {
-    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-    if (!sharedPrefs.getBoolean(
-        Preferences.KEY_XIFAN_HOL_CHECKBOX_PREFERENCE, /* default */ false)) {
+  private String expandShorthand(String shorthand, SearchSettings settings) {
+    if (!settings.isXifanHolEnabled()) {
       // The user has disabled the "xifan hol" shorthand, so just do nothing and return.
       return shorthand;
     }
-    if (sharedPrefs.getBoolean(Preferences.KEY_SWAP_QS_CHECKBOX_PREFERENCE, /* default */ false)) {
-      // Map q to Q and k to q.
-      shorthand = shorthand.replaceAll("q", "Q");
-      shorthand = shorthand.replaceAll("k", "q");
-    }
-
-    // Note: The order of the replacements is important.
-    return shorthand
-        .replaceAll("ngH", "NGH") // differentiate "ngh" from "ngH"
-        .replaceAll("h", "H") // side effects: ch -> cH, gh -> gH (also ngh -> ngH), tlh -> tlH
-        .replaceAll("cH", "ch") // restore "ch"
-        .replaceAll("gH", "gh") // restore "gh" (also "ngh")
-        .replaceAll("tlH", "tlh") // restore "tlh"
-        .replaceAll("g", "gX") // g -> gX, side effects: gh -> gXh, ng -> ngX
-        .replaceAll("gXh", "gh") // restore "gh"
-        .replaceAll("ngX", "ng") // restore "ng"
-        .replaceAll("gX", "gh") // g -> gh
-        .replaceAll("NGH", "ngH") // restore "ngH"
-        .replaceAll("c", "cX") // c -> cX, side effect: ch -> cXh
-        .replaceAll("cXh", "ch") // restore "ch"
-        .replaceAll("cX", "ch") // c -> ch
-        .replaceAll("d", "D") // do unambiguous replacements
-        .replaceAll("f", "ng")
-        .replaceAll("i", "I")
-        .replaceAll("k", "Q") // If the swap Qs preference was selected, this will have no effect.
-        .replaceAll("s", "S")
-        .replaceAll("z", "'")
-        .replaceAll("x", "tlh")
-        // At this point, "ngH" is definitely {ng} + {H}, but "ngh" might be either {n} + {gh} or
-        // {ng} + {H}. Furthermore, "ng" might be {ng} or {n} + {gh}.
-        // These are the possible words with {n} + {gh}: {nenghep}, {QIngheb}, {tlhonghaD}
-        // These are the possible words with {ng} + {H}: {chungHa'wI'}, {mangHom}, {qengHoD},
-        // {tungHa'}, {vengHom}. Instead of checking both, cheat by hardcoding the possibilities.
-        // This means this code has to be updated whenever an entry with {ngH} or {ngh} is
-        // added to the database.
-        .replaceAll("(chung|mang|qeng|tung|veng)h", "$1H")
-        .replaceAll("Hanguq", "Hanghuq")
-        .replaceAll("nengep", "nenghep")
-        .replaceAll("QIngeb", "QIngheb")
-        .replaceAll("tlhongaD", "tlhonghaD");
-  }
-
-  public static String sanitizeInput(String s) {
-    // Sanitize for SQL. Assume double-quote is a typo for single-quote. Convert {pIqaD} to Latin.
-    // Also trim.
-    return s.replaceAll("\"", "'")
-        .replaceAll("", "gh")
-        .replaceAll("", "ng")
-        .replaceAll("", "tlh")
-        .replaceAll("", "a")
-        .replaceAll("", "b")
-        .replaceAll("", "ch")
-        .replaceAll("", "D")
-        .replaceAll("", "e")
-        .replaceAll("", "H")
-        .replaceAll("", "I")
-        .replaceAll("", "j")
-        .replaceAll("", "l")
-        .replaceAll("", "m")
-        .replaceAll("", "n")
-        .replaceAll("", "o")
-        .replaceAll("", "p")
-        .replaceAll("", "q")
-        .replaceAll("", "Q")
-        .replaceAll("", "r")
-        .replaceAll("", "S")
-        .replaceAll("", "t")
-        .replaceAll("", "u")
-        .replaceAll("", "v")
-        .replaceAll("", "w")
-        .replaceAll("", "y")
-        .replaceAll("", "'")
-        .replaceAll("", "0")
-        .replaceAll("", "1")
-        .replaceAll("", "2")
-        .replaceAll("", "3")
-        .replaceAll("", "4")
-        .replaceAll("", "5")
-        .replaceAll("", "6")
-        .replaceAll("", "7")
-        .replaceAll("", "8")
-        .replaceAll("", "9")
-        .replaceAll("’", "'") // "smart" quote
-        .replaceAll("‘", "'") // "smart" left quote
-        .replaceAll("\u2011", "-") // non-breaking hyphen
-        .trim();
+    return getXifanHolExpander(settings.swapQs()).expand(shorthand);
+  }
+
+  // Returns the "xifan hol" expander for the given setting of the "swap q and Q" preference,
+  // compiling it (and deriving its exceptions from the database) on first use.
+  private synchronized XifanHolExpander getXifanHolExpander(boolean swapQs) {
+    if (mXifanHolExceptions == null) {
+      ArrayList<String> entryNames = new ArrayList<String>();
+      Cursor cursor = null;
+      try {
+        cursor =
+            mDatabaseOpenHelper
+                .getReadableDatabase()
+                .query(
+                    FTS_VIRTUAL_TABLE,
+                    new String[] {KEY_ENTRY_NAME},
+                    KEY_ENTRY_NAME + " LIKE \"%ng%\"",
+                    null,
+                    null,
+                    null,
+                    null);
+        while (cursor.moveToNext()) {
+          entryNames.add(cursor.getString(0));
+        }
+      } catch (SQLiteException e) {
+        // Without the exceptions, "ngh" is always {n} + {gh}, and "ng" is always {ng}.
+        Log.e(TAG, "Failed to read entry names for xifan hol exceptions.", e);
+      } finally {
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
+      mXifanHolExceptions = XifanHolExpander.buildExceptions(entryNames);
+    }
+    if (swapQs) {
+      if (mSwappedQsXifanHolExpander == null) {
+        mSwappedQsXifanHolExpander = new XifanHolExpander(true, mXifanHolExceptions);
+      }
+      return mSwappedQsXifanHolExpander;
+    }
+    if (mXifanHolExpander == null) {
+      mXifanHolExpander = new XifanHolExpander(false, mXifanHolExceptions);
+    }
+    return mXifanHolExpander;
+  }
+
+  /**
+   * Sanitizes a query. Assume double-quote is a typo for single-quote, convert {pIqaD} to Latin,
+   * normalise "smart" quotes and non-breaking hyphens, and trim.
+   */
+  public static String sanitizeInput(CharSequence s) {
+    StringBuilder sb = SANITIZE_BUFFER.get();
+    sb.setLength(0);
+    if (!sanitizeInput(s, sb)) {
+      // Nothing was changed, so avoid a copy if possible.
+      return s.toString();
+    }
+    String result = sb.toString();
+    if (sb.capacity() > MAX_SANITIZE_BUFFER_LENGTH) {
+      // Don't hold on to the buffer used for an unusually long (probably pasted) input.
+      SANITIZE_BUFFER.remove();
+    }
+    return result;
+  }
+
+  /**
+   * Appends a sanitized copy of s to the given buffer, in a single pass over s.
+   *
+   * @return Whether the sanitized text differs from s
+   */
+  public static boolean sanitizeInput(CharSequence s, StringBuilder out) {
+    // Trimming first is equivalent to trimming afterwards, since no replacement adds or removes
+    // whitespace.
+    int start = 0;
+    int end = s.length();
+    while (start < end && s.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && s.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    boolean changed = start > 0 || end < s.length();
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      String replacement = getSanitizedReplacement(c);
+      if (replacement == null) {
+        out.append(c);
+      } else {
+        out.append(replacement);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  // Returns the replacement for a character in a query, or null if it should be kept.
+  private static String getSanitizedReplacement(char c) {
+    if (c >= PIQAD_FIRST_CODE_POINT && c < PIQAD_FIRST_CODE_POINT + PIQAD_TO_LATIN.length) {
+      return PIQAD_TO_LATIN[c - PIQAD_FIRST_CODE_POINT];
+    }
+    switch (c) {
+      case '"':
+        return "'";
+      case '\u2018': // "smart" left quote
+      case '\u2019': // "smart" quote
+        return "'";
+      case '\u2011': // non-breaking hyphen
+        return "-";
+      default:
+        return null;
+    }
   }
 
   private boolean IsPotentialComplexWordOrSentence(KlingonContentProvider.Entry queryEntry,
@@ -423,6 +839,23 @@ public class KlingonContentDatabase {
     return false;
   }
 
+  /** Sets the signal for cancelling the searches run on this thread, or clears it if null. */
+  public static void setCancellationSignal(CancellationSignal cancellationSignal) {
+    if (cancellationSignal != null) {
+      sCancellationSignal.set(cancellationSignal);
+    } else {
+      sCancellationSignal.remove();
+    }
+  }
+
+  // Throws OperationCanceledException if the search being run on this thread has been cancelled.
+  private static void throwIfCanceled() {
+    CancellationSignal cancellationSignal = sCancellationSignal.get();
+    if (cancellationSignal != null) {
+      cancellationSignal.throwIfCanceled();
+    }
+  }
+
   /**
    * Returns a Cursor over all entries that match the given query.
    *
@@ -430,6 +863,18 @@ public class KlingonContentDatabase {
    * @return Cursor over all entries that match, or null if none found.
    */
   public Cursor getEntryMatches(String query) {
+    return getEntryMatches(query, null);
+  }
+
+  /**
+   * Returns a Cursor over all entries that match the given query, with the given columns. Only
+   * those columns (and the ones the search itself needs) are read from the database.
+   *
+   * @param query The query, including entry name and metadata, to search for.
+   * @param columns The columns to include, if null then all are included
+   * @return Cursor over all entries that match, or null if none found.
+   */
+  public Cursor getEntryMatches(String query, String[] columns) {
     // A query may be preceded by a plus to override (disable) "xifan hol" mode. This is used
     // for internal searches.
     boolean overrideXifanHol = false;
@@ -440,9 +885,11 @@ public class KlingonContentDatabase {
 
     // Sanitize input.
     query = sanitizeInput(query);
+    SearchSettings settings = SearchSettings.get(mContext);
 
     // Log.d(TAG, "getEntryMatches called with query: \"" + query + "\"");
-    MatrixCursor resultsCursor = new MatrixCursor(ALL_KEYS);
+    String[] queryColumns = getQueryColumns(columns);
+    MatrixCursor resultsCursor = new MatrixCursor(queryColumns);
     HashSet<Integer> resultsSet = new HashSet<Integer>();
 
     // Parse the query's metadata, and get the base query.
@@ -472,26 +919,27 @@ public class KlingonContentDatabase {
         // Specifically, if this is a query for a sentence class, search exactly for the matching
         // sentences.
         // We know the query begins with "*:" so strip that to get the sentence class.
-        return getMatchingSentences(query.substring(2));
+        return getMatchingSentences(query.substring(2), queryColumns);
       }
     } else if (overrideXifanHol) {
       looseQuery = queryBase;
     } else {
       // Assume the user is searching for an "exact" Klingon word or phrase, subject to
       // "xifan hol" loosening (if enabled).
-      looseQuery = expandShorthand(queryBase);
+      looseQuery = expandShorthand(queryBase, settings);
     }
 
     // TODO: Add option to search English and other-language fields first, followed by Klingon.
     // (Many users are searching for a Klingon word using a non-Klingon search query, rather
     // than the other way around.)
+    throwIfCanceled();
     if (IsPotentialComplexWordOrSentence(queryEntry, looseQuery)) {
       // If the query matches some heuristics, try to parse it as a complex word or sentence.
       parseQueryAsComplexWordOrSentence(looseQuery, resultsCursor, resultsSet);
     } else {
       // Otherwise, assume the base query is a prefix of the desired result.
       Cursor resultsWithGivenPrefixCursor =
-          getEntriesContainingQuery(looseQuery, /* isPrefix */ true);
+          getEntriesContainingQuery(looseQuery, /* isPrefix */ true, queryColumns);
       copyCursorEntries(
           resultsCursor, resultsSet, resultsWithGivenPrefixCursor, /* filter */ true, queryEntry);
       if (resultsWithGivenPrefixCursor != null) {
@@ -502,6 +950,7 @@ public class KlingonContentDatabase {
     // If the query was made without a base part of speech, expand the
     // search to include entries not beginning with the query, and also
     // search on the (English) definition and search tags.
+    throwIfCanceled();
     if (queryEntry.basePartOfSpeechIsUnknown()) {
       // Try the entries, but not from the beginning. Limit to at
       // least 2 characters as anything less than that isn't meaningful in
@@ -510,7 +959,7 @@ public class KlingonContentDatabase {
       int klingonNonPrefixMinLength = 2;
       if (queryEntry.getEntryName().length() >= klingonNonPrefixMinLength) {
         Cursor resultsWithGivenQueryCursor =
-            getEntriesContainingQuery(looseQuery, /* isPrefix */ false);
+            getEntriesContainingQuery(looseQuery, /* isPrefix */ false, queryColumns);
         copyCursorEntries(
             resultsCursor, resultsSet, resultsWithGivenQueryCursor, /* filter */ false, null);
         if (resultsWithGivenQueryCursor != null) {
@@ -518,97 +967,650 @@ public class KlingonContentDatabase {
         }
       }
 
-      // Match definitions, from beginning. Since the definition is (almost
-      // always) canonical, always search in English. Additionally search in
-      // other-language if that option is set.
+      matchDefinitionsAndSearchTags(queryBase, settings, resultsCursor, resultsSet);
+
+      // If nothing matched at all, the query might be a misspelled English (or other-language)
+      // word, so search the definitions and search tags again with the best correction.
+      if (resultsCursor.getCount() == 0) {
+        String correctedQuery = correctSpelling(queryBase, settings);
+        if (correctedQuery != null) {
+          matchDefinitionsAndSearchTags(correctedQuery, settings, resultsCursor, resultsSet);
+        }
+      }
+    }
+
+    return resultsCursor;
+  }
+
+  // Helper method to match the definitions and search tags, in English and other-language, in
+  // order of relevance.
+  private void matchDefinitionsAndSearchTags(
+      String piece,
+      SearchSettings settings,
+      MatrixCursor resultsCursor,
+      HashSet<Integer> resultsSet) {
+    // Match definitions, from beginning. Since the definition is (almost
+    // always) canonical, always search in English. Additionally search in
+    // other-language if that option is set.
+    matchDefinitionsOrSearchTags(
+        piece,
+        true, /* isPrefix */
+        false, /* useSearchTags */
+        false, /* searchOtherLanguageDefinitions */
+        settings,
+        resultsCursor,
+        resultsSet);
+    matchDefinitionsOrSearchTags(
+        piece,
+        true, /* isPrefix */
+        false, /* useSearchTags */
+        true, /* searchOtherLanguageDefinitions */
+        settings,
+        resultsCursor,
+        resultsSet);
+
+    // Match definitions, anywhere else. Again, always search in English, and
+    // additionally search in other-language if that option is set. Limit to 3
+    // characters as there would be too many coincidental hits otherwise, except
+    // if other-language is Chinese.
+    final String otherLang = settings.getOtherLanguage();
+    int englishNonPrefixMinLength = 3;
+    int otherLanguageNonPrefixMinLength = otherLang.equals("zh-HK") ? 1 : 3;
+
+    if (piece.length() >= englishNonPrefixMinLength) {
       matchDefinitionsOrSearchTags(
-          queryBase,
-          true, /* isPrefix */
+          piece,
+          false, /* isPrefix */
           false, /* useSearchTags */
           false, /* searchOtherLanguageDefinitions */
+          settings,
           resultsCursor,
           resultsSet);
+    }
+    if (piece.length() >= otherLanguageNonPrefixMinLength) {
       matchDefinitionsOrSearchTags(
-          queryBase,
-          true, /* isPrefix */
+          piece,
+          false, /* isPrefix */
           false, /* useSearchTags */
           true, /* searchOtherLanguageDefinitions */
+          settings,
           resultsCursor,
           resultsSet);
+    }
 
-      // Match definitions, anywhere else. Again, always search in English, and
-      // additionally search in other-language if that option is set. Limit to 3
-      // characters as there would be too many coincidental hits otherwise, except
-      // if other-language is Chinese.
-      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-      final String otherLang =
-          sharedPrefs.getString(
-              Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
-              Preferences.getSystemPreferredLanguage());
-      int englishNonPrefixMinLength = 3;
-      int otherLanguageNonPrefixMinLength = otherLang.equals("zh-HK") ? 1 : 3;
-
-      if (queryEntry.getEntryName().length() >= englishNonPrefixMinLength) {
-        matchDefinitionsOrSearchTags(
-            queryBase,
-            false, /* isPrefix */
-            false, /* useSearchTags */
-            false, /* searchOtherLanguageDefinitions */
-            resultsCursor,
-            resultsSet);
-      }
-      if (queryEntry.getEntryName().length() >= otherLanguageNonPrefixMinLength) {
-        matchDefinitionsOrSearchTags(
-            queryBase,
-            false, /* isPrefix */
-            false, /* useSearchTags */
-            true, /* searchOtherLanguageDefinitions */
-            resultsCursor,
-            resultsSet);
-      }
-
-      // Match search tags, from beginning, then anywhere else.
-      if (queryEntry.getEntryName().length() >= englishNonPrefixMinLength) {
-        matchDefinitionsOrSearchTags(
-            queryBase,
-            true, /* isPrefix */
-            true, /* useSearchTags */
-            false, /* searchOtherLanguageDefinitions */
-            resultsCursor,
-            resultsSet);
-      }
-      if (queryEntry.getEntryName().length() >= otherLanguageNonPrefixMinLength) {
-        matchDefinitionsOrSearchTags(
-            queryBase,
-            true, /* isPrefix */
-            true, /* useSearchTags */
-            true, /* searchOtherLanguageDefinitions */
-            resultsCursor,
-            resultsSet);
-      }
-      if (queryEntry.getEntryName().length() >= englishNonPrefixMinLength) {
-        matchDefinitionsOrSearchTags(
-            queryBase,
-            false, /* isPrefix */
-            true, /* useSearchTags */
-            false, /* searchOtherLanguageDefinitions */
-            resultsCursor,
-            resultsSet);
-      }
-      if (queryEntry.getEntryName().length() >= otherLanguageNonPrefixMinLength) {
-        matchDefinitionsOrSearchTags(
-            queryBase,
-            false, /* isPrefix */
-            true, /* useSearchTags */
-            true, /* searchOtherLanguageDefinitions */
-            resultsCursor,
-            resultsSet);
+    // Match search tags, from beginning, then anywhere else.
+    if (piece.length() >= englishNonPrefixMinLength) {
+      matchDefinitionsOrSearchTags(
+          piece,
+          true, /* isPrefix */
+          true, /* useSearchTags */
+          false, /* searchOtherLanguageDefinitions */
+          settings,
+          resultsCursor,
+          resultsSet);
+    }
+    if (piece.length() >= otherLanguageNonPrefixMinLength) {
+      matchDefinitionsOrSearchTags(
+          piece,
+          true, /* isPrefix */
+          true, /* useSearchTags */
+          true, /* searchOtherLanguageDefinitions */
+          settings,
+          resultsCursor,
+          resultsSet);
+    }
+    if (piece.length() >= englishNonPrefixMinLength) {
+      matchDefinitionsOrSearchTags(
+          piece,
+          false, /* isPrefix */
+          true, /* useSearchTags */
+          false, /* searchOtherLanguageDefinitions */
+          settings,
+          resultsCursor,
+          resultsSet);
+    }
+    if (piece.length() >= otherLanguageNonPrefixMinLength) {
+      matchDefinitionsOrSearchTags(
+          piece,
+          false, /* isPrefix */
+          true, /* useSearchTags */
+          true, /* searchOtherLanguageDefinitions */
+          settings,
+          resultsCursor,
+          resultsSet);
+    }
+  }
+
+  /**
+   * Returns a Cursor over the entries whose names are near matches for the given query, closest
+   * first. This is meant to be used when getEntryMatches finds nothing, to suggest what the user
+   * might have meant.
+   *
+   * @param query The query, as it was passed to getEntryMatches.
+   * @param columns The columns to include, if null then all are included
+   * @return Cursor over the near matches, which may be empty.
+   */
+  public Cursor getNearMatches(String query, String[] columns) {
+    boolean overrideXifanHol = false;
+    if (!query.isEmpty() && query.charAt(0) == '+') {
+      overrideXifanHol = true;
+      query = query.substring(1);
+    }
+    query = sanitizeInput(query);
+    SearchSettings settings = SearchSettings.get(mContext);
+    String[] queryColumns = getQueryColumns(columns);
+    MatrixCursor resultsCursor = new MatrixCursor(queryColumns);
+    if (query.indexOf(':') != -1) {
+      // System queries are never mistyped.
+      return resultsCursor;
+    }
+
+    KlingonContentProvider.Entry queryEntry = new KlingonContentProvider.Entry(query, mContext);
+    String queryBase = queryEntry.getEntryName();
+    String looseQuery = overrideXifanHol ? queryBase : expandShorthand(queryBase, settings);
+    List<EntryNameTrie.NearMatch> nearMatches =
+        getEntryNameTrie().findNearMatches(looseQuery, MAX_NEAR_MATCHES);
+    if (nearMatches.isEmpty()) {
+      return resultsCursor;
+    }
+
+    // Fetch all of the near matches at once, then add them in order of closeness.
+    StringBuilder ids = new StringBuilder();
+    for (EntryNameTrie.NearMatch nearMatch : nearMatches) {
+      if (ids.length() != 0) {
+        ids.append(',');
+      }
+      ids.append(nearMatch.getId());
+    }
+    HashMap<Integer, KlingonContentProvider.Entry> entries =
+        new HashMap<Integer, KlingonContentProvider.Entry>();
+    Cursor cursor = null;
+    try {
+      cursor =
+          mDatabaseOpenHelper
+              .getReadableDatabase()
+              .query(
+                  FTS_VIRTUAL_TABLE,
+                  queryColumns,
+                  KEY_ID + " IN (" + ids + ")",
+                  null,
+                  null,
+                  null,
+                  null);
+      while (cursor.moveToNext()) {
+        KlingonContentProvider.Entry entry = new KlingonContentProvider.Entry(cursor, mContext);
+        entries.put(entry.getId(), entry);
+      }
+    } catch (SQLiteException e) {
+      Log.e(TAG, "Failed to read near matches.", e);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
       }
     }
+    for (EntryNameTrie.NearMatch nearMatch : nearMatches) {
+      KlingonContentProvider.Entry entry = entries.get(nearMatch.getId());
+      if (entry != null) {
+        resultsCursor.addRow(
+            convertEntryToCursorRow(entry, /* indent */ false, resultsCursor.getColumnNames()));
+      }
+    }
+    resultsCursor.moveToFirst();
+    return resultsCursor;
+  }
 
+  /**
+   * Finds the entry with exactly the given name and part of speech, preferring the homophone with
+   * the given (English) definition. The name is looked up in the trie of entry names rather than
+   * searched for, so only its homophones are read from the database.
+   *
+   * @param query The entry name and part of speech, e.g., "Qapla':excl"
+   * @param definition The definition to prefer, or null
+   * @param columns The columns to include, if null then all are included
+   * @return Cursor over the entry found, which is empty if there is none
+   */
+  public Cursor findEntry(String query, String definition, String[] columns) {
+    // The definition is needed to choose between homophones.
+    String[] queryColumns = getQueryColumns(columns);
+    if (!Arrays.asList(queryColumns).contains(KEY_DEFINITION)) {
+      queryColumns = Arrays.copyOf(queryColumns, queryColumns.length + 1);
+      queryColumns[queryColumns.length - 1] = KEY_DEFINITION;
+    }
+    MatrixCursor resultsCursor = new MatrixCursor(queryColumns);
+    KlingonContentProvider.Entry queryEntry = new KlingonContentProvider.Entry(query, mContext);
+    int[] ids = getEntryNameTrie().findExact(queryEntry.getEntryName());
+    if (ids.length == 0) {
+      return resultsCursor;
+    }
+
+    StringBuilder idList = new StringBuilder();
+    for (int id : ids) {
+      if (idList.length() != 0) {
+        idList.append(',');
+      }
+      idList.append(id);
+    }
+    KlingonContentProvider.Entry bestEntry = null;
+    Cursor cursor = null;
+    try {
+      cursor =
+          mDatabaseOpenHelper
+              .getReadableDatabase()
+              .query(
+                  FTS_VIRTUAL_TABLE,
+                  queryColumns,
+                  KEY_ID + " IN (" + idList + ")",
+                  null,
+                  null,
+                  null,
+                  KEY_ID);
+      while (cursor.moveToNext()) {
+        KlingonContentProvider.Entry entry = new KlingonContentProvider.Entry(cursor, mContext);
+        if (!queryEntry.isSatisfiedBy(entry)) {
+          continue;
+        }
+        if (definition != null && entry.getDefinition().equals(definition)) {
+          bestEntry = entry;
+          break;
+        } else if (bestEntry == null) {
+          // No match for the definition yet, so fall back to the first homophone.
+          bestEntry = entry;
+        }
+      }
+    } catch (SQLiteException e) {
+      Log.e(TAG, "Failed to find entry " + query + ".", e);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    if (bestEntry != null) {
+      resultsCursor.addRow(
+          convertEntryToCursorRow(bestEntry, /* indent */ false, resultsCursor.getColumnNames()));
+    }
+    resultsCursor.moveToFirst();
     return resultsCursor;
   }
 
+  // Returns the trie of entry names used to find near matches, building it on first use.
+  private synchronized EntryNameTrie getEntryNameTrie() {
+    if (mEntryNameTrie == null) {
+      EntryNameTrie trie = new EntryNameTrie();
+      Cursor cursor = null;
+      try {
+        cursor =
+            mDatabaseOpenHelper
+                .getReadableDatabase()
+                .query(
+                    FTS_VIRTUAL_TABLE,
+                    new String[] {KEY_ID, KEY_ENTRY_NAME},
+                    null,
+                    null,
+                    null,
+                    null,
+                    null);
+        while (cursor.moveToNext()) {
+          trie.add(cursor.getString(1), cursor.getInt(0));
+        }
+      } catch (SQLiteException e) {
+        Log.e(TAG, "Failed to read entry names for near matches.", e);
+      } finally {
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
+      mEntryNameTrie = trie;
+    }
+    return mEntryNameTrie;
+  }
+
+  /**
+   * Returns the IDs of the entries immediately before and after the given entry ID (which need not
+   * exist), or NO_ADJACENT_ENTRY where there isn't one. This doesn't query the database, except to
+   * load the IDs the first time.
+   */
+  public int[] getAdjacentEntryIds(int entryId) {
+    return findAdjacentEntryIds(getSortedEntryIds(), entryId);
+  }
+
+  // Finds the IDs before and after the given one in a sorted array of IDs.
+  static int[] findAdjacentEntryIds(int[] sortedIds, int entryId) {
+    int index = Arrays.binarySearch(sortedIds, entryId);
+    // If the ID isn't there, start from where it would be inserted.
+    int previousIndex = (index >= 0) ? index - 1 : -index - 2;
+    int nextIndex = (index >= 0) ? index + 1 : -index - 1;
+    return new int[] {
+      previousIndex >= 0 ? sortedIds[previousIndex] : NO_ADJACENT_ENTRY,
+      nextIndex < sortedIds.length ? sortedIds[nextIndex] : NO_ADJACENT_ENTRY
+    };
+  }
+
+  // Returns the IDs of all entries in ascending order, reading them on first use.
+  private synchronized int[] getSortedEntryIds() {
+    if (mSortedEntryIds == null) {
+      int[] ids = new int[0];
+      Cursor cursor = null;
+      try {
+        cursor =
+            mDatabaseOpenHelper
+                .getReadableDatabase()
+                .query(
+                    FTS_VIRTUAL_TABLE,
+                    new String[] {KEY_ID},
+                    null,
+                    null,
+                    null,
+                    null,
+                    KEY_ID);
+        ids = new int[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+          ids[i] = cursor.getInt(0);
+        }
+      } catch (SQLiteException e) {
+        Log.e(TAG, "Failed to read entry IDs.", e);
+      } finally {
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
+      mSortedEntryIds = ids;
+    }
+    return mSortedEntryIds;
+  }
+
+  // Returns the query with each misspelled word replaced by its best correction in English (or
+  // failing that, other-language), or null if nothing could be corrected.
+  private String correctSpelling(String query, SearchSettings settings) {
+    String otherLang = settings.getOtherLanguage();
+    SpellingCorrector englishCorrector = getSpellingCorrectorIfReady("en");
+    SpellingCorrector otherLanguageCorrector =
+        otherLang.equals("en") ? null : getSpellingCorrectorIfReady(otherLang);
+
+    boolean corrected = false;
+    StringBuilder correctedQuery = new StringBuilder();
+    for (String word : query.trim().split(" +")) {
+      String correction = englishCorrector == null ? null : englishCorrector.correct(word);
+      if (correction == null && otherLanguageCorrector != null) {
+        correction = otherLanguageCorrector.correct(word);
+      }
+      if (correction != null) {
+        corrected = true;
+        word = correction;
+      }
+      if (correctedQuery.length() > 0) {
+        correctedQuery.append(' ');
+      }
+      correctedQuery.append(word);
+    }
+    return corrected ? correctedQuery.toString() : null;
+  }
+
+  // Returns the spelling corrector for the given language if it's ready, or null. If it isn't, it
+  // is loaded or built in the background, rather than holding up the query.
+  private SpellingCorrector getSpellingCorrectorIfReady(String lang) {
+    if (!Arrays.asList(SPELLING_CORRECTION_LANGUAGES).contains(lang)) {
+      return null;
+    }
+    SpellingCorrector corrector = mSpellingCorrectors.get(lang);
+    if (corrector == null) {
+      loadSpellingCorrectorInBackground(lang);
+    }
+    return corrector;
+  }
+
+  private void loadSpellingCorrectorInBackground(final String lang) {
+    if (!Arrays.asList(SPELLING_CORRECTION_LANGUAGES).contains(lang)
+        || mSpellingCorrectors.containsKey(lang)) {
+      return;
+    }
+    synchronized (mSpellingCorrectorsRequested) {
+      if (!mSpellingCorrectorsRequested.add(lang)) {
+        return;
+      }
+    }
+    sSpellingIndexExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            // Hold a reference, so that the database isn't closed while this reads it.
+            if (acquire()) {
+              try {
+                loadSpellingCorrector(lang);
+              } finally {
+                release();
+              }
+            }
+          }
+        });
+  }
+
+  private static ThreadPoolExecutor createSpellingIndexExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            /* corePoolSize */ 1,
+            /* maximumPoolSize */ 1,
+            SPELLING_INDEX_KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "KlingonSpellingIndex");
+              }
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  // Returns the spelling corrector for the given language, or null if there isn't one. It is read
+  // from the files directory if it was saved there for this database version, and otherwise built
+  // from the definitions and search tags and then saved. This may take a while, so it's only
+  // called in the background.
+  private SpellingCorrector loadSpellingCorrector(String lang) {
+    if (!Arrays.asList(SPELLING_CORRECTION_LANGUAGES).contains(lang)) {
+      return null;
+    }
+    synchronized (mSpellingCorrectorLock) {
+      return loadSpellingCorrectorLocked(lang);
+    }
+  }
+
+  private SpellingCorrector loadSpellingCorrectorLocked(String lang) {
+    SpellingCorrector corrector = mSpellingCorrectors.get(lang);
+    if (corrector != null) {
+      return corrector;
+    }
+
+    File directory = new File(mContext.getFilesDir(), SPELLING_INDEX_DIRECTORY);
+    File indexFile = new File(directory, lang + "-" + mVersion);
+    if (indexFile.exists()) {
+      DataInputStream in = null;
+      try {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        corrector = SpellingCorrector.readFrom(in);
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to read spelling index " + indexFile + ".", e);
+      } finally {
+        closeQuietly(in);
+      }
+    }
+
+    if (corrector == null) {
+      corrector = buildSpellingCorrector(lang);
+      if (corrector == null) {
+        return null;
+      }
+
+      // Remove the indices for other database versions, then save this one.
+      File[] staleFiles = directory.listFiles();
+      if (staleFiles != null) {
+        for (File staleFile : staleFiles) {
+          if (staleFile.getName().startsWith(lang + "-")) {
+            staleFile.delete();
+          }
+        }
+      }
+      File tempFile = new File(directory, indexFile.getName() + ".tmp");
+      DataOutputStream out = null;
+      try {
+        directory.mkdirs();
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        corrector.writeTo(out);
+        out.close();
+        out = null;
+        if (!tempFile.renameTo(indexFile)) {
+          throw new IOException("Unable to rename " + tempFile + ".");
+        }
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to save spelling index " + indexFile + ".", e);
+        tempFile.delete();
+      } finally {
+        closeQuietly(out);
+      }
+    }
+    mSpellingCorrectors.put(lang, corrector);
+    return corrector;
+  }
+
+  // Builds the spelling corrector for the given language from the database, or returns null if the
+  // database couldn't be read.
+  private SpellingCorrector buildSpellingCorrector(String lang) {
+    HashMap<String, Integer> vocabulary = new HashMap<String, Integer>();
+    Cursor cursor = null;
+    try {
+      cursor =
+          mDatabaseOpenHelper
+              .getReadableDatabase()
+              .query(
+                  FTS_VIRTUAL_TABLE,
+                  new String[] {
+                    getDefinitionKey(lang, /* useSearchTags */ false),
+                    getDefinitionKey(lang, /* useSearchTags */ true)
+                  },
+                  null,
+                  null,
+                  null,
+                  null,
+                  null);
+      while (cursor.moveToNext()) {
+        SpellingCorrector.addWords(cursor.getString(0), vocabulary);
+        SpellingCorrector.addWords(cursor.getString(1), vocabulary);
+      }
+    } catch (SQLiteException e) {
+      Log.e(TAG, "Failed to read vocabulary for spelling correction.", e);
+      return null;
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    return SpellingCorrector.build(vocabulary);
+  }
+
+  /**
+   * Stages a downloaded database to replace the installed one the next time the database is
+   * initialised. The file should have been fully written and synced. If it passes the integrity
+   * check, it is renamed into place and the version keys are committed together.
+   *
+   * @param context The Context within which to work
+   * @param file The downloaded database
+   * @param version The version of the downloaded database
+   * @param firstExtraEntryId The ID of the first extra entry in the downloaded database
+   * @throws IOException If the database is unusable or couldn't be staged
+   */
+  public static void stageReplacementDatabase(
+      Context context, File file, String version, int firstExtraEntryId) throws IOException {
+    try {
+      setRollbackJournalMode(file);
+    } catch (SQLiteException e) {
+      file.delete();
+      throw new IOException("Unable to prepare downloaded database v" + version + ".", e);
+    }
+    if (!checkDatabaseIntegrity(file)) {
+      file.delete();
+      throw new IOException("Downloaded database v" + version + " failed its integrity check.");
+    }
+    File replacementFile = context.getDatabasePath(REPLACEMENT_DATABASE_NAME);
+    if (!file.renameTo(replacementFile)) {
+      throw new IOException("Unable to rename " + file + " to " + replacementFile + ".");
+    }
+    SharedPreferences.Editor sharedPrefsEd =
+        PreferenceManager.getDefaultSharedPreferences(context).edit();
+    sharedPrefsEd.putString(KEY_UPDATED_DATABASE_VERSION, version);
+    sharedPrefsEd.putInt(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY, firstExtraEntryId);
+    if (!sharedPrefsEd.commit()) {
+      throw new IOException("Unable to save the version of the downloaded database.");
+    }
+  }
+
+  // Takes the database file out of write-ahead logging if it's in it (as it may be if it was written
+  // on the device), and checkpoints it, so that it has no side files. A staged database is renamed
+  // into place while the installed one may still be open, and SQLite finds a database's side files
+  // by path, so the old and new files mustn't have any. The installed database is only ever opened
+  // read-only, and a read-only connection to a database in rollback (DELETE) mode never writes a
+  // journal, so neither connection has a -journal, -wal, or -shm file for the other to pick up.
+  private static void setRollbackJournalMode(File file) {
+    SQLiteDatabase db =
+        SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+    try {
+      db.disableWriteAheadLogging();
+      DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode=DELETE", null);
+    } finally {
+      db.close();
+    }
+  }
+
+  // Returns whether the given file is a usable database: it passes SQLite's integrity check and it
+  // has entries. The file is never modified, even if it is corrupt.
+  static boolean checkDatabaseIntegrity(File file) {
+    if (!file.exists()) {
+      return false;
+    }
+    SQLiteDatabase db = null;
+    try {
+      db =
+          SQLiteDatabase.openDatabase(
+              file.getPath(),
+              null,
+              SQLiteDatabase.OPEN_READONLY,
+              new DatabaseErrorHandler() {
+                @Override
+                public void onCorruption(SQLiteDatabase dbObj) {
+                  // Don't delete the file, as the default handler would.
+                }
+              });
+      return "ok".equalsIgnoreCase(DatabaseUtils.stringForQuery(db, "PRAGMA integrity_check", null))
+          && DatabaseUtils.queryNumEntries(db, FTS_VIRTUAL_TABLE) > 0;
+    } catch (SQLiteException e) {
+      Log.e(TAG, "Integrity check failed for " + file + ".", e);
+      return false;
+    } finally {
+      if (db != null) {
+        db.close();
+      }
+    }
+  }
+
+  // Returns the given bytes as a lowercase hexadecimal string.
+  static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+      hex[2 * i + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+    }
+    return new String(hex);
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Do nothing.
+      }
+    }
+  }
+
   // Helper method to add a list of components to the list of search results.
   private void addGivenComponentsToResults(
       ArrayList<KlingonContentProvider.Entry> analysisComponents,
@@ -695,7 +1697,9 @@ public class KlingonContentDatabase {
         // satisfies certain requirements.
         if (!filter || queryEntry.isSatisfiedBy(resultEntry)) {
           // Prevent duplicates.
-          Object[] entryObject = convertEntryToCursorRow(resultEntry, /* indent */ false);
+          Object[] entryObject =
+              convertEntryToCursorRow(
+                  resultEntry, /* indent */ false, destCursor.getColumnNames());
           Integer intId = Integer.valueOf(resultEntry.getId());
           if (!destSet.contains(intId)) {
             destSet.add(intId);
@@ -710,7 +1714,7 @@ public class KlingonContentDatabase {
   }
 
   // Helper method to search for entries whose prefixes match the query.
-  private Cursor getEntriesContainingQuery(String queryBase, boolean isPrefix) {
+  private Cursor getEntriesContainingQuery(String queryBase, boolean isPrefix, String[] columns) {
     // Note: it is important to use the double quote character for quotes
     // because the single quote character is a letter in (transliterated)
     // Klingon. Also, force LIKE to be case-sensitive to distinguish
@@ -725,7 +1729,7 @@ public class KlingonContentDatabase {
           db.query(
               true,
               FTS_VIRTUAL_TABLE,
-              ALL_KEYS,
+              columns,
               KlingonContentDatabase.KEY_ENTRY_NAME
                   + " LIKE \""
                   + precedingWildcard
@@ -743,7 +1747,7 @@ public class KlingonContentDatabase {
   }
 
   // Helper method to search for an exact match.
-  private Cursor getExactMatches(String entryName) {
+  private Cursor getExactMatches(String entryName, String[] columns) {
     SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
     db.rawQuery("PRAGMA case_sensitive_like = ON", null);
     Cursor cursor = null;
@@ -752,7 +1756,7 @@ public class KlingonContentDatabase {
           db.query(
               true,
               FTS_VIRTUAL_TABLE,
-              ALL_KEYS,
+              columns,
               KlingonContentDatabase.KEY_ENTRY_NAME + " LIKE \"" + entryName.trim() + "\"",
               null,
               null,
@@ -766,7 +1770,7 @@ public class KlingonContentDatabase {
   }
 
   // Helper method to search for a sentence class.
-  private Cursor getMatchingSentences(String sentenceClass) {
+  private Cursor getMatchingSentences(String sentenceClass, String[] columns) {
     SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
     db.rawQuery("PRAGMA case_sensitive_like = ON", null);
     Cursor cursor = null;
@@ -775,7 +1779,7 @@ public class KlingonContentDatabase {
           db.query(
               true,
               FTS_VIRTUAL_TABLE,
-              ALL_KEYS,
+              columns,
               KlingonContentDatabase.KEY_PART_OF_SPEECH + " LIKE \"" + sentenceClass + "\"",
               null,
               null,
@@ -794,70 +1798,14 @@ public class KlingonContentDatabase {
       String piece,
       boolean isPrefix,
       boolean useSearchTags,
-      boolean searchOtherLanguageDefinitions) {
+      boolean searchOtherLanguageDefinitions,
+      SearchSettings settings,
+      String[] columns) {
 
     // The search key is either the definition or the search tags.
-    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-    final String otherLang =
-        sharedPrefs.getString(
-            Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
-            Preferences.getSystemPreferredLanguage());
+    final String otherLang = settings.getOtherLanguage();
     String key =
-        useSearchTags
-            ? KlingonContentDatabase.KEY_SEARCH_TAGS
-            : KlingonContentDatabase.KEY_DEFINITION;
-    if (searchOtherLanguageDefinitions) {
-      switch (otherLang) {
-        case "de":
-          key =
-              useSearchTags
-                  ? KlingonContentDatabase.KEY_SEARCH_TAGS_DE
-                  : KlingonContentDatabase.KEY_DEFINITION_DE;
-          break;
-
-        case "fa":
-          key =
-              useSearchTags
-                  ? KlingonContentDatabase.KEY_SEARCH_TAGS_FA
-                  : KlingonContentDatabase.KEY_DEFINITION_FA;
-          break;
-
-        case "ru":
-          key =
-              useSearchTags
-                  ? KlingonContentDatabase.KEY_SEARCH_TAGS_RU
-                  : KlingonContentDatabase.KEY_DEFINITION_RU;
-          break;
-
-        case "sv":
-          key =
-              useSearchTags
-                  ? KlingonContentDatabase.KEY_SEARCH_TAGS_SV
-                  : KlingonContentDatabase.KEY_DEFINITION_SV;
-          break;
-
-        case "zh-HK":
-          key =
-              useSearchTags
-                  ? KlingonContentDatabase.KEY_SEARCH_TAGS_ZH_HK
-                  : KlingonContentDatabase.KEY_DEFINITION_ZH_HK;
-          break;
-
-        case "pt":
-          key =
-              useSearchTags
-                  ? KlingonContentDatabase.KEY_SEARCH_TAGS_PT
-                  : KlingonContentDatabase.KEY_DEFINITION_PT;
-          break;
-
-        case "fi":
-          key =
-              useSearchTags
-                  ? KlingonContentDatabase.KEY_SEARCH_TAGS_FI
-                  : KlingonContentDatabase.KEY_DEFINITION_FI;
-          break;
-      }
-    }
+        getDefinitionKey(searchOtherLanguageDefinitions ? otherLang : "en", useSearchTags);
 
     // If searching for a prefix (here, this means not a verb prefix, but
     // a query which is a prefix of the definition), nothing can precede
@@ -875,7 +1823,7 @@ public class KlingonContentDatabase {
           db.query(
               true,
               FTS_VIRTUAL_TABLE,
-              ALL_KEYS,
+              columns,
               key + " LIKE \"" + precedingWildcard + piece.trim() + "%\"",
               null,
               null,
@@ -888,6 +1836,29 @@ public class KlingonContentDatabase {
     return cursor;
   }
 
+  // Returns the column holding the definitions or search tags in the given language. English is
+  // the default.
+  private static String getDefinitionKey(String lang, boolean useSearchTags) {
+    switch (lang) {
+      case "de":
+        return useSearchTags ? KEY_SEARCH_TAGS_DE : KEY_DEFINITION_DE;
+      case "fa":
+        return useSearchTags ? KEY_SEARCH_TAGS_FA : KEY_DEFINITION_FA;
+      case "ru":
+        return useSearchTags ? KEY_SEARCH_TAGS_RU : KEY_DEFINITION_RU;
+      case "sv":
+        return useSearchTags ? KEY_SEARCH_TAGS_SV : KEY_DEFINITION_SV;
+      case "zh-HK":
+        return useSearchTags ? KEY_SEARCH_TAGS_ZH_HK : KEY_DEFINITION_ZH_HK;
+      case "pt":
+        return useSearchTags ? KEY_SEARCH_TAGS_PT : KEY_DEFINITION_PT;
+      case "fi":
+        return useSearchTags ? KEY_SEARCH_TAGS_FI : KEY_DEFINITION_FI;
+      default:
+        return useSearchTags ? KEY_SEARCH_TAGS : KEY_DEFINITION;
+    }
+  }
+
   // Helper method to make it easier to search either definitions or search tags, in either English
   // or other-language.
   private void matchDefinitionsOrSearchTags(
@@ -895,11 +1866,18 @@ public class KlingonContentDatabase {
       boolean isPrefix,
       boolean useSearchTags,
       boolean searchOtherLanguageDefinitions,
+      SearchSettings settings,
       MatrixCursor resultsCursor,
       HashSet<Integer> resultsSet) {
+    throwIfCanceled();
     Cursor matchingResults =
         getEntriesMatchingDefinition(
-            piece, isPrefix, useSearchTags, searchOtherLanguageDefinitions);
+            piece,
+            isPrefix,
+            useSearchTags,
+            searchOtherLanguageDefinitions,
+            settings,
+            resultsCursor.getColumnNames());
     copyCursorEntries(resultsCursor, resultsSet, matchingResults, /* filter */ false, null);
     if (matchingResults != null) {
       matchingResults.close();
@@ -912,7 +1890,7 @@ public class KlingonContentDatabase {
       KlingonContentProvider.Entry filterEntry,
       MatrixCursor resultsCursor,
       boolean indent) {
-    Cursor exactMatchesCursor = getExactMatches(query);
+    Cursor exactMatchesCursor = getExactMatches(query, resultsCursor.getColumnNames());
     // There must be a match.
     if (exactMatchesCursor == null || exactMatchesCursor.getCount() == 0) {
       Log.e(TAG, "Exact match error on query: " + query);
@@ -924,7 +1902,8 @@ public class KlingonContentDatabase {
       KlingonContentProvider.Entry resultEntry =
           new KlingonContentProvider.Entry(exactMatchesCursor, mContext);
       if (filterEntry.isSatisfiedBy(resultEntry)) {
-        Object[] exactMatchObject = convertEntryToCursorRow(resultEntry, indent);
+        Object[] exactMatchObject =
+            convertEntryToCursorRow(resultEntry, indent, resultsCursor.getColumnNames());
         /*
          * if (BuildConfig.DEBUG) { Log.d(TAG, "addExactMatch: " + resultEntry.getEntryName()); }
          */
@@ -972,6 +1951,7 @@ public class KlingonContentDatabase {
       }
     }
     for (KlingonContentProvider.ComplexWord complexWord : complexWordsList) {
+      throwIfCanceled();
       // Be a little lenient and also match non-nouns and non-verbs.
       addComplexWordToResults(complexWord, resultsCursor, resultsSet, /* isLenient */ true);
     }
@@ -989,7 +1969,8 @@ public class KlingonContentDatabase {
     // duplicates will be kept (since the given correct analysis contains them).
     KlingonContentProvider.Entry filterEntry =
         new KlingonContentProvider.Entry(complexWord.filter(isLenient), mContext);
-    Cursor exactMatchesCursor = getExactMatches(complexWord.stem());
+    Cursor exactMatchesCursor =
+        getExactMatches(complexWord.stem(), resultsCursor.getColumnNames());
 
     boolean stemAdded = false;
     if (exactMatchesCursor != null && exactMatchesCursor.getCount() != 0) {
@@ -1024,7 +2005,9 @@ public class KlingonContentDatabase {
               addExactMatch(prefix, prefixFilterEntry, resultsCursor, /* indent */ false);
               prefixAdded = true;
             }
-            Object[] exactMatchObject = complexWordCursorRow(resultEntry, complexWord, prefixAdded);
+            Object[] exactMatchObject =
+                complexWordCursorRow(
+                    resultEntry, complexWord, prefixAdded, resultsCursor.getColumnNames());
 
             if (BuildConfig.DEBUG) {
               Log.d(TAG, "addComplexWordToResults: " + resultEntry.getEntryName());
@@ -1110,99 +2093,123 @@ public class KlingonContentDatabase {
   private Object[] complexWordCursorRow(
       KlingonContentProvider.Entry entry,
       KlingonContentProvider.ComplexWord complexWord,
-      boolean indent) {
+      boolean indent,
+      String[] columns) {
     // TODO: Add warnings for mismatched affixes here.
-    return new Object[] {
-      entry.getId(),
-      complexWord.getVerbPrefixString() + entry.getEntryName() + complexWord.getSuffixesString(),
-      // This works only because all verbs are tagged with transitivity information, so we know the
-      // POS looks like "v:t" which we turn into "v:t,indent".
-      entry.getPartOfSpeech() + (indent ? ",indent" : ""),
-      entry.getDefinition(),
-      entry.getSynonyms(),
-      entry.getAntonyms(),
-      entry.getSeeAlso(),
-      entry.getNotes(),
-      entry.getHiddenNotes(),
-      entry.getComponents(),
-      entry.getExamples(),
-      entry.getSearchTags(),
-      entry.getSource(),
-      entry.getDefinition_DE(),
-      entry.getNotes_DE(),
-      entry.getExamples_DE(),
-      entry.getSearchTags_DE(),
-      entry.getDefinition_FA(),
-      entry.getNotes_FA(),
-      entry.getExamples_FA(),
-      entry.getSearchTags_FA(),
-      entry.getDefinition_SV(),
-      entry.getNotes_SV(),
-      entry.getExamples_SV(),
-      entry.getSearchTags_SV(),
-      entry.getDefinition_RU(),
-      entry.getNotes_RU(),
-      entry.getExamples_RU(),
-      entry.getSearchTags_RU(),
-      entry.getDefinition_ZH_HK(),
-      entry.getNotes_ZH_HK(),
-      entry.getExamples_ZH_HK(),
-      entry.getSearchTags_ZH_HK(),
-      entry.getDefinition_PT(),
-      entry.getNotes_PT(),
-      entry.getExamples_PT(),
-      entry.getSearchTags_PT(),
-      entry.getDefinition_FI(),
-      entry.getNotes_FI(),
-      entry.getExamples_FI(),
-      entry.getSearchTags_FI(),
-    };
+    // This works only because all verbs are tagged with transitivity information, so we know the
+    // POS looks like "v:t" which we turn into "v:t,indent".
+    Object[] row = convertEntryToCursorRow(entry, indent, columns);
+    int entryNameColumn = Arrays.asList(columns).indexOf(KEY_ENTRY_NAME);
+    if (entryNameColumn != -1) {
+      row[entryNameColumn] =
+          complexWord.getVerbPrefixString()
+              + entry.getEntryName()
+              + complexWord.getSuffixesString();
+    }
+    return row;
   }
 
-  private Object[] convertEntryToCursorRow(KlingonContentProvider.Entry entry, boolean indent) {
-    return new Object[] {
-      entry.getId(),
-      entry.getEntryName(),
-      entry.getPartOfSpeech() + (indent ? ",indent" : ""),
-      entry.getDefinition(),
-      entry.getSynonyms(),
-      entry.getAntonyms(),
-      entry.getSeeAlso(),
-      entry.getNotes(),
-      entry.getHiddenNotes(),
-      entry.getComponents(),
-      entry.getExamples(),
-      entry.getSearchTags(),
-      entry.getSource(),
-      entry.getDefinition_DE(),
-      entry.getNotes_DE(),
-      entry.getExamples_DE(),
-      entry.getSearchTags_DE(),
-      entry.getDefinition_FA(),
-      entry.getNotes_FA(),
-      entry.getExamples_FA(),
-      entry.getSearchTags_FA(),
-      entry.getDefinition_SV(),
-      entry.getNotes_SV(),
-      entry.getExamples_SV(),
-      entry.getSearchTags_SV(),
-      entry.getDefinition_RU(),
-      entry.getNotes_RU(),
-      entry.getExamples_RU(),
-      entry.getSearchTags_RU(),
-      entry.getDefinition_ZH_HK(),
-      entry.getNotes_ZH_HK(),
-      entry.getExamples_ZH_HK(),
-      entry.getSearchTags_ZH_HK(),
-      entry.getDefinition_PT(),
-      entry.getNotes_PT(),
-      entry.getExamples_PT(),
-      entry.getSearchTags_PT(),
-      entry.getDefinition_FI(),
-      entry.getNotes_FI(),
-      entry.getExamples_FI(),
-      entry.getSearchTags_FI(),
-    };
+  // Returns a row of the entry's values in the given columns, which are the columns of the cursor
+  // of results it's going to be added to.
+  private static Object[] convertEntryToCursorRow(
+      KlingonContentProvider.Entry entry, boolean indent, String[] columns) {
+    Object[] row = new Object[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      row[i] = getEntryColumnValue(entry, columns[i]);
+      if (indent && columns[i].equals(KEY_PART_OF_SPEECH)) {
+        row[i] = entry.getPartOfSpeech() + ",indent";
+      }
+    }
+    return row;
+  }
+
+  private static Object getEntryColumnValue(KlingonContentProvider.Entry entry, String key) {
+    switch (key) {
+      case KEY_ID:
+        return entry.getId();
+      case KEY_ENTRY_NAME:
+        return entry.getEntryName();
+      case KEY_PART_OF_SPEECH:
+        return entry.getPartOfSpeech();
+      case KEY_DEFINITION:
+        return entry.getDefinition();
+      case KEY_SYNONYMS:
+        return entry.getSynonyms();
+      case KEY_ANTONYMS:
+        return entry.getAntonyms();
+      case KEY_SEE_ALSO:
+        return entry.getSeeAlso();
+      case KEY_NOTES:
+        return entry.getNotes();
+      case KEY_HIDDEN_NOTES:
+        return entry.getHiddenNotes();
+      case KEY_COMPONENTS:
+        return entry.getComponents();
+      case KEY_EXAMPLES:
+        return entry.getExamples();
+      case KEY_SEARCH_TAGS:
+        return entry.getSearchTags();
+      case KEY_SOURCE:
+        return entry.getSource();
+      case KEY_DEFINITION_DE:
+        return entry.getDefinition_DE();
+      case KEY_NOTES_DE:
+        return entry.getNotes_DE();
+      case KEY_EXAMPLES_DE:
+        return entry.getExamples_DE();
+      case KEY_SEARCH_TAGS_DE:
+        return entry.getSearchTags_DE();
+      case KEY_DEFINITION_FA:
+        return entry.getDefinition_FA();
+      case KEY_NOTES_FA:
+        return entry.getNotes_FA();
+      case KEY_EXAMPLES_FA:
+        return entry.getExamples_FA();
+      case KEY_SEARCH_TAGS_FA:
+        return entry.getSearchTags_FA();
+      case KEY_DEFINITION_SV:
+        return entry.getDefinition_SV();
+      case KEY_NOTES_SV:
+        return entry.getNotes_SV();
+      case KEY_EXAMPLES_SV:
+        return entry.getExamples_SV();
+      case KEY_SEARCH_TAGS_SV:
+        return entry.getSearchTags_SV();
+      case KEY_DEFINITION_RU:
+        return entry.getDefinition_RU();
+      case KEY_NOTES_RU:
+        return entry.getNotes_RU();
+      case KEY_EXAMPLES_RU:
+        return entry.getExamples_RU();
+      case KEY_SEARCH_TAGS_RU:
+        return entry.getSearchTags_RU();
+      case KEY_DEFINITION_ZH_HK:
+        return entry.getDefinition_ZH_HK();
+      case KEY_NOTES_ZH_HK:
+        return entry.getNotes_ZH_HK();
+      case KEY_EXAMPLES_ZH_HK:
+        return entry.getExamples_ZH_HK();
+      case KEY_SEARCH_TAGS_ZH_HK:
+        return entry.getSearchTags_ZH_HK();
+      case KEY_DEFINITION_PT:
+        return entry.getDefinition_PT();
+      case KEY_NOTES_PT:
+        return entry.getNotes_PT();
+      case KEY_EXAMPLES_PT:
+        return entry.getExamples_PT();
+      case KEY_SEARCH_TAGS_PT:
+        return entry.getSearchTags_PT();
+      case KEY_DEFINITION_FI:
+        return entry.getDefinition_FI();
+      case KEY_NOTES_FI:
+        return entry.getNotes_FI();
+      case KEY_EXAMPLES_FI:
+        return entry.getExamples_FI();
+      case KEY_SEARCH_TAGS_FI:
+        return entry.getSearchTags_FI();
+      default:
+        return null;
+    }
   }
 
   /**
@@ -1234,13 +2241,143 @@ public class KlingonContentDatabase {
     return cursor;
   }
 
-  /** Returns a cursor containing a random entry. */
-  public Cursor getRandomEntry(String[] columns) {
-    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-    int onePastLastId =
-        sharedPrefs.getInt(KEY_ID_OF_FIRST_EXTRA_ENTRY, /* default */ ID_OF_FIRST_EXTRA_ENTRY);
-    int randomId = new Random().nextInt(onePastLastId - ID_OF_FIRST_ENTRY) + ID_OF_FIRST_ENTRY;
-    return getEntryById(Integer.toString(randomId), ALL_KEYS);
+  /**
+   * Returns a cursor containing the entries with the given IDs, in the order of the IDs. This
+   * replaces a query for each ID with a single query. IDs which aren't found are skipped, and an ID
+   * which is repeated gives a repeated row.
+   *
+   * @param entryIds The IDs of the entries
+   * @param columns The columns to include, if null then all are included
+   * @return Cursor positioned before the first entry.
+   */
+  public Cursor getEntriesByIds(String[] entryIds, String[] columns) {
+    if (columns == null) {
+      columns = ALL_KEYS;
+    }
+
+    // The rows are matched up with the IDs by the ID column, which is added if it isn't included.
+    int idColumn = Arrays.asList(columns).indexOf(KEY_ID);
+    String[] queryColumns = columns;
+    if (idColumn == -1) {
+      idColumn = columns.length;
+      queryColumns = Arrays.copyOf(columns, columns.length + 1);
+      queryColumns[idColumn] = KEY_ID;
+    }
+
+    // SQLite limits the number of parameters in a statement, so a long list of IDs is looked up in
+    // chunks. The database is read-only, so the chunks are consistent with each other.
+    Map<String, Object[]> rowsById = new HashMap<String, Object[]>();
+    SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
+    for (int start = 0; start < entryIds.length; start += MAX_IDS_PER_QUERY) {
+      throwIfCanceled();
+      String[] chunk =
+          Arrays.copyOfRange(
+              entryIds, start, Math.min(start + MAX_IDS_PER_QUERY, entryIds.length));
+      StringBuilder selection = new StringBuilder(KEY_ID + " IN (?");
+      for (int i = 1; i < chunk.length; i++) {
+        selection.append(",?");
+      }
+      selection.append(")");
+      Cursor cursor =
+          db.query(
+              false,
+              FTS_VIRTUAL_TABLE,
+              queryColumns,
+              selection.toString(),
+              chunk,
+              null,
+              null,
+              null,
+              null,
+              sCancellationSignal.get());
+      try {
+        while (cursor.moveToNext()) {
+          Object[] row = new Object[columns.length];
+          for (int i = 0; i < columns.length; i++) {
+            row[i] = getColumnValue(cursor, i);
+          }
+          rowsById.put(cursor.getString(idColumn), row);
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+
+    MatrixCursor resultsCursor = new MatrixCursor(columns, entryIds.length);
+    for (String entryId : entryIds) {
+      Object[] row = rowsById.get(entryId);
+      if (row != null) {
+        resultsCursor.addRow(row);
+      }
+    }
+    return resultsCursor;
+  }
+
+  // Returns the value in the given column of the cursor's current row, as the type it's stored as.
+  private static Object getColumnValue(Cursor cursor, int column) {
+    switch (cursor.getType(column)) {
+      case Cursor.FIELD_TYPE_NULL:
+        return null;
+      case Cursor.FIELD_TYPE_INTEGER:
+        return cursor.getLong(column);
+      case Cursor.FIELD_TYPE_FLOAT:
+        return cursor.getDouble(column);
+      case Cursor.FIELD_TYPE_BLOB:
+        return cursor.getBlob(column);
+      default:
+        return cursor.getString(column);
+    }
+  }
+
+  /**
+   * Returns a cursor containing an entry picked at random from the given category of entries, which
+   * is empty if there are none.
+   *
+   * @param category One of the RandomEntrySampler categories
+   * @param columns The columns to include, if null then all are included
+   */
+  public Cursor getRandomEntry(String category, String[] columns) {
+    if (columns == null) {
+      columns = ALL_KEYS;
+    }
+    int randomId = getRandomEntrySampler().sample(category, sRandom);
+    if (randomId == RandomEntrySampler.NO_ENTRY) {
+      return new MatrixCursor(columns);
+    }
+    return getEntryById(Integer.toString(randomId), columns);
+  }
+
+  // Returns the sampler of random entries, reading the entries' parts of speech on first use.
+  private synchronized RandomEntrySampler getRandomEntrySampler() {
+    if (mRandomEntrySampler == null) {
+      RandomEntrySampler.Builder builder = new RandomEntrySampler.Builder();
+      Cursor cursor = null;
+      try {
+        cursor =
+            mDatabaseOpenHelper
+                .getReadableDatabase()
+                .query(
+                    FTS_VIRTUAL_TABLE,
+                    new String[] {KEY_ID, KEY_ENTRY_NAME, KEY_PART_OF_SPEECH},
+                    null,
+                    null,
+                    null,
+                    null,
+                    null);
+        while (cursor.moveToNext()) {
+          KlingonContentProvider.Entry entry = new KlingonContentProvider.Entry(cursor, mContext);
+          builder.add(entry.getId(), RandomEntrySampler.getCategories(entry));
+        }
+      } catch (SQLiteException e) {
+        Log.e(TAG, "Failed to read entries for random sampling.", e);
+      } finally {
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
+      mRandomEntrySampler = builder.build();
+    }
+    return mRandomEntrySampler;
   }
 
   /**
@@ -1364,6 +2501,7 @@ public class KlingonContentDatabase {
       // databases.
       mHelperContext.deleteDatabase(DATABASE_NAME);
       mHelperContext.deleteDatabase(REPLACEMENT_DATABASE_NAME);
+      mHelperContext.deleteDatabase(PREVIOUS_DATABASE_NAME);
 
       // Reset to bundled database version.
       SharedPreferences.Editor sharedPrefsEd =
@@ -1372,22 +2510,32 @@ public class KlingonContentDatabase {
       sharedPrefsEd.remove(KEY_ID_OF_FIRST_EXTRA_ENTRY);
       sharedPrefsEd.remove(KEY_UPDATED_DATABASE_VERSION);
       sharedPrefsEd.remove(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY);
-      sharedPrefsEd.apply();
-
-      Toast.makeText(
-              mHelperContext,
-              String.format(
-                  mHelperContext.getResources().getString(R.string.database_upgraded),
-                  installedVersion,
-                  dottedVersion(newBundledVersion)),
-              Toast.LENGTH_LONG)
-          .show();
+      sharedPrefsEd.remove(KEY_PREVIOUS_DATABASE_VERSION);
+      sharedPrefsEd.remove(KEY_PREVIOUS_ID_OF_FIRST_EXTRA_ENTRY);
+      sharedPrefsEd.commit();
+
+      showToast(
+          String.format(
+              mHelperContext.getResources().getString(R.string.database_upgraded),
+              installedVersion,
+              dottedVersion(newBundledVersion)));
       mNewDatabaseMessageDisplayed = true;
 
       // Show help after database upgrade.
       setShowHelpFlag();
     }
 
+    // Shows a toast from the thread initialising the database.
+    private void showToast(final String text) {
+      runOnMainThread(
+          new Runnable() {
+            @Override
+            public void run() {
+              Toast.makeText(mHelperContext, text, Toast.LENGTH_LONG).show();
+            }
+          });
+    }
+
     private void setShowHelpFlag() {
       // Set the flag to show the help screen (but not necessarily the tutorial).
       SharedPreferences.Editor sharedPrefsEd =
@@ -1429,28 +2577,12 @@ public class KlingonContentDatabase {
       String updatedVersion =
           sharedPrefs.getString(KEY_UPDATED_DATABASE_VERSION, /* default */ installedVersion);
       if (updatedVersion.compareToIgnoreCase(installedVersion) > 0
-          && checkDBExists(REPLACEMENT_DATABASE_NAME)) {
-        copyDBFromReplacement();
-
-        int firstExtraEntryId =
-            sharedPrefs.getInt(
-                KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY, /* default */ ID_OF_FIRST_EXTRA_ENTRY);
-        SharedPreferences.Editor sharedPrefsEd =
-            PreferenceManager.getDefaultSharedPreferences(mHelperContext).edit();
-        sharedPrefsEd.putString(KEY_INSTALLED_DATABASE_VERSION, updatedVersion);
-        sharedPrefsEd.putInt(KEY_ID_OF_FIRST_EXTRA_ENTRY, firstExtraEntryId);
-        sharedPrefsEd.remove(KEY_UPDATED_DATABASE_VERSION);
-        sharedPrefsEd.remove(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY);
-        sharedPrefsEd.apply();
-
-        Toast.makeText(
-                mHelperContext,
-                String.format(
-                    mHelperContext.getResources().getString(R.string.database_upgraded),
-                    installedVersion,
-                    updatedVersion),
-                Toast.LENGTH_LONG)
-            .show();
+          && installReplacementDatabase(installedVersion, updatedVersion)) {
+        showToast(
+            String.format(
+                mHelperContext.getResources().getString(R.string.database_upgraded),
+                installedVersion,
+                updatedVersion));
         mNewDatabaseMessageDisplayed = true;
 
         // Show help after database upgrade.
@@ -1474,13 +2606,10 @@ public class KlingonContentDatabase {
 
         // Inform the user the database has been created.
         if (!mNewDatabaseMessageDisplayed) {
-          Toast.makeText(
-                  mHelperContext,
-                  String.format(
-                      mHelperContext.getResources().getString(R.string.database_created),
-                      getBundledDatabaseVersion()),
-                  Toast.LENGTH_LONG)
-              .show();
+          showToast(
+              String.format(
+                  mHelperContext.getResources().getString(R.string.database_created),
+                  getBundledDatabaseVersion()));
           mNewDatabaseMessageDisplayed = true;
         }
 
@@ -1523,62 +2652,228 @@ public class KlingonContentDatabase {
 
     /**
      * Copies the database from the application resources' assets folder to the newly created
-     * database in the system folder.
+     * database in the system folder, and verifies its checksum if one is bundled with it.
      */
     private void copyDBFromResources() throws IOException {
+      String expectedChecksum = readBundledChecksum();
+      File dbFile = new File(getDatabasePath(DATABASE_NAME));
+      for (int attempt = 1; ; attempt++) {
+        String checksum = toHex(copyAssetToFile(DATABASE_NAME, dbFile));
+        if (expectedChecksum == null || expectedChecksum.equalsIgnoreCase(checksum)) {
+          // Log.d(TAG, "Database copy successful.");
+          return;
+        }
+        Log.e(TAG, "Checksum mismatch on attempt " + attempt + ": " + checksum);
+        if (attempt == MAX_COPY_ATTEMPTS) {
+          dbFile.delete();
+          throw new IOException("Checksum mismatch copying database from resources.");
+        }
+      }
+    }
 
-      // Open the file in the assets folder as an input stream.
-      InputStream inStream = mHelperContext.getAssets().open(DATABASE_NAME);
-
-      // Path to the newly created empty database.
-      String fullDBPath = getDatabasePath(DATABASE_NAME);
-
-      // Open the empty database as the output stream.
-      OutputStream outStream = new FileOutputStream(fullDBPath);
-
-      // Transfer the database from the resources to the system path one block at a time.
-      byte[] buffer = new byte[MAX_BUFFER_LENGTH];
-      int length;
-      while ((length = inStream.read(buffer)) > 0) {
-        outStream.write(buffer, 0, length);
+    // Returns the SHA-256 checksum of the bundled database, written by write_db.sh, or null if it
+    // wasn't bundled.
+    private String readBundledChecksum() {
+      InputStream inStream = null;
+      try {
+        inStream = mHelperContext.getAssets().open(DATABASE_CHECKSUM_NAME);
+        byte[] buffer = new byte[MAX_BUFFER_LENGTH];
+        int length = 0;
+        int read;
+        while (length < buffer.length
+            && (read = inStream.read(buffer, length, buffer.length - length)) > 0) {
+          length += read;
+        }
+        return new String(buffer, 0, length, "US-ASCII").trim();
+      } catch (IOException e) {
+        return null;
+      } finally {
+        closeQuietly(inStream);
       }
+    }
 
-      // Close the streams.
-      outStream.flush();
-      outStream.close();
-      inStream.close();
+    // Copies an asset to a file and returns its SHA-256 digest. The asset should be stored
+    // uncompressed (see build.gradle), so that it can be read straight from the APK through its file
+    // descriptor. If it was compressed anyway, it is decompressed as a stream.
+    private byte[] copyAssetToFile(String assetName, File file) throws IOException {
+      AssetFileDescriptor assetFd = null;
+      try {
+        assetFd = mHelperContext.getAssets().openFd(assetName);
+      } catch (FileNotFoundException e) {
+        // The asset is compressed.
+      }
+      if (assetFd != null) {
+        // The stream starts at the asset's offset in the APK.
+        FileInputStream inStream = assetFd.createInputStream();
+        try {
+          return copyToFile(
+              inStream.getChannel(), assetFd.getLength(), file, getBundledDatabaseVersion());
+        } finally {
+          inStream.close();
+        }
+      }
+      InputStream inStream = mHelperContext.getAssets().open(assetName);
+      try {
+        // For an asset, available() is the number of (uncompressed) bytes remaining.
+        return copyToFile(
+            Channels.newChannel(inStream),
+            inStream.available(),
+            file,
+            getBundledDatabaseVersion());
+      } finally {
+        inStream.close();
+      }
+    }
 
-      // Log.d(TAG, "Database copy successful.");
+    // Copies the given number of bytes from a channel to a file in large blocks, computing their
+    // SHA-256 digest in the same pass and reporting the progress of installing the given version
+    // whenever another percent has been copied. The file is synced before returning its digest.
+    private byte[] copyToFile(ReadableByteChannel in, long length, File file, String version)
+        throws IOException {
+      MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IOException(e);
+      }
+      ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_LENGTH);
+      FileOutputStream outStream = new FileOutputStream(file);
+      try {
+        FileChannel out = outStream.getChannel();
+        long copied = 0;
+        int percent = -1;
+        while (copied < length) {
+          buffer.clear();
+          if (length - copied < buffer.capacity()) {
+            buffer.limit((int) (length - copied));
+          }
+          if (in.read(buffer) < 0) {
+            throw new IOException("Unexpected end of database after " + copied + " bytes.");
+          }
+          buffer.flip();
+          copied += buffer.remaining();
+          digest.update(buffer.duplicate());
+          while (buffer.hasRemaining()) {
+            out.write(buffer);
+          }
+          int newPercent = (int) (copied * 100 / Math.max(length, 1));
+          if (newPercent != percent) {
+            percent = newPercent;
+            reportInstallProgress(version, percent);
+          }
+        }
+        out.force(true);
+      } finally {
+        outStream.close();
+      }
+      return digest.digest();
     }
 
-    /** Copies the database from the replacement (update) database. */
-    private void copyDBFromReplacement() throws IOException {
-      String fullReplacementDBPath = getDatabasePath(REPLACEMENT_DATABASE_NAME);
-      String fullDBPath = getDatabasePath(DATABASE_NAME);
+    /**
+     * Installs the staged replacement (update) database by renaming it into place, after moving the
+     * installed database into the rollback slot, then commits the version keys. Each rename is
+     * atomic, so if the app stops partway, the dictionary is never left half-written: the next
+     * attempt either finishes the swap or finds it already done and just commits the keys.
+     *
+     * <p>This runs while the installed database may still be open (when an update is installed
+     * without restarting the app). That's safe because the replacement was staged in rollback
+     * journal mode (see setRollbackJournalMode), so neither file has side files to be mixed up.
+     *
+     * @return Whether the replacement database was installed
+     */
+    private boolean installReplacementDatabase(String installedVersion, String updatedVersion) {
+      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mHelperContext);
+      File dbFile = new File(getDatabasePath(DATABASE_NAME));
+      File replacementFile = new File(getDatabasePath(REPLACEMENT_DATABASE_NAME));
+      File previousFile = new File(getDatabasePath(PREVIOUS_DATABASE_NAME));
+      if (replacementFile.exists()) {
+        if (!checkDatabaseIntegrity(replacementFile)) {
+          Log.e(TAG, "Discarding replacement database v" + updatedVersion + ".");
+          mHelperContext.deleteDatabase(REPLACEMENT_DATABASE_NAME);
+          forgetReplacementDatabase();
+          return false;
+        }
+        mHelperContext.deleteDatabase(PREVIOUS_DATABASE_NAME);
+        if (dbFile.exists() && !dbFile.renameTo(previousFile)) {
+          Log.e(TAG, "Unable to move database v" + installedVersion + " to the rollback slot.");
+          return false;
+        }
+        if (!replacementFile.renameTo(dbFile)) {
+          Log.e(TAG, "Unable to install replacement database v" + updatedVersion + ".");
+          previousFile.renameTo(dbFile);
+          return false;
+        }
+      } else if (!dbFile.exists() || !previousFile.exists()) {
+        // The replacement is gone, but wasn't swapped in, so forget about it.
+        forgetReplacementDatabase();
+        return false;
+      }
+      // Otherwise, the replacement was swapped in but the keys weren't committed yet.
+
+      SharedPreferences.Editor sharedPrefsEd = sharedPrefs.edit();
+      sharedPrefsEd.putString(KEY_PREVIOUS_DATABASE_VERSION, installedVersion);
+      sharedPrefsEd.putInt(
+          KEY_PREVIOUS_ID_OF_FIRST_EXTRA_ENTRY,
+          sharedPrefs.getInt(KEY_ID_OF_FIRST_EXTRA_ENTRY, /* default */ ID_OF_FIRST_EXTRA_ENTRY));
+      sharedPrefsEd.putString(KEY_INSTALLED_DATABASE_VERSION, updatedVersion);
+      sharedPrefsEd.putInt(
+          KEY_ID_OF_FIRST_EXTRA_ENTRY,
+          sharedPrefs.getInt(
+              KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY, /* default */ ID_OF_FIRST_EXTRA_ENTRY));
+      sharedPrefsEd.remove(KEY_UPDATED_DATABASE_VERSION);
+      sharedPrefsEd.remove(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY);
+      sharedPrefsEd.commit();
+      Log.d(TAG, "Installed replacement database v" + updatedVersion + ".");
+      return true;
+    }
 
-      InputStream inStream = new FileInputStream(fullReplacementDBPath);
-      OutputStream outStream = new FileOutputStream(fullDBPath);
+    private void forgetReplacementDatabase() {
+      SharedPreferences.Editor sharedPrefsEd =
+          PreferenceManager.getDefaultSharedPreferences(mHelperContext).edit();
+      sharedPrefsEd.remove(KEY_UPDATED_DATABASE_VERSION);
+      sharedPrefsEd.remove(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY);
+      sharedPrefsEd.commit();
+    }
 
-      // Transfer the database from the resources to the system path one block at a time.
-      byte[] buffer = new byte[MAX_BUFFER_LENGTH];
-      int length;
-      int total = 0;
-      while ((length = inStream.read(buffer)) > 0) {
-        outStream.write(buffer, 0, length);
-        total += length;
+    /**
+     * If the installed database is unusable and the previous one is in the rollback slot, restores
+     * the previous one and its version keys.
+     *
+     * @return Whether the previous database was restored
+     */
+    public boolean rollBackDatabaseIfCorrupt() {
+      File dbFile = new File(getDatabasePath(DATABASE_NAME));
+      File previousFile = new File(getDatabasePath(PREVIOUS_DATABASE_NAME));
+      if (!previousFile.exists() || checkDatabaseIntegrity(dbFile)) {
+        return false;
+      }
+      mHelperContext.deleteDatabase(DATABASE_NAME);
+      if (!previousFile.renameTo(dbFile)) {
+        Log.e(TAG, "Unable to restore the previous database.");
+        return false;
       }
-      Log.d(TAG, "Copied database from replacement, " + total + " bytes copied.");
-
-      // Close the streams.
-      outStream.flush();
-      outStream.close();
-      inStream.close();
 
-      // Delete the replacement database.
-      mHelperContext.deleteDatabase(REPLACEMENT_DATABASE_NAME);
+      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mHelperContext);
+      String previousVersion =
+          sharedPrefs.getString(
+              KEY_PREVIOUS_DATABASE_VERSION, /* default */ getBundledDatabaseVersion());
+      SharedPreferences.Editor sharedPrefsEd = sharedPrefs.edit();
+      sharedPrefsEd.putString(KEY_INSTALLED_DATABASE_VERSION, previousVersion);
+      sharedPrefsEd.putInt(
+          KEY_ID_OF_FIRST_EXTRA_ENTRY,
+          sharedPrefs.getInt(
+              KEY_PREVIOUS_ID_OF_FIRST_EXTRA_ENTRY, /* default */ ID_OF_FIRST_EXTRA_ENTRY));
+      sharedPrefsEd.remove(KEY_PREVIOUS_DATABASE_VERSION);
+      sharedPrefsEd.remove(KEY_PREVIOUS_ID_OF_FIRST_EXTRA_ENTRY);
+      sharedPrefsEd.commit();
+      Log.w(TAG, "Rolled back to database v" + previousVersion + ".");
+      return true;
     }
 
-    /** Opens the database. */
+    /**
+     * Opens the database. It's opened read-only, so that no journal is ever written next to it,
+     * which allows it to be renamed while it's open.
+     */
     public void openDatabase() throws SQLException {
       String fullDBPath = getDatabasePath(DATABASE_NAME);
       // Log.d(TAG, "openDatabase() called on path " + fullDBPath + ".");
@@ -21,14 +21,14 @@ import android.content.ContentProvider;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.UriMatcher;
 import android.graphics.Typeface;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.graphics.Color;
 import android.net.Uri;
-import android.preference.PreferenceManager;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.provider.BaseColumns;
 import android.text.SpannableStringBuilder;
 import android.text.Spanned;
@@ -36,7 +36,11 @@ import android.text.style.RelativeSizeSpan;
 import android.text.style.StyleSpan;
 import android.text.style.TypefaceSpan;
 import android.util.Log;
+import android.util.LruCache;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -67,8 +71,30 @@ public class KlingonContentProvider extends ContentProvider {
     // SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID,
   };
 
-  // The actual Klingon Content Database.
-  private KlingonContentDatabase mContentDatabase;
+  // The actual Klingon Content Database, which is initialised in the background (since that may
+  // involve copying it from the app's assets) and awaited by the first query. It is replaced if
+  // initialising it is retried after failing.
+  private volatile FutureTask<KlingonContentDatabase> mContentDatabase;
+
+  // The most recently installed updated database, if one has replaced the initial one since the
+  // provider was created.
+  private volatile KlingonContentDatabase mUpdatedContentDatabase = null;
+  private final Object mUpdateLock = new Object();
+
+  // The method to call (with ContentResolver.call) to install an updated database which has been
+  // downloaded, without waiting for the app to be restarted.
+  public static final String METHOD_INSTALL_UPDATED_DATABASE = "install_updated_database";
+
+  // The method to call (with ContentResolver.call) to initialise the database again if it failed
+  // the first time. It does nothing if the database is ready or still being initialised.
+  public static final String METHOD_RETRY_DATABASE_INIT = "retry_database_init";
+
+  // The method to call (with ContentResolver.call) to get the IDs of the entries before and after
+  // the entry whose ID is the argument. They are returned in the keys below, and are
+  // KlingonContentDatabase.NO_ADJACENT_ENTRY if there is none.
+  public static final String METHOD_GET_ADJACENT_ENTRY_IDS = "get_adjacent_entry_ids";
+  public static final String KEY_PREVIOUS_ENTRY_ID = "previous_entry_id";
+  public static final String KEY_NEXT_ENTRY_ID = "next_entry_id";
 
   // UriMatcher stuff
   private static final int SEARCH_ENTRIES = 0;
@@ -77,6 +103,9 @@ public class KlingonContentProvider extends ContentProvider {
   private static final int REFRESH_SHORTCUT = 3;
   private static final int GET_ENTRY_BY_ID = 4;
   private static final int GET_RANDOM_ENTRY = 5;
+  private static final int SEARCH_NEAR_MATCHES = 6;
+  private static final int FIND_ENTRY = 7;
+  private static final int GET_ENTRIES_BY_IDS = 8;
   private static final UriMatcher sURIMatcher = buildUriMatcher();
 
   /** Builds up a UriMatcher for search suggestion and shortcut refresh queries. */
@@ -93,8 +122,19 @@ public class KlingonContentProvider extends ContentProvider {
     // This is needed internally to get an entry by its id.
     matcher.addURI(AUTHORITY, "get_entry_by_id/#", GET_ENTRY_BY_ID);
 
-    // This is needed internally to get a random entry.
+    // This is needed internally to get many entries at once, with their ids as the selectionArgs.
+    matcher.addURI(AUTHORITY, "get_entries_by_ids", GET_ENTRIES_BY_IDS);
+
+    // This is needed internally to get a random entry, optionally from a category of entries
+    // (such as "verb"), which are listed in RandomEntrySampler.
     matcher.addURI(AUTHORITY, "get_random_entry", GET_RANDOM_ENTRY);
+    matcher.addURI(AUTHORITY, "get_random_entry/*", GET_RANDOM_ENTRY);
+
+    // This is needed internally to suggest entries when a search has no results.
+    matcher.addURI(AUTHORITY, "near_matches", SEARCH_NEAR_MATCHES);
+
+    // This is needed internally to resolve a word (such as the KWOTD) to its entry.
+    matcher.addURI(AUTHORITY, "find_entry", FIND_ENTRY);
 
     /*
      * The following are unused in this implementation, but if we include {@link
@@ -110,10 +150,146 @@ public class KlingonContentProvider extends ContentProvider {
 
   @Override
   public boolean onCreate() {
-    mContentDatabase = new KlingonContentDatabase(getContext());
+    startDatabaseInit();
     return true;
   }
 
+  // Initialises the database in the background. If that fails, the install progress listeners are
+  // told, so that the UI doesn't wait for it forever.
+  private synchronized void startDatabaseInit() {
+    final Context context = getContext();
+    FutureTask<KlingonContentDatabase> contentDatabase =
+        new FutureTask<KlingonContentDatabase>(
+            new Callable<KlingonContentDatabase>() {
+              @Override
+              public KlingonContentDatabase call() {
+                try {
+                  KlingonContentDatabase database = new KlingonContentDatabase(context);
+                  // Get spelling correction ready without holding up the first queries.
+                  database.loadSpellingCorrectorsInBackground();
+                  return database;
+                } catch (RuntimeException | Error e) {
+                  Log.e(TAG, "Unable to initialise database.", e);
+                  KlingonContentDatabase.reportDatabaseFailed();
+                  throw e;
+                }
+              }
+            });
+    mContentDatabase = contentDatabase;
+    new Thread(contentDatabase, "KlingonDatabaseInit").start();
+  }
+
+  // Starts initialising the database again if it failed.
+  private synchronized void retryDatabaseInit() {
+    FutureTask<KlingonContentDatabase> contentDatabase = mContentDatabase;
+    if (!contentDatabase.isDone()) {
+      return;
+    }
+    try {
+      contentDatabase.get();
+      return;
+    } catch (InterruptedException e) {
+      // Can't happen, since it's done.
+      Thread.currentThread().interrupt();
+      return;
+    } catch (ExecutionException e) {
+      // It failed, so try again.
+    }
+    KlingonContentDatabase.reportDatabaseRetrying();
+    startDatabaseInit();
+  }
+
+  // Returns the current database, with a reference acquired which the caller must release. Waits
+  // for the database to be initialised if necessary.
+  private KlingonContentDatabase acquireDatabase() {
+    while (true) {
+      KlingonContentDatabase database = getDatabase();
+      if (database.acquire()) {
+        return database;
+      }
+      // The database was replaced by an updated one and closed in the meantime, so try again.
+    }
+  }
+
+  // Returns the current database, waiting for it to be initialised if necessary.
+  private KlingonContentDatabase getDatabase() {
+    KlingonContentDatabase updatedDatabase = mUpdatedContentDatabase;
+    if (updatedDatabase != null) {
+      return updatedDatabase;
+    }
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return mContentDatabase.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          throw new RuntimeException("Unable to initialise database.", e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public Bundle call(String method, String arg, Bundle extras) {
+    if (METHOD_INSTALL_UPDATED_DATABASE.equals(method)) {
+      new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  installUpdatedDatabase();
+                }
+              },
+              "KlingonDatabaseUpdate")
+          .start();
+      return null;
+    } else if (METHOD_RETRY_DATABASE_INIT.equals(method)) {
+      retryDatabaseInit();
+      return null;
+    } else if (METHOD_GET_ADJACENT_ENTRY_IDS.equals(method)) {
+      KlingonContentDatabase database = acquireDatabase();
+      try {
+        int[] adjacentIds = database.getAdjacentEntryIds(Integer.parseInt(arg));
+        Bundle result = new Bundle();
+        result.putInt(KEY_PREVIOUS_ENTRY_ID, adjacentIds[0]);
+        result.putInt(KEY_NEXT_ENTRY_ID, adjacentIds[1]);
+        return result;
+      } finally {
+        database.release();
+      }
+    }
+    return super.call(method, arg, extras);
+  }
+
+  // Opens the updated database alongside the current one, and builds its indexes, before switching
+  // new queries over to it. The old database is closed once its queries and cursors are finished.
+  private void installUpdatedDatabase() {
+    synchronized (mUpdateLock) {
+      // Wait for the initial database, so that it doesn't race with this to install the update.
+      KlingonContentDatabase oldDatabase = getDatabase();
+      if (!KlingonContentDatabase.hasUpdatedDatabase(getContext())) {
+        return;
+      }
+      KlingonContentDatabase newDatabase = new KlingonContentDatabase(getContext());
+      if (newDatabase.getVersion().equals(oldDatabase.getVersion())) {
+        // The update couldn't be installed.
+        newDatabase.release();
+        return;
+      }
+      newDatabase.buildIndexes();
+      mUpdatedContentDatabase = newDatabase;
+      oldDatabase.release();
+      EntryBodyCache.clear();
+      Log.d(TAG, "Switched to database v" + newDatabase.getVersion() + ".");
+      getContext().getContentResolver().notifyChange(CONTENT_URI, null);
+    }
+  }
+
   /**
    * Handles all the database searches and suggestion queries from the Search Manager. When
    * requesting a specific entry, the uri alone is required. When searching all of the database for
@@ -123,7 +299,40 @@ public class KlingonContentProvider extends ContentProvider {
   @Override
   public Cursor query(
       Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    KlingonContentDatabase database = acquireDatabase();
+    Cursor cursor;
+    try {
+      cursor = query(database, uri, projection, selectionArgs);
+    } catch (RuntimeException e) {
+      database.release();
+      throw e;
+    }
+    // Keep the database open until the cursor is closed, even if an update replaces it.
+    return database.releaseWhenClosed(cursor);
+  }
 
+  /**
+   * As above, but the multi-stage searches stop between stages and throw OperationCanceledException
+   * once the signal is cancelled.
+   */
+  @Override
+  public Cursor query(
+      Uri uri,
+      String[] projection,
+      String selection,
+      String[] selectionArgs,
+      String sortOrder,
+      CancellationSignal cancellationSignal) {
+    KlingonContentDatabase.setCancellationSignal(cancellationSignal);
+    try {
+      return query(uri, projection, selection, selectionArgs, sortOrder);
+    } finally {
+      KlingonContentDatabase.setCancellationSignal(null);
+    }
+  }
+
+  private Cursor query(
+      KlingonContentDatabase database, Uri uri, String[] projection, String[] selectionArgs) {
     // Use the UriMatcher to see what kind of query we have and format the db query accordingly
     switch (sURIMatcher.match(uri)) {
       case SEARCH_SUGGEST:
@@ -131,17 +340,17 @@ public class KlingonContentProvider extends ContentProvider {
         if (selectionArgs == null) {
           throw new IllegalArgumentException("selectionArgs must be provided for the Uri: " + uri);
         }
-        return getSuggestions(selectionArgs[0]);
+        return getSuggestions(database, selectionArgs[0]);
       case SEARCH_ENTRIES:
         // Uri has "/lookup".
         if (selectionArgs == null) {
           throw new IllegalArgumentException("selectionArgs must be provided for the Uri: " + uri);
         }
-        return search(selectionArgs[0]);
+        return search(database, selectionArgs[0], projection);
       case GET_ENTRY:
-        return getEntry(uri);
+        return getEntry(database, uri, projection);
       case REFRESH_SHORTCUT:
-        return refreshShortcut(uri);
+        return refreshShortcut(database, uri, projection);
       case GET_ENTRY_BY_ID:
         // This case was added to allow getting the entry by its id.
         String entryId = null;
@@ -149,9 +358,31 @@ public class KlingonContentProvider extends ContentProvider {
           entryId = uri.getLastPathSegment();
         }
         // Log.d(TAG, "entryId = " + entryId);
-        return getEntryById(entryId, projection);
+        return getEntryById(database, entryId, projection);
+      case GET_ENTRIES_BY_IDS:
+        // Uri has "/get_entries_by_ids", with the ids in the order the entries are wanted in.
+        if (selectionArgs == null) {
+          throw new IllegalArgumentException("selectionArgs must be provided for the Uri: " + uri);
+        }
+        return database.getEntriesByIds(selectionArgs, projection);
       case GET_RANDOM_ENTRY:
-        return getRandomEntry(projection);
+        String category = RandomEntrySampler.CATEGORY_CANON;
+        if (uri.getPathSegments().size() > 1) {
+          category = uri.getLastPathSegment();
+        }
+        return getRandomEntry(database, category, projection);
+      case SEARCH_NEAR_MATCHES:
+        // Uri has "/near_matches".
+        if (selectionArgs == null) {
+          throw new IllegalArgumentException("selectionArgs must be provided for the Uri: " + uri);
+        }
+        return database.getNearMatches(selectionArgs[0], projection);
+      case FIND_ENTRY:
+        // Uri has "/find_entry", with the entry name and part of speech, and the definition.
+        if (selectionArgs == null || selectionArgs.length < 2) {
+          throw new IllegalArgumentException("selectionArgs must be provided for the Uri: " + uri);
+        }
+        return database.findEntry(selectionArgs[0], selectionArgs[1], projection);
       default:
         throw new IllegalArgumentException("Unknown Uri: " + uri);
     }
@@ -160,7 +391,7 @@ public class KlingonContentProvider extends ContentProvider {
   // (1) - This is the first way the database can be queried.
   // Called when uri has SUGGEST_URI_PATH_QUERY, i.e., "search_suggest_query".
   // This populates the dropdown list from the search box.
-  private Cursor getSuggestions(String query) {
+  private Cursor getSuggestions(KlingonContentDatabase database, String query) {
     if (BuildConfig.DEBUG) {
       Log.d(TAG, "getSuggestions called with query: \"" + query + "\"");
     }
@@ -168,8 +399,11 @@ public class KlingonContentProvider extends ContentProvider {
       return null;
     }
 
-    // First, get all the potentially relevant entries. Include all columns of data.
-    Cursor rawCursor = mContentDatabase.getEntryMatches(query);
+    // First, get all the potentially relevant entries. Only the columns which are shown in the
+    // dropdown are read.
+    String[] listKeys =
+        KlingonContentDatabase.getListKeys(SearchSettings.get(getContext()).getOtherLanguage());
+    Cursor rawCursor = database.getEntryMatches(query, listKeys);
 
     // Format to two columns for display.
     MatrixCursor formattedCursor = new MatrixCursor(SUGGESTION_COLUMNS);
@@ -205,21 +439,22 @@ public class KlingonContentProvider extends ContentProvider {
   // (2) - This is the second way the database can be queried.
   // Called when uri has "/lookup".
   // Either we're following a link, or the user has pressed the "Go" button from search.
-  private Cursor search(String query) {
+  private Cursor search(KlingonContentDatabase database, String query, String[] projection) {
     if (BuildConfig.DEBUG) {
       Log.d(TAG, "search called with query: " + query);
     }
 
-    return mContentDatabase.getEntryMatches(query);
+    return database.getEntryMatches(query, projection);
   }
 
-  private Cursor getEntry(Uri uri) {
+  private Cursor getEntry(KlingonContentDatabase database, Uri uri, String[] projection) {
     // Log.d(TAG, "getEntry called with uri: " + uri.toString());
     String rowId = uri.getLastPathSegment();
-    return mContentDatabase.getEntry(rowId, KlingonContentDatabase.ALL_KEYS);
+    return database.getEntry(
+        rowId, projection != null ? projection : KlingonContentDatabase.ALL_KEYS);
   }
 
-  private Cursor refreshShortcut(Uri uri) {
+  private Cursor refreshShortcut(KlingonContentDatabase database, Uri uri, String[] projection) {
     /*
      * This won't be called with the current implementation, but if we include {@link
      * SearchManager#SUGGEST_COLUMN_SHORTCUT_ID} as a column in our suggestions table, we could
@@ -235,18 +470,21 @@ public class KlingonContentProvider extends ContentProvider {
      * SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID};
      */
 
-    return mContentDatabase.getEntry(rowId, KlingonContentDatabase.ALL_KEYS);
+    return database.getEntry(
+        rowId, projection != null ? projection : KlingonContentDatabase.ALL_KEYS);
   }
 
   /** Retrieve a single entry by its _id. */
-  private Cursor getEntryById(String entryId, String[] projection) {
+  private Cursor getEntryById(
+      KlingonContentDatabase database, String entryId, String[] projection) {
     // Log.d(TAG, "getEntryById called with entryid: " + entryId);
-    return mContentDatabase.getEntryById(entryId, projection);
+    return database.getEntryById(entryId, projection);
   }
 
-  /** Get a single random entry. */
-  private Cursor getRandomEntry(String[] projection) {
-    return mContentDatabase.getRandomEntry(projection);
+  /** Get a single random entry from the given category. */
+  private Cursor getRandomEntry(
+      KlingonContentDatabase database, String category, String[] projection) {
+    return database.getRandomEntry(category, projection);
   }
 
   /**
@@ -257,8 +495,11 @@ public class KlingonContentProvider extends ContentProvider {
   public String getType(Uri uri) {
     switch (sURIMatcher.match(uri)) {
       case SEARCH_ENTRIES:
+      case SEARCH_NEAR_MATCHES:
+      case GET_ENTRIES_BY_IDS:
         return ENTRIES_MIME_TYPE;
       case GET_ENTRY:
+      case FIND_ENTRY:
         return DEFINITION_MIME_TYPE;
       case SEARCH_SUGGEST:
         return SearchManager.SUGGEST_MIME_TYPE;
@@ -287,75 +528,21 @@ public class KlingonContentProvider extends ContentProvider {
   }
 
   public static String convertStringToKlingonFont(String s) {
-    // Strip anything we don't recognise.
-    // This pattern should be kept mostly in sync with ENTRY_PATTERN. Note that "ü" and "+" will
-    // never be in an entry name.
-    String klingonString = s.replaceAll("[^A-Za-z0-9 '\\\":;,\\.\\-?!_/()@=%&\\*]", "");
-
-    // This is a hack: change the separators between words and their affixes.
-    // TODO: Do this upstream and colour the affixes differently.
-    klingonString =
-        klingonString
-            .replaceAll(" + -", " ◃ ")
-            .replaceAll("- + ", " ▹ ")
-            .replaceAll("^-", "◃ ")
-            .replaceAll("-$", " ▹");
-
-    // {gh} must come before {ngh} since {ngh} is {n} + {gh} and not {ng} + *{h}.
-    // {ng} must come before {n}.
-    // {tlh} must come before {t} and {l}.
-    // Don't change {-} since it's needed for prefixes and suffixes.
-    // Don't change "..." (ellipses), but do change "." (periods).
-    klingonString =
-        klingonString
-            .replaceAll("gh", "")
-            .replaceAll("ng", "")
-            .replaceAll("tlh", "")
-            .replaceAll("a", "")
-            .replaceAll("b", "")
-            .replaceAll("ch", "")
-            .replaceAll("D", "")
-            .replaceAll("e", "")
-            .replaceAll("H", "")
-            .replaceAll("I", "")
-            .replaceAll("j", "")
-            .replaceAll("l", "")
-            .replaceAll("m", "")
-            .replaceAll("n", "")
-            .replaceAll("o", "")
-            .replaceAll("p", "")
-            .replaceAll("q", "")
-            .replaceAll("Q", "")
-            .replaceAll("r", "")
-            .replaceAll("S", "")
-            .replaceAll("t", "")
-            .replaceAll("u", "")
-            .replaceAll("v", "")
-            .replaceAll("w", "")
-            .replaceAll("y", "")
-            .replaceAll("'", "")
-            .replaceAll("0", "")
-            .replaceAll("1", "")
-            .replaceAll("2", "")
-            .replaceAll("3", "")
-            .replaceAll("4", "")
-            .replaceAll("5", "")
-            .replaceAll("6", "")
-            .replaceAll("7", "")
-            .replaceAll("8", "")
-            .replaceAll("9", "")
-            .replaceAll(",", "")
-            .replaceAll(";", "")
-            .replaceAll("!", "")
-            .replaceAll("\\(", "▹")
-            .replaceAll("\\)", "◃")
-            .replaceAll("-", "◃")
-            .replaceAll("\\?", "")
-            .replaceAll("\\.", "")
-            // Note: The LHS is in Klingon due to previous replacements.
-            // We replace three periods in a row with an ellipsis.
-            .replaceAll("", "⋯");
-    return klingonString;
+    return KlingonFontConverter.convert(s);
+  }
+
+  // Entry names converted to {pIqaD}, keyed by the entry name.
+  private static final LruCache<String, String> sKlingonFontEntryNameCache =
+      new LruCache<String, String>(2048);
+
+  // Same as convertStringToKlingonFont, but cached, for entry names.
+  static String convertEntryNameToKlingonFont(String entryName) {
+    String klingonEntryName = sKlingonFontEntryNameCache.get(entryName);
+    if (klingonEntryName == null) {
+      klingonEntryName = convertStringToKlingonFont(entryName);
+      sKlingonFontEntryNameCache.put(entryName, klingonEntryName);
+    }
+    return klingonEntryName;
   }
 
   // This class is for managing entries.
@@ -377,6 +564,9 @@ public class KlingonContentProvider extends ContentProvider {
     // Context.
     private Context mContext;
 
+    // The settings at the time this entry was created.
+    private SearchSettings mSettings;
+
     // The raw data for the entry.
     // private Uri mUri = null;
     private int mId = -1;
@@ -538,6 +728,7 @@ public class KlingonContentProvider extends ContentProvider {
       // Log.d(TAG, "Entry constructed from query: \"" + query + "\"");
       mEntryName = query;
       mContext = context;
+      mSettings = SearchSettings.get(context);
 
       // Get analysis components, if any.
       int cmLoc = mEntryName.indexOf(COMPONENTS_MARKER);
@@ -582,64 +773,72 @@ public class KlingonContentProvider extends ContentProvider {
      */
     public Entry(Cursor cursor, Context context) {
       mContext = context;
+      mSettings = SearchSettings.get(context);
 
-      mId = cursor.getInt(KlingonContentDatabase.COLUMN_ID);
-      mEntryName = cursor.getString(KlingonContentDatabase.COLUMN_ENTRY_NAME);
-      mPartOfSpeech = cursor.getString(KlingonContentDatabase.COLUMN_PART_OF_SPEECH);
+      // The cursor might have only some of the columns, in any order, so they're found by name.
+      mId = cursor.getInt(cursor.getColumnIndexOrThrow(KlingonContentDatabase.KEY_ID));
+      mEntryName = getString(cursor, KlingonContentDatabase.KEY_ENTRY_NAME);
+      mPartOfSpeech = getString(cursor, KlingonContentDatabase.KEY_PART_OF_SPEECH);
 
       // TODO: Make this dependent on the chosen language.
-      mDefinition = cursor.getString(KlingonContentDatabase.COLUMN_DEFINITION);
-      mNotes = cursor.getString(KlingonContentDatabase.COLUMN_NOTES);
-      mSearchTags = cursor.getString(KlingonContentDatabase.COLUMN_SEARCH_TAGS);
-
-      mDefinition_DE = cursor.getString(KlingonContentDatabase.COLUMN_DEFINITION_DE);
-      mNotes_DE = cursor.getString(KlingonContentDatabase.COLUMN_NOTES_DE);
-      mExamples_DE = cursor.getString(KlingonContentDatabase.COLUMN_EXAMPLES_DE);
-      mSearchTags_DE = cursor.getString(KlingonContentDatabase.COLUMN_SEARCH_TAGS_DE);
-
-      mDefinition_FA = cursor.getString(KlingonContentDatabase.COLUMN_DEFINITION_FA);
-      mNotes_FA = cursor.getString(KlingonContentDatabase.COLUMN_NOTES_FA);
-      mExamples_FA = cursor.getString(KlingonContentDatabase.COLUMN_EXAMPLES_FA);
-      mSearchTags_FA = cursor.getString(KlingonContentDatabase.COLUMN_SEARCH_TAGS_FA);
-
-      mDefinition_SV = cursor.getString(KlingonContentDatabase.COLUMN_DEFINITION_SV);
-      mNotes_SV = cursor.getString(KlingonContentDatabase.COLUMN_NOTES_SV);
-      mExamples_SV = cursor.getString(KlingonContentDatabase.COLUMN_EXAMPLES_SV);
-      mSearchTags_SV = cursor.getString(KlingonContentDatabase.COLUMN_SEARCH_TAGS_SV);
-
-      mDefinition_RU = cursor.getString(KlingonContentDatabase.COLUMN_DEFINITION_RU);
-      mNotes_RU = cursor.getString(KlingonContentDatabase.COLUMN_NOTES_RU);
-      mExamples_RU = cursor.getString(KlingonContentDatabase.COLUMN_EXAMPLES_RU);
-      mSearchTags_RU = cursor.getString(KlingonContentDatabase.COLUMN_SEARCH_TAGS_RU);
-
-      mDefinition_ZH_HK = cursor.getString(KlingonContentDatabase.COLUMN_DEFINITION_ZH_HK);
-      mNotes_ZH_HK = cursor.getString(KlingonContentDatabase.COLUMN_NOTES_ZH_HK);
-      mExamples_ZH_HK = cursor.getString(KlingonContentDatabase.COLUMN_EXAMPLES_ZH_HK);
-      mSearchTags_ZH_HK = cursor.getString(KlingonContentDatabase.COLUMN_SEARCH_TAGS_ZH_HK);
-
-      mDefinition_PT = cursor.getString(KlingonContentDatabase.COLUMN_DEFINITION_PT);
-      mNotes_PT = cursor.getString(KlingonContentDatabase.COLUMN_NOTES_PT);
-      mExamples_PT = cursor.getString(KlingonContentDatabase.COLUMN_EXAMPLES_PT);
-      mSearchTags_PT = cursor.getString(KlingonContentDatabase.COLUMN_SEARCH_TAGS_PT);
-
-      mDefinition_FI = cursor.getString(KlingonContentDatabase.COLUMN_DEFINITION_FI);
-      mNotes_FI = cursor.getString(KlingonContentDatabase.COLUMN_NOTES_FI);
-      mExamples_FI = cursor.getString(KlingonContentDatabase.COLUMN_EXAMPLES_FI);
-      mSearchTags_FI = cursor.getString(KlingonContentDatabase.COLUMN_SEARCH_TAGS_FI);
-
-      mSynonyms = cursor.getString(KlingonContentDatabase.COLUMN_SYNONYMS);
-      mAntonyms = cursor.getString(KlingonContentDatabase.COLUMN_ANTONYMS);
-      mSeeAlso = cursor.getString(KlingonContentDatabase.COLUMN_SEE_ALSO);
-      mHiddenNotes = cursor.getString(KlingonContentDatabase.COLUMN_HIDDEN_NOTES);
-      mComponents = cursor.getString(KlingonContentDatabase.COLUMN_COMPONENTS);
-      mExamples = cursor.getString(KlingonContentDatabase.COLUMN_EXAMPLES);
-      mSource = cursor.getString(KlingonContentDatabase.COLUMN_SOURCE);
+      mDefinition = getString(cursor, KlingonContentDatabase.KEY_DEFINITION);
+      mNotes = getString(cursor, KlingonContentDatabase.KEY_NOTES);
+      mSearchTags = getString(cursor, KlingonContentDatabase.KEY_SEARCH_TAGS);
+
+      mDefinition_DE = getString(cursor, KlingonContentDatabase.KEY_DEFINITION_DE);
+      mNotes_DE = getString(cursor, KlingonContentDatabase.KEY_NOTES_DE);
+      mExamples_DE = getString(cursor, KlingonContentDatabase.KEY_EXAMPLES_DE);
+      mSearchTags_DE = getString(cursor, KlingonContentDatabase.KEY_SEARCH_TAGS_DE);
+
+      mDefinition_FA = getString(cursor, KlingonContentDatabase.KEY_DEFINITION_FA);
+      mNotes_FA = getString(cursor, KlingonContentDatabase.KEY_NOTES_FA);
+      mExamples_FA = getString(cursor, KlingonContentDatabase.KEY_EXAMPLES_FA);
+      mSearchTags_FA = getString(cursor, KlingonContentDatabase.KEY_SEARCH_TAGS_FA);
+
+      mDefinition_SV = getString(cursor, KlingonContentDatabase.KEY_DEFINITION_SV);
+      mNotes_SV = getString(cursor, KlingonContentDatabase.KEY_NOTES_SV);
+      mExamples_SV = getString(cursor, KlingonContentDatabase.KEY_EXAMPLES_SV);
+      mSearchTags_SV = getString(cursor, KlingonContentDatabase.KEY_SEARCH_TAGS_SV);
+
+      mDefinition_RU = getString(cursor, KlingonContentDatabase.KEY_DEFINITION_RU);
+      mNotes_RU = getString(cursor, KlingonContentDatabase.KEY_NOTES_RU);
+      mExamples_RU = getString(cursor, KlingonContentDatabase.KEY_EXAMPLES_RU);
+      mSearchTags_RU = getString(cursor, KlingonContentDatabase.KEY_SEARCH_TAGS_RU);
+
+      mDefinition_ZH_HK = getString(cursor, KlingonContentDatabase.KEY_DEFINITION_ZH_HK);
+      mNotes_ZH_HK = getString(cursor, KlingonContentDatabase.KEY_NOTES_ZH_HK);
+      mExamples_ZH_HK = getString(cursor, KlingonContentDatabase.KEY_EXAMPLES_ZH_HK);
+      mSearchTags_ZH_HK = getString(cursor, KlingonContentDatabase.KEY_SEARCH_TAGS_ZH_HK);
+
+      mDefinition_PT = getString(cursor, KlingonContentDatabase.KEY_DEFINITION_PT);
+      mNotes_PT = getString(cursor, KlingonContentDatabase.KEY_NOTES_PT);
+      mExamples_PT = getString(cursor, KlingonContentDatabase.KEY_EXAMPLES_PT);
+      mSearchTags_PT = getString(cursor, KlingonContentDatabase.KEY_SEARCH_TAGS_PT);
+
+      mDefinition_FI = getString(cursor, KlingonContentDatabase.KEY_DEFINITION_FI);
+      mNotes_FI = getString(cursor, KlingonContentDatabase.KEY_NOTES_FI);
+      mExamples_FI = getString(cursor, KlingonContentDatabase.KEY_EXAMPLES_FI);
+      mSearchTags_FI = getString(cursor, KlingonContentDatabase.KEY_SEARCH_TAGS_FI);
+
+      mSynonyms = getString(cursor, KlingonContentDatabase.KEY_SYNONYMS);
+      mAntonyms = getString(cursor, KlingonContentDatabase.KEY_ANTONYMS);
+      mSeeAlso = getString(cursor, KlingonContentDatabase.KEY_SEE_ALSO);
+      mHiddenNotes = getString(cursor, KlingonContentDatabase.KEY_HIDDEN_NOTES);
+      mComponents = getString(cursor, KlingonContentDatabase.KEY_COMPONENTS);
+      mExamples = getString(cursor, KlingonContentDatabase.KEY_EXAMPLES);
+      mSource = getString(cursor, KlingonContentDatabase.KEY_SOURCE);
 
       // The homophone number is -1 by default.
       // Note: The homophone number may be overwritten by this function call.
       processMetadata();
     }
 
+    // Returns the value in the given column of the cursor, or "" if the cursor doesn't have it.
+    private static String getString(Cursor cursor, String key) {
+      int column = cursor.getColumnIndex(key);
+      return (column == -1) ? "" : cursor.getString(column);
+    }
+
     // Helper method to process metadata.
     private void processMetadata() {
 
@@ -988,7 +1187,7 @@ public class KlingonContentProvider extends ContentProvider {
 
     // Get the name of the entry written in {pIqaD}.
     public String getEntryNameInKlingonFont() {
-      return KlingonContentProvider.convertStringToKlingonFont(mEntryName);
+      return KlingonContentProvider.convertEntryNameToKlingonFont(mEntryName);
     }
 
     private String getSpecificPartOfSpeech() {
@@ -1136,11 +1335,7 @@ public class KlingonContentProvider extends ContentProvider {
     // TODO: Refactor the additional languages code to be much more compact.
     // These functions should probably take a language code as a second parameter.
     public String getOtherLanguageDefinition() {
-      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-      final String otherLang =
-          sharedPrefs.getString(
-              Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */ "NONE");
-      switch (otherLang) {
+      switch (mSettings.getOtherLanguage()) {
         case "de":
           return getDefinition_DE();
         case "fa":
@@ -1188,12 +1383,7 @@ public class KlingonContentProvider extends ContentProvider {
 
     // Returns true iff the other-language definition should displayed.
     public boolean shouldDisplayOtherLanguageDefinition() {
-      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-      final String otherLang =
-          sharedPrefs.getString(
-              Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
-              Preferences.getSystemPreferredLanguage());
-      if (otherLang != "NONE") {
+      if (mSettings.hasOtherLanguage()) {
         // Show other-language definitions preference set to a language and that other-language
         // definition is not empty or identical to the English.
         String otherLanguageDefinition = getOtherLanguageDefinition();
@@ -1210,12 +1400,7 @@ public class KlingonContentProvider extends ContentProvider {
     // empty notes override the English notes), in which case this function will still return true.
     // It's up to the caller to "display" these empty notes (i.e., suppress the English notes).
     public boolean shouldDisplayOtherLanguageNotes() {
-      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-      final String otherLang =
-          sharedPrefs.getString(
-              Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
-              Preferences.getSystemPreferredLanguage());
-      if (otherLang != "NONE") {
+      if (mSettings.hasOtherLanguage()) {
         // Show other-language definitions preference set to a language and that other-language
         // notes are not empty or identical to the English.
         String otherLanguageNotes = getOtherLanguageNotes();
@@ -1229,12 +1414,7 @@ public class KlingonContentProvider extends ContentProvider {
 
     // Returns true iff the other-language examples should be displayed.
     public boolean shouldDisplayOtherLanguageExamples() {
-      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-      final String otherLang =
-          sharedPrefs.getString(
-              Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
-              Preferences.getSystemPreferredLanguage());
-      if (otherLang != "NONE") {
+      if (mSettings.hasOtherLanguage()) {
         // Show other-language definitions preference set to a language and that other-language
         // examples are not empty.
         String otherLanguageExamples = getOtherLanguageExamples();
@@ -1406,11 +1586,7 @@ public class KlingonContentProvider extends ContentProvider {
 
     // TODO: Refactor.
     public String getOtherLanguageNotes() {
-      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-      final String otherLang =
-          sharedPrefs.getString(
-              Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */ "NONE");
-      switch (otherLang) {
+      switch (mSettings.getOtherLanguage()) {
         case "de":
           return getNotes_DE();
         case "fa":
@@ -1462,11 +1638,7 @@ public class KlingonContentProvider extends ContentProvider {
 
     // TODO: Refactor.
     public String getOtherLanguageExamples() {
-      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-      final String otherLang =
-          sharedPrefs.getString(
-              Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */ "NONE");
-      switch (otherLang) {
+      switch (mSettings.getOtherLanguage()) {
         case "de":
           return getExamples_DE();
         case "fa":
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+/**
+ * Converts Latin transcription to the {pIqaD} of the Klingon font in a single greedy pass from left
+ * to right, rather than a long chain of regular expression replacements whose order was
+ * significant. It doesn't depend on Android, so that it can be unit tested.
+ */
+final class KlingonFontConverter {
+
+  // The {pIqaD} for the Latin characters which are converted one at a time, as pairs of (Latin,
+  // {pIqaD}). The digraphs and trigraph {ch}, {gh}, {ng}, and {tlh}, as well as "-" and ".", are
+  // handled in convert.
+  private static final String LATIN_TO_KLINGON_FONT_PAIRS =
+      "a\uF8D0b\uF8D1D\uF8D3e\uF8D4H\uF8D6I\uF8D7j\uF8D8l\uF8D9m\uF8DAn\uF8DBo\uF8DDp\uF8DE"
+          + "q\uF8DFQ\uF8E0r\uF8E1S\uF8E2t\uF8E3u\uF8E5v\uF8E6w\uF8E7y\uF8E8'\uF8E9"
+          + "0\uF8F01\uF8F12\uF8F23\uF8F34\uF8F45\uF8F56\uF8F67\uF8F78\uF8F89\uF8F9"
+          + ",\uF8FD;\uF8FD!\uF8FE?\uF8FE(\u25B9)\u25C3";
+
+  // The characters which are kept by convert. This should be kept mostly in sync with
+  // KlingonContentProvider.ENTRY_PATTERN. Note that "\u00FC" and "+" will never be in an entry name.
+  private static final String KLINGON_FONT_SYMBOLS = " '\":;,.-?!_/()@=%&*";
+
+  // Tables indexed by ASCII character, built from the above.
+  private static final char[] sLatinToKlingonFont = new char[128];
+  private static final boolean[] sIsKlingonFontChar = new boolean[128];
+
+  static {
+    for (int i = 0; i < LATIN_TO_KLINGON_FONT_PAIRS.length(); i += 2) {
+      sLatinToKlingonFont[LATIN_TO_KLINGON_FONT_PAIRS.charAt(i)] =
+          LATIN_TO_KLINGON_FONT_PAIRS.charAt(i + 1);
+    }
+    for (char c = 0; c < 128; c++) {
+      sIsKlingonFontChar[c] =
+          (c >= 'A' && c <= 'Z')
+              || (c >= 'a' && c <= 'z')
+              || (c >= '0' && c <= '9')
+              || KLINGON_FONT_SYMBOLS.indexOf(c) != -1;
+    }
+  }
+
+  // Punctuation which is written with the {pIqaD} period. Three in a row become an ellipsis.
+  private static boolean isKlingonFontPeriod(char c) {
+    return c == '.' || c == '?' || c == '!';
+  }
+
+  /** Converts a string to {pIqaD}, dropping any characters which aren't recognised. */
+  static String convert(String s) {
+    // Strip anything we don't recognise.
+    StringBuilder latin = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 128 && sIsKlingonFontChar[c]) {
+        latin.append(c);
+      }
+    }
+
+    // Convert greedily from left to right, in a single pass.
+    // {gh} must take precedence over {ng} since {ngh} is {n} + {gh} and not {ng} + *{h}.
+    // {tlh} must take precedence over {t} and {l}.
+    // Don't change "..." (ellipses), but do change "." (periods).
+    int length = latin.length();
+    StringBuilder klingon = new StringBuilder(length);
+    int i = 0;
+    while (i < length) {
+      char c = latin.charAt(i);
+      char next = i + 1 < length ? latin.charAt(i + 1) : 0;
+      char nextNext = i + 2 < length ? latin.charAt(i + 2) : 0;
+      if (c == ' ' || c == '-') {
+        // This is a hack: change the separators between words and their affixes. A "-" preceded
+        // or followed by at least two spaces, or at the beginning or end, becomes a triangle.
+        // TODO: Do this upstream and colour the affixes differently.
+        int spacesEnd = c == ' ' ? i : i + 1;
+        while (spacesEnd < length && latin.charAt(spacesEnd) == ' ') {
+          spacesEnd++;
+        }
+        int spaces = spacesEnd - (c == ' ' ? i : i + 1);
+        boolean spacesPrecedeHyphen = spacesEnd < length && latin.charAt(spacesEnd) == '-';
+        if (c == ' ') {
+          if (spaces >= 2 && spacesPrecedeHyphen) {
+            klingon.append(" \u25C3 ");
+            i = spacesEnd + 1;
+          } else {
+            klingon.append(latin, i, spacesEnd);
+            i = spacesEnd;
+          }
+        } else if (spaces >= 2 && !spacesPrecedeHyphen) {
+          klingon.append(" \u25B9 ");
+          i = spacesEnd;
+        } else {
+          if (i == 0) {
+            klingon.append("\u25C3 ");
+          } else if (i == length - 1) {
+            klingon.append(" \u25B9");
+          } else {
+            klingon.append('\u25C3');
+          }
+          i++;
+        }
+      } else if (c == 'g' && next == 'h') {
+        klingon.append('\uF8D5');
+        i += 2;
+      } else if (c == 'n' && next == 'g' && nextNext != 'h') {
+        klingon.append('\uF8DC');
+        i += 2;
+      } else if (c == 't' && next == 'l' && nextNext == 'h') {
+        klingon.append('\uF8E4');
+        i += 3;
+      } else if (c == 'c' && next == 'h') {
+        klingon.append('\uF8D2');
+        i += 2;
+      } else if (isKlingonFontPeriod(c)) {
+        int periodsEnd = i + 1;
+        while (periodsEnd < length && isKlingonFontPeriod(latin.charAt(periodsEnd))) {
+          periodsEnd++;
+        }
+        int periods = periodsEnd - i;
+        for (int j = 0; j < periods / 3; j++) {
+          klingon.append('\u22EF');
+        }
+        for (int j = 0; j < periods % 3; j++) {
+          klingon.append('\uF8FE');
+        }
+        i = periodsEnd;
+      } else {
+        char converted = sLatinToKlingonFont[c];
+        klingon.append(converted != 0 ? converted : c);
+        i++;
+      }
+    }
+    return klingon.toString();
+  }
+  private KlingonFontConverter() {}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.graphics.Typeface;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+import java.util.Collections;
+import java.util.List;
+import org.tlhInganHol.android.klingonassistant.service.KwotdHistoryDatabase;
+
+/**
+ * Displays the Klingon Words of the Day fetched so far. Each is resolved to its entry again when
+ * it's opened, since the entry IDs change when the database is updated. No network access is
+ * needed.
+ */
+public class KwotdHistoryActivity extends BaseActivity {
+  // private static final String TAG = "KwotdHistoryActivity";
+
+  private ListView mListView;
+  private TextView mEmptyView;
+
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setDrawerContentView(R.layout.kwotd_history);
+
+    TextView entryTitle = (TextView) findViewById(R.id.entry_title);
+    entryTitle.setText(getResources().getString(R.string.menu_kwotd_history));
+    mListView = (ListView) findViewById(R.id.list);
+    mEmptyView = (TextView) findViewById(R.id.empty);
+  }
+
+  @Override
+  protected void onResume() {
+    super.onResume();
+
+    // Reload the history in the background, since a word might have been fetched in the meantime.
+    // The history database is created the first time it's opened.
+    final Context context = getApplicationContext();
+    getQueryRunner()
+        .run(
+            new QueryRunner.Query<List<KwotdHistoryDatabase.Word>>() {
+              @Override
+              public List<KwotdHistoryDatabase.Word> run(
+                  ContentResolver resolver, CancellationSignal cancellationSignal) {
+                return KwotdHistoryDatabase.get(context).getWords();
+              }
+            },
+            new QueryRunner.Callback<List<KwotdHistoryDatabase.Word>>() {
+              @Override
+              public void onQueryComplete(List<KwotdHistoryDatabase.Word> words) {
+                if (words == null) {
+                  words = Collections.emptyList();
+                }
+                displayWords(words);
+              }
+            });
+  }
+
+  private void displayWords(List<KwotdHistoryDatabase.Word> words) {
+    mEmptyView.setVisibility(words.isEmpty() ? View.VISIBLE : View.GONE);
+    WordAdapter wordAdapter = new WordAdapter(words);
+    mListView.setAdapter(wordAdapter);
+    mListView.setOnItemClickListener(wordAdapter);
+  }
+
+  class WordAdapter extends BaseAdapter implements AdapterView.OnItemClickListener {
+
+    private final List<KwotdHistoryDatabase.Word> mWords;
+    private final LayoutInflater mInflater;
+
+    public WordAdapter(List<KwotdHistoryDatabase.Word> words) {
+      mWords = words;
+      mInflater =
+          (LayoutInflater)
+              KwotdHistoryActivity.this.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+    }
+
+    @Override
+    public int getCount() {
+      return mWords.size();
+    }
+
+    @Override
+    public Object getItem(int position) {
+      return mWords.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+      return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+      View view =
+          (convertView != null)
+              ? convertView
+              : mInflater.inflate(android.R.layout.simple_list_item_2, parent, false);
+      TextView text1 = (TextView) view.findViewById(android.R.id.text1);
+      TextView text2 = (TextView) view.findViewById(android.R.id.text2);
+      KwotdHistoryDatabase.Word word = mWords.get(position);
+
+      // Use serif for the word, so capital-I and lowercase-l are distinguishable.
+      text1.setTypeface(Typeface.SERIF);
+      text1.setText(word.getEntryName() + " (" + word.getType() + ")");
+      text1.setTextSize(22);
+      text2.setText(word.getDate() + ": " + word.getDefinition());
+      text2.setTextSize(14);
+      return view;
+    }
+
+    @Override
+    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+      final KwotdHistoryDatabase.Word word = mWords.get(position);
+
+      // The entry ID saved with the word refers to the database it was fetched with, so resolve
+      // the word again in the background, the same way it was resolved when it was fetched.
+      getQueryRunner()
+          .query(
+              Uri.parse(KlingonContentProvider.CONTENT_URI + "/find_entry"),
+              new String[] {KlingonContentDatabase.KEY_ID},
+              new String[] {word.getQuery(), word.getDefinition()},
+              new QueryRunner.Callback<Cursor>() {
+                @Override
+                public void onQueryComplete(Cursor cursor) {
+                  if (cursor != null && cursor.moveToFirst()) {
+                    openEntry(
+                        cursor.getInt(cursor.getColumnIndexOrThrow(KlingonContentDatabase.KEY_ID)));
+                  } else {
+                    // The word isn't in the database, so search for it instead.
+                    displaySearchResults(word.getEntryName());
+                  }
+                }
+              });
+    }
+
+    private void openEntry(int entryId) {
+      Intent entryIntent = new Intent(KwotdHistoryActivity.this, EntryActivity.class);
+      entryIntent.setData(
+          Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryId));
+      startActivity(entryIntent);
+    }
+  }
+}
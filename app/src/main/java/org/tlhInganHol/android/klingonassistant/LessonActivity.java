@@ -368,26 +368,34 @@ public class LessonActivity extends AppCompatActivity
   protected String getDefinition(String bracketedQuery) {
     // Log.d(TAG, "getDefinition called with query: " + query);
     String query = stripBrackets(bracketedQuery, false);
+    // This is called while the lesson's pages are being built, so it has to wait for the result.
+    // It's an exact lookup of a single word, so unlike a search, it's quick.
     Cursor cursor =
-        managedQuery(
-            Uri.parse(KlingonContentProvider.CONTENT_URI + "/lookup"),
-            null /* all columns */,
-            null,
-            new String[] {query},
-            null);
-    // This count should always be 1.
-    // Log.d(TAG, "cursor.getCount(): " + cursor.getCount());
-    if (cursor.getCount() < 1) {
+        getContentResolver()
+            .query(
+                Uri.parse(KlingonContentProvider.CONTENT_URI + "/lookup"),
+                null /* all columns */,
+                null,
+                new String[] {query},
+                null);
+    if (cursor == null) {
       return "";
     }
-    KlingonContentProvider.Entry entry = new KlingonContentProvider.Entry(cursor, this);
-    String definition;
-    if (!entry.shouldDisplayOtherLanguageDefinition()) {
-      definition = entry.getDefinition();
-    } else {
-      definition = entry.getOtherLanguageDefinition();
+    try {
+      // This count should always be 1.
+      // Log.d(TAG, "cursor.getCount(): " + cursor.getCount());
+      if (cursor.getCount() < 1) {
+        return "";
+      }
+      KlingonContentProvider.Entry entry = new KlingonContentProvider.Entry(cursor, this);
+      if (!entry.shouldDisplayOtherLanguageDefinition()) {
+        return entry.getDefinition();
+      } else {
+        return entry.getOtherLanguageDefinition();
+      }
+    } finally {
+      cursor.close();
     }
-    return definition;
   }
 
   // Remove the outer "{}" from a query. For example, given "{Qong:v}", return "Qong:v}. If
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs content provider queries in the background for an activity or fragment, and delivers the
+ * results back on the main thread. This replaces managedQuery, which ran the queries (including
+ * the whole multi-stage search) on the main thread.
+ *
+ * <p>Like managedQuery, the cursors which are delivered belong to the runner, and are closed when
+ * its owner calls {@link #destroy}. That also cancels the queries which haven't completed, so a
+ * screen which has gone away doesn't wait for a search, and its callbacks are never called.
+ *
+ * <p>All of the methods must be called on the main thread.
+ */
+final class QueryRunner {
+  private static final String TAG = "QueryRunner";
+
+  /** Receives the result of a query on the main thread, which is null if the query failed. */
+  interface Callback<T> {
+    void onQueryComplete(T result);
+  }
+
+  /** One or more provider queries, which are run in the background. */
+  interface Query<T> {
+    // A query which makes several calls to the provider should pass the signal to each of them,
+    // or check it in between.
+    T run(ContentResolver resolver, CancellationSignal cancellationSignal);
+  }
+
+  // The number of queries which can run at once. The rest wait for a thread.
+  private static final int MAX_THREADS = 4;
+
+  // How long an idle query thread is kept, before it exits.
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  // The queries of every runner share these few threads, so that screens which start many queries
+  // (such as swiping through entries) don't compete with each other and the main thread for more
+  // than a few cores.
+  private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+  // Delivers the results on the main thread.
+  private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+  private final ContentResolver mResolver;
+
+  // The queries which haven't completed, and the cursors which have been delivered.
+  private final Set<QueryTask<?>> mPendingTasks = new HashSet<QueryTask<?>>();
+  private final List<Cursor> mCursors = new ArrayList<Cursor>();
+  private boolean mDestroyed = false;
+
+  QueryRunner(Context context) {
+    mResolver = context.getContentResolver();
+  }
+
+  /** Queries the provider for the given URI, and delivers the cursor, which may be null. */
+  void query(
+      final Uri uri,
+      final String[] projection,
+      final String[] selectionArgs,
+      Callback<Cursor> callback) {
+    run(
+        new Query<Cursor>() {
+          @Override
+          public Cursor run(ContentResolver resolver, CancellationSignal cancellationSignal) {
+            Cursor cursor =
+                resolver.query(uri, projection, null, selectionArgs, null, cancellationSignal);
+            if (cursor != null) {
+              // A database cursor runs its query when it's first used, so do that here.
+              cursor.getCount();
+            }
+            return cursor;
+          }
+        },
+        callback);
+  }
+
+  /** Runs the query in the background, and delivers its result. */
+  <T> void run(Query<T> query, Callback<T> callback) {
+    if (mDestroyed) {
+      return;
+    }
+    QueryTask<T> task = new QueryTask<T>(query, callback);
+    mPendingTasks.add(task);
+    sExecutor.execute(task);
+  }
+
+  /** Cancels the pending queries, and closes the cursors which have been delivered. */
+  void destroy() {
+    mDestroyed = true;
+    for (QueryTask<?> task : mPendingTasks) {
+      task.abort();
+    }
+    mPendingTasks.clear();
+    for (Cursor cursor : mCursors) {
+      cursor.close();
+    }
+    mCursors.clear();
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            /* corePoolSize */ MAX_THREADS,
+            /* maximumPoolSize */ MAX_THREADS,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable runnable) {
+                return new Thread(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                      }
+                    },
+                    "KlingonQuery");
+              }
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static void closeIfCursor(Object result) {
+    if (result instanceof Cursor) {
+      ((Cursor) result).close();
+    }
+  }
+
+  private class QueryTask<T> implements Runnable {
+    private final Query<T> mQuery;
+    private final Callback<T> mCallback;
+    private final CancellationSignal mCancellationSignal = new CancellationSignal();
+
+    // Set on the main thread when the runner is destroyed, and checked in the background as well.
+    private volatile boolean mAborted = false;
+
+    QueryTask(Query<T> query, Callback<T> callback) {
+      mQuery = query;
+      mCallback = callback;
+    }
+
+    void abort() {
+      mAborted = true;
+      mCancellationSignal.cancel();
+    }
+
+    @Override
+    public void run() {
+      if (mAborted) {
+        // Don't start a query which was cancelled while it waited for a thread.
+        return;
+      }
+      T result;
+      try {
+        result = mQuery.run(mResolver, mCancellationSignal);
+      } catch (OperationCanceledException e) {
+        result = null;
+      } catch (RuntimeException e) {
+        // E.g., the database couldn't be initialised. Deliver no result rather than crashing, so
+        // that the caller shows nothing (or an error) instead.
+        Log.e(TAG, "Query failed.", e);
+        result = null;
+      }
+      final T finalResult = result;
+      sMainHandler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              deliver(finalResult);
+            }
+          });
+    }
+
+    // Called on the main thread.
+    private void deliver(T result) {
+      if (mAborted) {
+        // The query completed after its owner was destroyed.
+        closeIfCursor(result);
+        return;
+      }
+      mPendingTasks.remove(this);
+      if (result instanceof Cursor) {
+        mCursors.add((Cursor) result);
+      }
+      mCallback.onQueryComplete(result);
+    }
+  }
+}
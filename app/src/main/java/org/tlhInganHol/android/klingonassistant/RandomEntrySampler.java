@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Picks entries at random from categories of entries. Each category is a dense array of the IDs of
+ * the entries in it, so that picking one is a single array lookup, however the IDs are spread out.
+ */
+final class RandomEntrySampler {
+
+  // The categories. An entry can be in more than one.
+  static final String CATEGORY_ALL = "all";
+  // Entries which are neither hypothetical nor extended canon. This is the default.
+  static final String CATEGORY_CANON = "canon";
+  // Canon verbs, nouns, and sentences, excluding affixes and alternative spellings.
+  static final String CATEGORY_VERB = "verb";
+  static final String CATEGORY_NOUN = "noun";
+  static final String CATEGORY_SENTENCE = "sentence";
+
+  private static final String[] CATEGORIES = {
+    CATEGORY_ALL, CATEGORY_CANON, CATEGORY_VERB, CATEGORY_NOUN, CATEGORY_SENTENCE
+  };
+
+  // Returned by sample when the category is empty.
+  static final int NO_ENTRY = -1;
+
+  private final Map<String, int[]> mEntryIds;
+
+  private RandomEntrySampler(Map<String, int[]> entryIds) {
+    mEntryIds = entryIds;
+  }
+
+  /** Returns the categories which the entry is in. */
+  static List<String> getCategories(KlingonContentProvider.Entry entry) {
+    List<String> categories = new ArrayList<String>();
+    categories.add(CATEGORY_ALL);
+    if (entry.isHypothetical() || entry.isExtendedCanon()) {
+      return categories;
+    }
+    categories.add(CATEGORY_CANON);
+    if (entry.isAlternativeSpelling() || entry.isSuffix()) {
+      return categories;
+    }
+    if (entry.isVerb()) {
+      categories.add(CATEGORY_VERB);
+    } else if (entry.isNoun()) {
+      categories.add(CATEGORY_NOUN);
+    } else if (entry.isSentence()) {
+      categories.add(CATEGORY_SENTENCE);
+    }
+    return categories;
+  }
+
+  /**
+   * Returns the ID of an entry picked uniformly at random from the category, or NO_ENTRY if it's
+   * empty.
+   *
+   * @throws IllegalArgumentException if there is no such category
+   */
+  int sample(String category, Random random) {
+    int[] entryIds = mEntryIds.get(category);
+    if (entryIds == null) {
+      throw new IllegalArgumentException("Unknown category: " + category);
+    }
+    if (entryIds.length == 0) {
+      return NO_ENTRY;
+    }
+    return entryIds[random.nextInt(entryIds.length)];
+  }
+
+  /** Returns the number of entries in the category. */
+  int size(String category) {
+    int[] entryIds = mEntryIds.get(category);
+    return (entryIds == null) ? 0 : entryIds.length;
+  }
+
+  /** Collects the entries in each category. */
+  static class Builder {
+    private final Map<String, List<Integer>> mEntryIds = new HashMap<String, List<Integer>>();
+
+    Builder() {
+      for (String category : CATEGORIES) {
+        mEntryIds.put(category, new ArrayList<Integer>());
+      }
+    }
+
+    Builder add(int entryId, List<String> categories) {
+      for (String category : categories) {
+        List<Integer> entryIds = mEntryIds.get(category);
+        if (entryIds == null) {
+          throw new IllegalArgumentException("Unknown category: " + category);
+        }
+        entryIds.add(entryId);
+      }
+      return this;
+    }
+
+    RandomEntrySampler build() {
+      Map<String, int[]> entryIds = new HashMap<String, int[]>();
+      for (Map.Entry<String, List<Integer>> category : mEntryIds.entrySet()) {
+        List<Integer> ids = category.getValue();
+        int[] idArray = new int[ids.size()];
+        for (int i = 0; i < idArray.length; i++) {
+          idArray[i] = ids.get(i);
+        }
+        entryIds.put(category.getKey(), idArray);
+      }
+      return new RandomEntrySampler(entryIds);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The ordered entry IDs of recent sets of search results, each registered as a session, so that an
+ * intent for paging through the results only has to carry the session ID and a position, rather
+ * than every entry ID. The sessions only live as long as the process, so an intent which refers to
+ * one must also be able to fall back to showing a single entry. An intent which outlives the
+ * process must also not pick up a session registered by a later one, so the session IDs start from
+ * a random point in each process, and a session is only used if it has the intent's entry at the
+ * intent's position.
+ */
+final class ResultSessions {
+
+  // The session ID of an intent which doesn't have one. This is never registered.
+  static final long NO_SESSION = -1;
+
+  // The number of sessions to keep. Only the most recent ones can still be paged through in
+  // practice, since the back stack of entry screens is short.
+  private static final int MAX_SESSIONS = 16;
+
+  // Non-negative, so that it can't reach NO_SESSION in practice.
+  private static long sNextSessionId = new Random().nextLong() & Long.MAX_VALUE;
+
+  // The sessions by ID, the least recently used first.
+  private static final Map<Long, int[]> sSessions =
+      new LinkedHashMap<Long, int[]>(MAX_SESSIONS, 0.75f, /* accessOrder */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+          return size() > MAX_SESSIONS;
+        }
+      };
+
+  private ResultSessions() {}
+
+  /** Registers the entry IDs of a set of results, and returns the ID of the new session. */
+  static synchronized long register(int[] entryIds) {
+    long sessionId = sNextSessionId++;
+    sSessions.put(sessionId, entryIds);
+    return sessionId;
+  }
+
+  /**
+   * Returns the entry IDs of the session, or null if it has been dropped, or if it doesn't have the
+   * given entry at the given position, in which case it isn't the session the caller was given.
+   */
+  static synchronized int[] get(long sessionId, int position, String entryId) {
+    int[] entryIds = sSessions.get(sessionId);
+    if (entryIds == null
+        || position < 0
+        || position >= entryIds.length
+        || !Integer.toString(entryIds[position]).equals(entryId)) {
+      return null;
+    }
+    return entryIds;
+  }
+}
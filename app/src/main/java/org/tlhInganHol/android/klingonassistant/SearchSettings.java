@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the preferences which affect searching for and displaying entries.
+ *
+ * <p>The current snapshot is only rebuilt when one of its preferences changes, so that queries and
+ * entries don't have to read the shared preferences over and over. A search should get the snapshot
+ * once and pass it along. Each new snapshot has a higher version number, so anything cached which
+ * depends on the settings can be keyed by (or checked against) {@link #getVersion}.
+ */
+public final class SearchSettings {
+
+  // The current snapshot, and the listener which replaces it. The listener must be held in a
+  // field, since SharedPreferences only keeps a weak reference to it.
+  private static volatile SearchSettings sCurrent = null;
+  private static SharedPreferences.OnSharedPreferenceChangeListener sListener = null;
+
+  // The preferences which a snapshot reads. Changes to any others (such as the sync state) don't
+  // start a new version, so that they don't invalidate what's cached under the current one.
+  private static final List<String> KEYS =
+      Arrays.asList(
+          Preferences.KEY_XIFAN_HOL_CHECKBOX_PREFERENCE,
+          Preferences.KEY_SWAP_QS_CHECKBOX_PREFERENCE,
+          Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE,
+          Preferences.KEY_SHOW_TRANSITIVITY_CHECKBOX_PREFERENCE,
+          Preferences.KEY_SHOW_ADDITIONAL_INFORMATION_CHECKBOX_PREFERENCE,
+          Preferences.KEY_SHOW_UNSUPPORTED_FEATURES_CHECKBOX_PREFERENCE,
+          KlingonContentDatabase.KEY_ID_OF_FIRST_EXTRA_ENTRY);
+
+  private final int mVersion;
+  private final boolean mXifanHolEnabled;
+  private final boolean mSwapQs;
+  private final String mOtherLanguage;
+  private final boolean mShowTransitivity;
+  private final boolean mShowAdditionalInformation;
+  private final boolean mShowUnsupportedFeatures;
+  private final int mIdOfFirstExtraEntry;
+
+  private SearchSettings(SharedPreferences sharedPrefs, int version) {
+    mVersion = version;
+    mXifanHolEnabled =
+        sharedPrefs.getBoolean(Preferences.KEY_XIFAN_HOL_CHECKBOX_PREFERENCE, /* default */ false);
+    mSwapQs =
+        sharedPrefs.getBoolean(Preferences.KEY_SWAP_QS_CHECKBOX_PREFERENCE, /* default */ false);
+    mOtherLanguage =
+        sharedPrefs.getString(
+            Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
+            Preferences.getSystemPreferredLanguage());
+    mShowTransitivity =
+        sharedPrefs.getBoolean(
+            Preferences.KEY_SHOW_TRANSITIVITY_CHECKBOX_PREFERENCE, /* default */ true);
+    mShowAdditionalInformation =
+        sharedPrefs.getBoolean(
+            Preferences.KEY_SHOW_ADDITIONAL_INFORMATION_CHECKBOX_PREFERENCE, /* default */ true);
+    mShowUnsupportedFeatures =
+        sharedPrefs.getBoolean(
+            Preferences.KEY_SHOW_UNSUPPORTED_FEATURES_CHECKBOX_PREFERENCE, /* default */ false);
+    mIdOfFirstExtraEntry =
+        sharedPrefs.getInt(
+            KlingonContentDatabase.KEY_ID_OF_FIRST_EXTRA_ENTRY, /* default */
+            KlingonContentDatabase.ID_OF_FIRST_EXTRA_ENTRY);
+  }
+
+  /** Returns the current snapshot of the settings. */
+  public static SearchSettings get(Context context) {
+    SearchSettings settings = sCurrent;
+    if (settings != null) {
+      return settings;
+    }
+    synchronized (SearchSettings.class) {
+      if (sCurrent == null) {
+        SharedPreferences sharedPrefs =
+            PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        sListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+              @Override
+              public void onSharedPreferenceChanged(SharedPreferences sharedPrefs, String key) {
+                // The key is null if the preferences were cleared.
+                if (key != null && !KEYS.contains(key)) {
+                  return;
+                }
+                synchronized (SearchSettings.class) {
+                  sCurrent = new SearchSettings(sharedPrefs, sCurrent.mVersion + 1);
+                }
+              }
+            };
+        sharedPrefs.registerOnSharedPreferenceChangeListener(sListener);
+        sCurrent = new SearchSettings(sharedPrefs, /* version */ 1);
+      }
+      return sCurrent;
+    }
+  }
+
+  /** Increases with every change to the settings which the snapshot reads. */
+  public int getVersion() {
+    return mVersion;
+  }
+
+  // Whether queries should be expanded from "xifan hol" shorthand.
+  public boolean isXifanHolEnabled() {
+    return mXifanHolEnabled;
+  }
+
+  // Whether, in "xifan hol" shorthand, "k" is {q} and "q" is {Q}.
+  public boolean swapQs() {
+    return mSwapQs;
+  }
+
+  // The code of the other language to search and display (such as "de"), or "NONE".
+  public String getOtherLanguage() {
+    return mOtherLanguage;
+  }
+
+  public boolean hasOtherLanguage() {
+    return !mOtherLanguage.equals("NONE");
+  }
+
+  public boolean showTransitivity() {
+    return mShowTransitivity;
+  }
+
+  public boolean showAdditionalInformation() {
+    return mShowAdditionalInformation;
+  }
+
+  public boolean showUnsupportedFeatures() {
+    return mShowUnsupportedFeatures;
+  }
+
+  // One past the ID of the last non-hypothetical, non-extended-canon entry in the installed
+  // database.
+  public int getIdOfFirstExtraEntry() {
+    return mIdOfFirstExtraEntry;
+  }
+}
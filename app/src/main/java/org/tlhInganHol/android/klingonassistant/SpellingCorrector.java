@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Suggests corrections for misspelled words in definition queries, using a symmetric deletion
+ * index (as in SymSpell) over the vocabulary of the definitions and search tags in one language.
+ *
+ * <p>Every word in the vocabulary is indexed under each string which can be formed by deleting up
+ * to two characters from (the beginning of) it. A query is corrected by generating its own
+ * deletions, looking each one up in a hash table, and verifying the candidates found with a real
+ * edit distance. The index is built once per database version and saved with {@link #writeTo}, so
+ * that later it only has to be read back with {@link #readFrom}.
+ */
+public class SpellingCorrector {
+
+  // The maximum edit distance between a query and its correction.
+  private static final int MAX_EDIT_DISTANCE = 2;
+
+  // Only this many characters at the beginning of a word are used to form deletions. Longer words
+  // still have their full edit distance verified. This keeps the index small.
+  private static final int PREFIX_LENGTH = 7;
+
+  // Words shorter than this are neither indexed nor corrected.
+  public static final int MIN_WORD_LENGTH = 3;
+
+  // Identifies the file format.
+  private static final int FORMAT_VERSION = 1;
+
+  // The vocabulary, and how many times each word appears.
+  private final String[] mWords;
+  private final int[] mCounts;
+
+  // The hashes of the deletions, the indices into mPostings at which the words for each hash
+  // begin (with one extra element at the end), and the word indices for each hash.
+  private final int[] mDeletionHashes;
+  private final int[] mPostingsStart;
+  private final int[] mPostings;
+
+  // An open-addressing hash table from a deletion hash to its index in mDeletionHashes, or -1.
+  private final int[] mTable;
+
+  private SpellingCorrector(
+      String[] words, int[] counts, int[] deletionHashes, int[] postingsStart, int[] postings) {
+    mWords = words;
+    mCounts = counts;
+    mDeletionHashes = deletionHashes;
+    mPostingsStart = postingsStart;
+    mPostings = postings;
+
+    int tableSize = Integer.highestOneBit(Math.max(deletionHashes.length, 1) * 2) * 2;
+    mTable = new int[tableSize];
+    Arrays.fill(mTable, -1);
+    for (int i = 0; i < deletionHashes.length; i++) {
+      int slot = deletionHashes[i] & (tableSize - 1);
+      while (mTable[slot] != -1) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      mTable[slot] = i;
+    }
+  }
+
+  /**
+   * Splits text into lowercase words for the vocabulary, skipping those which are too short.
+   *
+   * @param text The text of a definition or search tags
+   * @param counts The words found are counted here
+   */
+  public static void addWords(String text, Map<String, Integer> counts) {
+    if (text == null) {
+      return;
+    }
+    int length = text.length();
+    int i = 0;
+    while (i < length) {
+      while (i < length && !Character.isLetter(text.charAt(i))) {
+        i++;
+      }
+      int start = i;
+      while (i < length && Character.isLetter(text.charAt(i))) {
+        i++;
+      }
+      if (i - start >= MIN_WORD_LENGTH) {
+        String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+        Integer count = counts.get(word);
+        counts.put(word, count == null ? 1 : count + 1);
+      }
+    }
+  }
+
+  /** Builds the index for the given vocabulary, as collected by {@link #addWords}. */
+  public static SpellingCorrector build(Map<String, Integer> vocabulary) {
+    String[] words = vocabulary.keySet().toArray(new String[vocabulary.size()]);
+    Arrays.sort(words);
+    int[] counts = new int[words.length];
+
+    // Pair every deletion hash with the index of its word, then sort to group them by hash.
+    long[] pairs = new long[words.length * 8];
+    int numPairs = 0;
+    HashSet<String> deletions = new HashSet<String>();
+    for (int i = 0; i < words.length; i++) {
+      counts[i] = vocabulary.get(words[i]);
+      deletions.clear();
+      addDeletions(prefixOf(words[i]), MAX_EDIT_DISTANCE, deletions);
+      for (String deletion : deletions) {
+        if (numPairs == pairs.length) {
+          pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[numPairs++] = ((long) deletion.hashCode() << 32) | i;
+      }
+    }
+    Arrays.sort(pairs, 0, numPairs);
+
+    int[] deletionHashes = new int[numPairs];
+    int[] postingsStart = new int[numPairs + 1];
+    int[] postings = new int[numPairs];
+    int numHashes = 0;
+    for (int i = 0; i < numPairs; i++) {
+      int hash = (int) (pairs[i] >> 32);
+      if (numHashes == 0 || deletionHashes[numHashes - 1] != hash) {
+        deletionHashes[numHashes] = hash;
+        postingsStart[numHashes] = i;
+        numHashes++;
+      }
+      postings[i] = (int) pairs[i];
+    }
+    postingsStart[numHashes] = numPairs;
+    return new SpellingCorrector(
+        words,
+        counts,
+        Arrays.copyOf(deletionHashes, numHashes),
+        Arrays.copyOf(postingsStart, numHashes + 1),
+        postings);
+  }
+
+  private static String prefixOf(String word) {
+    return word.length() > PREFIX_LENGTH ? word.substring(0, PREFIX_LENGTH) : word;
+  }
+
+  // Adds s and every string formed by deleting up to the given number of characters from it.
+  private static void addDeletions(String s, int distance, HashSet<String> deletions) {
+    if (!deletions.add(s) || distance == 0 || s.length() <= 1) {
+      return;
+    }
+    for (int i = 0; i < s.length(); i++) {
+      addDeletions(s.substring(0, i) + s.substring(i + 1), distance - 1, deletions);
+    }
+  }
+
+  /**
+   * Returns the best correction for the given word, or null if the word is in the vocabulary or no
+   * word is close enough. Closer words are preferred, then more frequent ones. Words which contain
+   * anything other than letters (such as a Klingon word with an apostrophe) are not corrected.
+   */
+  public String correct(String word) {
+    word = word.toLowerCase(Locale.ROOT);
+    if (word.length() < MIN_WORD_LENGTH || Arrays.binarySearch(mWords, word) >= 0) {
+      return null;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      if (!Character.isLetter(word.charAt(i))) {
+        return null;
+      }
+    }
+
+    HashSet<String> deletions = new HashSet<String>();
+    addDeletions(prefixOf(word), MAX_EDIT_DISTANCE, deletions);
+    int best = -1;
+    int bestDistance = MAX_EDIT_DISTANCE + 1;
+    HashSet<Integer> checked = new HashSet<Integer>();
+    for (String deletion : deletions) {
+      int hashIndex = lookUp(deletion.hashCode());
+      if (hashIndex == -1) {
+        continue;
+      }
+      for (int i = mPostingsStart[hashIndex]; i < mPostingsStart[hashIndex + 1]; i++) {
+        int candidate = mPostings[i];
+        if (!checked.add(candidate)) {
+          continue;
+        }
+        int distance = editDistance(word, mWords[candidate], bestDistance);
+        if (distance < bestDistance
+            || (distance == bestDistance && best != -1 && mCounts[candidate] > mCounts[best])) {
+          best = candidate;
+          bestDistance = distance;
+        }
+      }
+    }
+    return best == -1 ? null : mWords[best];
+  }
+
+  private int lookUp(int hash) {
+    int slot = hash & (mTable.length - 1);
+    while (mTable[slot] != -1) {
+      if (mDeletionHashes[mTable[slot]] == hash) {
+        return mTable[slot];
+      }
+      slot = (slot + 1) & (mTable.length - 1);
+    }
+    return -1;
+  }
+
+  // Returns the edit distance between a and b, counting a transposition of adjacent characters as
+  // one edit, or a number greater than max if it exceeds max.
+  static int editDistance(String a, String b, int max) {
+    if (Math.abs(a.length() - b.length()) > max) {
+      return max + 1;
+    }
+    int[] previousPrevious = new int[b.length() + 1];
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      int rowMin = current[0];
+      for (int j = 1; j <= b.length(); j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        int distance =
+            Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+        if (i > 1
+            && j > 1
+            && a.charAt(i - 1) == b.charAt(j - 2)
+            && a.charAt(i - 2) == b.charAt(j - 1)) {
+          distance = Math.min(distance, previousPrevious[j - 2] + 1);
+        }
+        current[j] = distance;
+        rowMin = Math.min(rowMin, distance);
+      }
+      if (rowMin > max) {
+        return max + 1;
+      }
+      int[] temp = previousPrevious;
+      previousPrevious = previous;
+      previous = current;
+      current = temp;
+    }
+    return previous[b.length()];
+  }
+
+  /** Saves the index. */
+  public void writeTo(DataOutputStream out) throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    out.writeInt(mWords.length);
+    for (int i = 0; i < mWords.length; i++) {
+      out.writeUTF(mWords[i]);
+      out.writeInt(mCounts[i]);
+    }
+    writeInts(out, mDeletionHashes);
+    writeInts(out, mPostingsStart);
+    writeInts(out, mPostings);
+  }
+
+  /** Reads an index saved by {@link #writeTo}. */
+  public static SpellingCorrector readFrom(DataInputStream in) throws IOException {
+    if (in.readInt() != FORMAT_VERSION) {
+      throw new IOException("Unknown spelling index format.");
+    }
+    int numWords = in.readInt();
+    String[] words = new String[numWords];
+    int[] counts = new int[numWords];
+    for (int i = 0; i < numWords; i++) {
+      words[i] = in.readUTF();
+      counts[i] = in.readInt();
+    }
+    int[] deletionHashes = readInts(in);
+    int[] postingsStart = readInts(in);
+    int[] postings = readInts(in);
+    return new SpellingCorrector(words, counts, deletionHashes, postingsStart, postings);
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    out.writeInt(values.length);
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] values = new int[in.readInt()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = in.readInt();
+    }
+    return values;
+  }
+
+  /** Convenience method for building an index directly from some text, used for testing. */
+  static SpellingCorrector build(String... texts) {
+    HashMap<String, Integer> vocabulary = new HashMap<String, Integer>();
+    for (String text : texts) {
+      addWords(text, vocabulary);
+    }
+    return build(vocabulary);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.os.Bundle;
+import android.widget.TextView;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import org.tlhInganHol.android.klingonassistant.service.SyncLog;
+
+/**
+ * Displays the recent runs of the sync service, with the result and timing of each task, for
+ * debugging.
+ */
+public class SyncLogActivity extends BaseActivity {
+  // private static final String TAG = "SyncLogActivity";
+
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setDrawerContentView(R.layout.sync_log);
+
+    TextView entryTitle = (TextView) findViewById(R.id.entry_title);
+    entryTitle.setText(getResources().getString(R.string.menu_sync_log));
+  }
+
+  @Override
+  protected void onResume() {
+    super.onResume();
+
+    // Reload the log, since a sync might have run in the meantime.
+    TextView logView = (TextView) findViewById(R.id.definition);
+    List<SyncLog.Run> runs = SyncLog.getRuns(getBaseContext());
+    if (runs.isEmpty()) {
+      logView.setText(getResources().getString(R.string.sync_log_empty));
+      return;
+    }
+
+    DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
+    StringBuilder sb = new StringBuilder();
+    for (SyncLog.Run run : runs) {
+      sb.append(dateFormat.format(new Date(run.getStartTime())));
+      sb.append(run.isOneOffJob() ? "  one-off" : "  scheduled");
+      sb.append(" (job ").append(run.getJobId()).append(")  ");
+      sb.append(run.getDurationMillis()).append(" ms");
+      if (run.isStopped()) {
+        sb.append("  STOPPED");
+      } else if (run.isRescheduled()) {
+        sb.append("  retry");
+      }
+      sb.append('\n');
+      if (run.getTasks().isEmpty()) {
+        sb.append("  (nothing due)\n");
+      }
+      for (SyncLog.TaskRecord task : run.getTasks()) {
+        sb.append("  ").append(task.getName()).append(": ").append(task.getResult());
+        sb.append(" in ").append(task.getDurationMillis()).append(" ms\n");
+        if (task.getError() != null) {
+          sb.append("    ").append(task.getError()).append('\n');
+        }
+      }
+      sb.append('\n');
+    }
+    logView.setText(sb.toString());
+  }
+}
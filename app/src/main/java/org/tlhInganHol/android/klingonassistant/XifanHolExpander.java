@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Converts a string written in "xifan hol" shorthand to {tlhIngan Hol} in a single pass.
+ *
+ * <p>The shorthand rules are compiled into a trie which is matched greedily (longest match first)
+ * against the input, so that e.g. "ch", "gh", "ng", and "tlh" are recognised before their single
+ * letters are expanded. This replaces a long chain of regular expression replacements whose order
+ * was significant.
+ *
+ * <p>After expansion, "ngH" is definitely {ng} + {H}, but "ngh" might be either {n} + {gh} or {ng}
+ * + {H}, and "ng" might be either {ng} or {n} + {gh}. These ambiguities are resolved by a list of
+ * exceptions derived from the entry names in the database (see {@link #buildExceptions}), which are
+ * applied to the output as it is written.
+ */
+public class XifanHolExpander {
+
+  // Rules common to both settings of the "swap q and Q" preference, as pairs of (shorthand,
+  // expansion). Note that an uppercase "H" following "c", "g", or "tl" is treated as a typo for a
+  // lowercase "h".
+  private static final String[][] COMMON_RULES = {
+    {"c", "ch"},
+    {"ch", "ch"},
+    {"cH", "ch"},
+    {"d", "D"},
+    {"f", "ng"},
+    {"g", "gh"},
+    {"gh", "gh"},
+    {"gH", "gh"},
+    {"h", "H"},
+    {"i", "I"},
+    {"ng", "ng"},
+    {"ngh", "ngh"}, // {n} + {gh}, unless an exception says otherwise
+    {"ngH", "ngH"}, // {ng} + {H}
+    {"s", "S"},
+    {"tlh", "tlh"},
+    {"tlH", "tlh"},
+    {"x", "tlh"},
+    {"z", "'"},
+  };
+
+  // Rules for the letters {q} and {Q}.
+  private static final String[][] DEFAULT_QS_RULES = {
+    {"k", "Q"},
+  };
+  private static final String[][] SWAPPED_QS_RULES = {
+    {"k", "q"},
+    {"q", "Q"},
+  };
+
+  // A node in a trie, indexed by (ASCII) character.
+  private static class Node {
+    final Node[] mChildren = new Node[128];
+    String mOutput = null;
+
+    Node getOrAddChild(char c) {
+      if (mChildren[c] == null) {
+        mChildren[c] = new Node();
+      }
+      return mChildren[c];
+    }
+
+    Node getChild(char c) {
+      return c < 128 ? mChildren[c] : null;
+    }
+  }
+
+  // The trie of shorthand rules, keyed by the shorthand.
+  private final Node mRules = new Node();
+
+  // The trie of exceptions, keyed by the reversed expansion, so that it can be matched against the
+  // end of the output buffer.
+  private final Node mExceptions = new Node();
+
+  /**
+   * Constructor
+   *
+   * @param swapQs Whether the user types "k" for {q} and "q" for {Q}
+   * @param exceptions A map from expansions to their corrections, see {@link #buildExceptions}
+   */
+  public XifanHolExpander(boolean swapQs, Map<String, String> exceptions) {
+    addRules(COMMON_RULES);
+    addRules(swapQs ? SWAPPED_QS_RULES : DEFAULT_QS_RULES);
+    for (Map.Entry<String, String> exception : exceptions.entrySet()) {
+      String key = exception.getKey();
+      Node node = mExceptions;
+      for (int i = key.length() - 1; i >= 0; i--) {
+        node = node.getOrAddChild(key.charAt(i));
+      }
+      node.mOutput = exception.getValue();
+    }
+  }
+
+  private void addRules(String[][] rules) {
+    for (String[] rule : rules) {
+      Node node = mRules;
+      for (int i = 0; i < rule[0].length(); i++) {
+        node = node.getOrAddChild(rule[0].charAt(i));
+      }
+      node.mOutput = rule[1];
+    }
+  }
+
+  /** Expands the given shorthand. */
+  public String expand(CharSequence shorthand) {
+    int length = shorthand.length();
+    StringBuilder out = new StringBuilder(length + 8);
+    int i = 0;
+    while (i < length) {
+      // Find the longest rule which matches at this position.
+      String match = null;
+      int matchLength = 1;
+      Node node = mRules;
+      for (int j = i; j < length; j++) {
+        node = node.getChild(shorthand.charAt(j));
+        if (node == null) {
+          break;
+        }
+        if (node.mOutput != null) {
+          match = node.mOutput;
+          matchLength = j - i + 1;
+        }
+      }
+      if (match == null) {
+        appendAndCorrect(out, shorthand.charAt(i));
+      } else {
+        for (int k = 0; k < match.length(); k++) {
+          appendAndCorrect(out, match.charAt(k));
+        }
+      }
+      i += matchLength;
+    }
+    return out.toString();
+  }
+
+  // Appends a character, then applies the longest exception which ends at that character, if any.
+  private void appendAndCorrect(StringBuilder out, char c) {
+    out.append(c);
+    String correction = null;
+    int correctionStart = 0;
+    Node node = mExceptions;
+    for (int i = out.length() - 1; i >= 0; i--) {
+      node = node.getChild(out.charAt(i));
+      if (node == null) {
+        break;
+      }
+      if (node.mOutput != null) {
+        correction = node.mOutput;
+        correctionStart = i;
+      }
+    }
+    if (correction != null) {
+      out.replace(correctionStart, out.length(), correction);
+    }
+  }
+
+  /**
+   * Derives the exceptions for the ambiguous "ngh" and "ng" from the given entry names. For every
+   * word with {ng} + {H}, such as {mangHom}, the beginning of the word up to the {ng} followed by a
+   * lowercase "h" (i.e., "mangh") is expanded to "mangH". For every word with {n} + {gh}, such as
+   * {nenghep}, the word typed with "ng" in place of "ngh" (i.e., "nengep") is expanded to the word
+   * itself. An exception is dropped if it would change the spelling of another word in the
+   * database.
+   *
+   * @param entryNames The entry names to examine, which need only include those containing "ng"
+   * @return A map from expansions to their corrections
+   */
+  public static Map<String, String> buildExceptions(Iterable<String> entryNames) {
+    TreeSet<String> words = new TreeSet<String>();
+    for (String entryName : entryNames) {
+      for (String word : entryName.split("[^A-Za-z']+")) {
+        if (word.contains("ng")) {
+          words.add(word);
+        }
+      }
+    }
+
+    HashMap<String, String> exceptions = new HashMap<String, String>();
+    for (String word : words) {
+      for (int i = word.indexOf("ng"); i != -1; i = word.indexOf("ng", i + 1)) {
+        if (i + 2 >= word.length()) {
+          break;
+        }
+        char next = word.charAt(i + 2);
+        if (next == 'H' && i > 0) {
+          // {ng} + {H}.
+          String stem = word.substring(0, i + 2);
+          exceptions.put(stem + "h", stem + "H");
+        } else if (next == 'h') {
+          // {n} + {gh}.
+          exceptions.put(word.substring(0, i + 2) + word.substring(i + 3), word);
+        }
+      }
+    }
+
+    Iterator<String> it = exceptions.keySet().iterator();
+    while (it.hasNext()) {
+      String key = it.next();
+      for (String word : words) {
+        if (word.contains(key)) {
+          it.remove();
+          break;
+        }
+      }
+    }
+    return exceptions;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.tlhInganHol.android.klingonassistant.KlingonContentDatabase;
+
+/**
+ * The rows which changed between two versions of the database. A delta is a gzipped JSON object
+ * such as:
+ *
+ * <pre>
+ * {
+ *   "from": "2021.12.01a",
+ *   "to": "2022.01.01a",
+ *   "deleted": [10123, 10456],
+ *   "rows": [ { "_id": 10007, "entry_name": "...", "part_of_speech": "...", ... }, ... ]
+ * }
+ * </pre>
+ *
+ * <p>Each row is complete, and replaces the row with the same ID (if there is one).
+ */
+class DatabaseDelta {
+
+  // Arbitrary limit on the size of a delta, beyond which it's better to download the whole
+  // database.
+  private static final int MAX_DELTA_LENGTH = 4 * 1024 * 1024;
+
+  private final String mFromVersion;
+  private final String mToVersion;
+  private final int[] mDeletedIds;
+  private final List<JSONObject> mRows;
+
+  private DatabaseDelta(
+      String fromVersion, String toVersion, int[] deletedIds, List<JSONObject> rows) {
+    mFromVersion = fromVersion;
+    mToVersion = toVersion;
+    mDeletedIds = deletedIds;
+    mRows = rows;
+  }
+
+  /** Reads a delta from the given source. */
+  static DatabaseDelta read(UpdateSource source, String path) throws IOException, JSONException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream inStream = new GZIPInputStream(source.open(path))) {
+      byte[] buffer = new byte[8192];
+      int length;
+      while ((length = inStream.read(buffer)) > 0) {
+        bytes.write(buffer, 0, length);
+        if (bytes.size() > MAX_DELTA_LENGTH) {
+          throw new IOException("Delta " + path + " is too long.");
+        }
+      }
+    }
+    JSONObject deltaObject = new JSONObject(bytes.toString("UTF-8"));
+
+    JSONArray deletedArray = deltaObject.optJSONArray("deleted");
+    int[] deletedIds = new int[deletedArray == null ? 0 : deletedArray.length()];
+    for (int i = 0; i < deletedIds.length; i++) {
+      deletedIds[i] = deletedArray.getInt(i);
+    }
+    JSONArray rowsArray = deltaObject.optJSONArray("rows");
+    ArrayList<JSONObject> rows = new ArrayList<JSONObject>();
+    for (int i = 0; rowsArray != null && i < rowsArray.length(); i++) {
+      JSONObject row = rowsArray.getJSONObject(i);
+      if (!row.has(KlingonContentDatabase.KEY_ID)) {
+        throw new JSONException("Row " + i + " of delta " + path + " has no ID.");
+      }
+      rows.add(row);
+    }
+    return new DatabaseDelta(
+        deltaObject.getString("from"), deltaObject.getString("to"), deletedIds, rows);
+  }
+
+  String getFromVersion() {
+    return mFromVersion;
+  }
+
+  String getToVersion() {
+    return mToVersion;
+  }
+
+  int[] getDeletedIds() {
+    return mDeletedIds;
+  }
+
+  List<JSONObject> getRows() {
+    return mRows;
+  }
+
+  /**
+   * Applies this delta to the given database. This should be done inside a transaction, so that
+   * nothing is changed if it fails partway.
+   */
+  void applyTo(SQLiteDatabase db) throws JSONException {
+    String table = KlingonContentDatabase.FTS_VIRTUAL_TABLE;
+    String whereClause = KlingonContentDatabase.KEY_ID + " = ?";
+    for (int id : mDeletedIds) {
+      db.delete(table, whereClause, new String[] {Integer.toString(id)});
+    }
+    for (JSONObject row : mRows) {
+      ContentValues values = new ContentValues();
+      Iterator<String> keys = row.keys();
+      while (keys.hasNext()) {
+        String key = keys.next();
+        values.put(key, row.isNull(key) ? null : row.getString(key));
+      }
+      db.delete(table, whereClause, new String[] {row.getString(KlingonContentDatabase.KEY_ID)});
+      db.insertOrThrow(table, null, values);
+    }
+  }
+}
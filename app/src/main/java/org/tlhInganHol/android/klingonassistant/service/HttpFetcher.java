@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import android.content.SharedPreferences;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The HTTP layer shared by the services. Every request has timeouts, and bodies are always read to
+ * the end and closed rather than disconnected, so that HttpURLConnection can reuse the connection
+ * for the next request to the same server.
+ *
+ * <p>Resources which are polled (the update manifest and the KWOTD) are fetched conditionally,
+ * with the ETag and Last-Modified validators of the last response which was handled, so that an
+ * unchanged resource costs a 304 response with no body.
+ */
+class HttpFetcher {
+
+  static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+  static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+  // The suffixes of the keys under which the validators of a resource are saved.
+  private static final String ETAG_KEY_SUFFIX = "_etag";
+  private static final String LAST_MODIFIED_KEY_SUFFIX = "_last_modified";
+
+  /** The response to a conditional fetch. */
+  static class Response {
+    private final String mBody;
+    private final String mETag;
+    private final String mLastModified;
+
+    private Response(String body, String eTag, String lastModified) {
+      mBody = body;
+      mETag = eTag;
+      mLastModified = lastModified;
+    }
+
+    // Whether the resource hasn't changed since the validators were saved, in which case there is
+    // no body.
+    boolean isNotModified() {
+      return mBody == null;
+    }
+
+    String getBody() {
+      return mBody;
+    }
+
+    String getETag() {
+      return mETag;
+    }
+
+    String getLastModified() {
+      return mLastModified;
+    }
+  }
+
+  /** Opens a connection with the usual timeouts. */
+  static HttpURLConnection openConnection(URL url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+    return connection;
+  }
+
+  /** Opens the body of the given URL, which must be successfully fetched, to be read in full. */
+  static InputStream openStream(URL url) throws IOException {
+    HttpURLConnection connection = openConnection(url);
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    int responseCode = connection.getResponseCode();
+    if (responseCode != HttpURLConnection.HTTP_OK) {
+      connection.disconnect();
+      throw new IOException("Unexpected response " + responseCode + " for " + url + ".");
+    }
+    return getBody(connection);
+  }
+
+  /**
+   * Fetches the given URL as text, unless it hasn't changed since the given validators.
+   *
+   * @param eTag The ETag of the last response, or null
+   * @param lastModified The Last-Modified date of the last response, or null
+   * @param maxLength The length beyond which the body is rejected
+   */
+  static Response fetch(URL url, String eTag, String lastModified, int maxLength)
+      throws IOException {
+    HttpURLConnection connection = openConnection(url);
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    if (eTag != null) {
+      connection.setRequestProperty("If-None-Match", eTag);
+    }
+    if (lastModified != null) {
+      connection.setRequestProperty("If-Modified-Since", lastModified);
+    }
+
+    int responseCode = connection.getResponseCode();
+    if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      // Close the (empty) body so the connection can be reused.
+      connection.getInputStream().close();
+      return new Response(null, eTag, lastModified);
+    } else if (responseCode != HttpURLConnection.HTTP_OK) {
+      connection.disconnect();
+      throw new IOException("Unexpected response " + responseCode + " for " + url + ".");
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream inStream = getBody(connection)) {
+      byte[] buffer = new byte[8192];
+      int length;
+      while ((length = inStream.read(buffer)) != -1) {
+        bytes.write(buffer, 0, length);
+        if (bytes.size() > maxLength) {
+          connection.disconnect();
+          throw new IOException(url + " is too long.");
+        }
+      }
+    }
+    return new Response(
+        bytes.toString("UTF-8"),
+        connection.getHeaderField("ETag"),
+        connection.getHeaderField("Last-Modified"));
+  }
+
+  /**
+   * Fetches the given URL as text, unless it hasn't changed since the response whose validators
+   * were saved under the given key with {@link #saveValidators}.
+   */
+  static Response fetchIfChanged(
+      URL url, SharedPreferences sharedPrefs, String key, int maxLength) throws IOException {
+    return fetch(
+        url,
+        sharedPrefs.getString(key + ETAG_KEY_SUFFIX, /* default */ null),
+        sharedPrefs.getString(key + LAST_MODIFIED_KEY_SUFFIX, /* default */ null),
+        maxLength);
+  }
+
+  /**
+   * Saves the validators of a response under the given key. This should only be done once the
+   * response has been handled, since the next fetch won't return the body again if it's unchanged.
+   */
+  static void saveValidators(
+      SharedPreferences.Editor sharedPrefsEd, String key, Response response) {
+    if (response.getETag() != null) {
+      sharedPrefsEd.putString(key + ETAG_KEY_SUFFIX, response.getETag());
+    } else {
+      sharedPrefsEd.remove(key + ETAG_KEY_SUFFIX);
+    }
+    if (response.getLastModified() != null) {
+      sharedPrefsEd.putString(key + LAST_MODIFIED_KEY_SUFFIX, response.getLastModified());
+    } else {
+      sharedPrefsEd.remove(key + LAST_MODIFIED_KEY_SUFFIX);
+    }
+  }
+
+  private static InputStream getBody(HttpURLConnection connection) throws IOException {
+    InputStream inStream = connection.getInputStream();
+    // HttpURLConnection only decompresses the body by itself if it asked for gzip itself.
+    if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+      inStream = new GZIPInputStream(inStream);
+    }
+    return inStream;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The Klingon Words of the Day fetched so far, one per day, each with the query and definition it
+ * was resolved to an entry with. This is kept in its own database, since the dictionary database
+ * is replaced wholesale by updates. For the same reason, a word is resolved again with its query
+ * and definition when it's looked at, since the entry IDs change with every update.
+ */
+public class KwotdHistoryDatabase extends SQLiteOpenHelper {
+  private static final String DATABASE_NAME = "kwotd_history.db";
+  private static final int DATABASE_VERSION = 1;
+
+  private static final String TABLE = "kwotd_history";
+  private static final String KEY_ID = "_id";
+  private static final String KEY_DATE = "date";
+  private static final String KEY_ENTRY_NAME = "entry_name";
+  private static final String KEY_TYPE = "type";
+  private static final String KEY_DEFINITION = "definition";
+  private static final String KEY_QUERY = "query";
+  private static final String KEY_ENTRY_ID = "entry_id";
+
+  private static final String[] ALL_KEYS = {
+    KEY_DATE, KEY_ENTRY_NAME, KEY_TYPE, KEY_DEFINITION, KEY_QUERY, KEY_ENTRY_ID
+  };
+
+  // The number of days of history to keep.
+  private static final int MAX_WORDS = 366;
+
+  // The entry id of a word which isn't in the dictionary database.
+  public static final int NO_ENTRY_ID = -1;
+
+  private static KwotdHistoryDatabase sInstance = null;
+
+  /** A Klingon Word of the Day. */
+  public static class Word {
+    private final String mDate;
+    private final String mEntryName;
+    private final String mType;
+    private final String mDefinition;
+    private final String mQuery;
+    private final int mEntryId;
+
+    Word(String date, String entryName, String type, String definition, String query, int entryId) {
+      mDate = date;
+      mEntryName = entryName;
+      mType = type;
+      mDefinition = definition;
+      mQuery = query;
+      mEntryId = entryId;
+    }
+
+    // The day the word was fetched for, as "yyyy-MM-dd".
+    public String getDate() {
+      return mDate;
+    }
+
+    // The word and its part of speech and definition, as given by the KWOTD feed.
+    public String getEntryName() {
+      return mEntryName;
+    }
+
+    public String getType() {
+      return mType;
+    }
+
+    public String getDefinition() {
+      return mDefinition;
+    }
+
+    // The word with its part of speech in the form used by the database, e.g., "Qapla':excl".
+    public String getQuery() {
+      return mQuery;
+    }
+
+    // The id of the entry the word was resolved to when it was fetched, or NO_ENTRY_ID. This only
+    // refers to the same entry in the database it was fetched with.
+    public int getEntryId() {
+      return mEntryId;
+    }
+  }
+
+  private KwotdHistoryDatabase(Context context) {
+    super(context, DATABASE_NAME, null, DATABASE_VERSION);
+  }
+
+  public static synchronized KwotdHistoryDatabase get(Context context) {
+    if (sInstance == null) {
+      sInstance = new KwotdHistoryDatabase(context.getApplicationContext());
+    }
+    return sInstance;
+  }
+
+  @Override
+  public void onCreate(SQLiteDatabase db) {
+    // The unique date is indexed, so words are listed by date without sorting.
+    db.execSQL(
+        "CREATE TABLE "
+            + TABLE
+            + " ("
+            + KEY_ID
+            + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + KEY_DATE
+            + " TEXT NOT NULL UNIQUE, "
+            + KEY_ENTRY_NAME
+            + " TEXT NOT NULL, "
+            + KEY_TYPE
+            + " TEXT NOT NULL, "
+            + KEY_DEFINITION
+            + " TEXT NOT NULL, "
+            + KEY_QUERY
+            + " TEXT NOT NULL, "
+            + KEY_ENTRY_ID
+            + " INTEGER NOT NULL)");
+  }
+
+  @Override
+  public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    // There is only one version so far.
+  }
+
+  /** Returns today's date in the form the history is keyed by. */
+  static String today() {
+    return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
+  }
+
+  /**
+   * Saves the word for its day, replacing any other word saved for the same day, and drops the
+   * oldest words beyond the limit.
+   */
+  void addWord(Word word) {
+    ContentValues values = new ContentValues();
+    values.put(KEY_DATE, word.getDate());
+    values.put(KEY_ENTRY_NAME, word.getEntryName());
+    values.put(KEY_TYPE, word.getType());
+    values.put(KEY_DEFINITION, word.getDefinition());
+    values.put(KEY_QUERY, word.getQuery());
+    values.put(KEY_ENTRY_ID, word.getEntryId());
+
+    SQLiteDatabase db = getWritableDatabase();
+    db.beginTransaction();
+    try {
+      db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+      db.delete(
+          TABLE,
+          KEY_DATE
+              + " NOT IN (SELECT "
+              + KEY_DATE
+              + " FROM "
+              + TABLE
+              + " ORDER BY "
+              + KEY_DATE
+              + " DESC LIMIT "
+              + MAX_WORDS
+              + ")",
+          null);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /** Returns the saved words, the most recent first. */
+  public List<Word> getWords() {
+    List<Word> words = new ArrayList<Word>();
+    Cursor cursor =
+        getReadableDatabase().query(TABLE, ALL_KEYS, null, null, null, null, KEY_DATE + " DESC");
+    try {
+      while (cursor.moveToNext()) {
+        words.add(
+            new Word(
+                cursor.getString(0),
+                cursor.getString(1),
+                cursor.getString(2),
+                cursor.getString(3),
+                cursor.getString(4),
+                cursor.getInt(5)));
+      }
+    } finally {
+      cursor.close();
+    }
+    return words;
+  }
+}
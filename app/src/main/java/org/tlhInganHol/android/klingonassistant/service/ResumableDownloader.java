@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Downloads a file over HTTP into a partial file, a block at a time. If the connection drops, the
+ * download is resumed from where it stopped with an HTTP Range request, both right away (up to a
+ * few times) and the next time the same partial file is downloaded to. The SHA-256 of the file is
+ * computed while it's streamed, and checked at the end, so a truncated or corrupt file is never
+ * kept.
+ */
+class ResumableDownloader {
+
+  /** Told how much of the file has been downloaded so far. */
+  interface ProgressListener {
+    // The total length is -1 if it isn't known.
+    void onProgress(long downloadedLength, long totalLength);
+  }
+
+  private static final int BUFFER_LENGTH = 64 * 1024;
+
+  // The number of times to connect before giving up (until the next attempt to download).
+  private static final int MAX_ATTEMPTS = 3;
+
+  // The HTTP status for a range which can't be satisfied, which isn't in HttpURLConnection.
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  private final long mMaxLength;
+
+  /** @param maxLength The length beyond which a download is abandoned */
+  ResumableDownloader(long maxLength) {
+    mMaxLength = maxLength;
+  }
+
+  /**
+   * Downloads from the given URL to the given file, resuming from whatever is already in it.
+   *
+   * @param expectedSha256 The SHA-256 of the whole file in hexadecimal, or null not to check it
+   * @throws IOException If the download failed, in which case the partial file is kept to resume
+   *     from, unless its checksum was wrong, in which case it is deleted
+   */
+  void download(URL url, File file, String expectedSha256, ProgressListener listener)
+      throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 is unavailable.", e);
+    }
+    long downloadedLength = hashExistingFile(file, digest);
+
+    IOException lastException = null;
+    boolean complete = false;
+    for (int attempt = 0; attempt < MAX_ATTEMPTS && !complete; attempt++) {
+      HttpURLConnection connection = HttpFetcher.openConnection(url);
+      try {
+        // Compressing the body would make the range refer to compressed bytes.
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        if (downloadedLength > 0) {
+          connection.setRequestProperty("Range", "bytes=" + downloadedLength + "-");
+        }
+
+        int responseCode = connection.getResponseCode();
+        long totalLength;
+        boolean append;
+        if (responseCode == HttpURLConnection.HTTP_PARTIAL && downloadedLength > 0) {
+          totalLength = parseTotalLength(connection.getHeaderField("Content-Range"));
+          append = true;
+        } else if (responseCode == HttpURLConnection.HTTP_OK) {
+          // The server sent the whole file, so start over.
+          totalLength = parseLength(connection.getHeaderField("Content-Length"));
+          digest.reset();
+          downloadedLength = 0;
+          append = false;
+        } else if (responseCode == HTTP_RANGE_NOT_SATISFIABLE && downloadedLength > 0) {
+          // The partial file is already complete.
+          connection.disconnect();
+          complete = true;
+          break;
+        } else {
+          throw new IOException("Unexpected response " + responseCode + " for " + url + ".");
+        }
+        if (totalLength > mMaxLength) {
+          throw new TooLongException(url + " is too long: " + totalLength + " bytes.");
+        }
+
+        try (InputStream inStream = connection.getInputStream();
+            FileOutputStream outStream = new FileOutputStream(file, append)) {
+          byte[] buffer = new byte[BUFFER_LENGTH];
+          int length;
+          try {
+            while ((length = inStream.read(buffer)) != -1) {
+              outStream.write(buffer, 0, length);
+              digest.update(buffer, 0, length);
+              downloadedLength += length;
+              if (downloadedLength > mMaxLength) {
+                throw new TooLongException(url + " is too long.");
+              }
+              if (listener != null) {
+                listener.onProgress(downloadedLength, totalLength);
+              }
+            }
+          } finally {
+            // Keep whatever was downloaded, to resume from.
+            outStream.flush();
+            outStream.getFD().sync();
+          }
+        }
+        if (totalLength != -1 && downloadedLength != totalLength) {
+          throw new IOException(
+              "Download of " + url + " ended at " + downloadedLength + " of " + totalLength + ".");
+        }
+        complete = true;
+      } catch (TooLongException e) {
+        connection.disconnect();
+        file.delete();
+        throw e;
+      } catch (IOException e) {
+        // Drop the connection, and try again from where the download stopped.
+        connection.disconnect();
+        lastException = e;
+      }
+    }
+    if (!complete) {
+      throw lastException;
+    }
+
+    if (expectedSha256 != null) {
+      String sha256 = toHex(digest.digest());
+      if (!sha256.equalsIgnoreCase(expectedSha256)) {
+        file.delete();
+        throw new IOException(
+            "Checksum of " + url + " is " + sha256 + ", expected " + expectedSha256 + ".");
+      }
+    }
+  }
+
+  // Thrown when a download exceeds the maximum length, so that it isn't resumed.
+  private static class TooLongException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    TooLongException(String message) {
+      super(message);
+    }
+  }
+
+  // Adds what has already been downloaded to the digest, and returns its length.
+  private static long hashExistingFile(File file, MessageDigest digest) throws IOException {
+    if (!file.exists()) {
+      return 0;
+    }
+    long length = 0;
+    try (InputStream inStream = new FileInputStream(file)) {
+      byte[] buffer = new byte[BUFFER_LENGTH];
+      int read;
+      while ((read = inStream.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+        length += read;
+      }
+    }
+    return length;
+  }
+
+  // Parses the total length from a header like "bytes 100-199/200", or returns -1.
+  private static long parseTotalLength(String contentRange) {
+    if (contentRange == null) {
+      return -1;
+    }
+    int slash = contentRange.lastIndexOf('/');
+    return slash == -1 ? -1 : parseLength(contentRange.substring(slash + 1));
+  }
+
+  private static long parseLength(String length) {
+    if (length == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(length.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A record of the most recent runs of SyncService, with what each task did and how long it took,
+ * for the sync log screen. It also keeps when each task last succeeded, so that tasks which
+ * aren't due yet can be skipped.
+ */
+public class SyncLog {
+  private static final String TAG = "SyncLog";
+
+  // The log is kept out of the default shared preferences, since it's rewritten on every run.
+  private static final String PREFS_NAME = "sync_log";
+  private static final String KEY_RUNS = "runs";
+  private static final String KEY_LAST_SUCCESS_PREFIX = "last_success_";
+
+  // The number of runs to keep.
+  private static final int MAX_RUNS = 20;
+
+  /** What one task did during a run. */
+  public static class TaskRecord {
+    private final String mName;
+    private final String mResult;
+    private final long mDurationMillis;
+    private final String mError;
+
+    TaskRecord(String name, String result, long durationMillis, String error) {
+      mName = name;
+      mResult = result;
+      mDurationMillis = durationMillis;
+      mError = error;
+    }
+
+    public String getName() {
+      return mName;
+    }
+
+    // One of the SyncTask.Result names, or "FAILED".
+    public String getResult() {
+      return mResult;
+    }
+
+    public long getDurationMillis() {
+      return mDurationMillis;
+    }
+
+    // The exception the task failed with, or null.
+    public String getError() {
+      return mError;
+    }
+  }
+
+  /** One run of the sync job. */
+  public static class Run {
+    private final int mJobId;
+    private final boolean mIsOneOffJob;
+    private final long mStartTime;
+    private final List<TaskRecord> mTasks = new ArrayList<TaskRecord>();
+    private long mDurationMillis = 0;
+    private boolean mRescheduled = false;
+    private boolean mStopped = false;
+
+    Run(int jobId, boolean isOneOffJob, long startTime) {
+      mJobId = jobId;
+      mIsOneOffJob = isOneOffJob;
+      mStartTime = startTime;
+    }
+
+    void addTask(TaskRecord task) {
+      mTasks.add(task);
+    }
+
+    void finish(long durationMillis, boolean rescheduled, boolean stopped) {
+      mDurationMillis = durationMillis;
+      mRescheduled = rescheduled;
+      mStopped = stopped;
+    }
+
+    public int getJobId() {
+      return mJobId;
+    }
+
+    public boolean isOneOffJob() {
+      return mIsOneOffJob;
+    }
+
+    // The wall clock time at which the run started.
+    public long getStartTime() {
+      return mStartTime;
+    }
+
+    // The tasks which were due, in the order they ran.
+    public List<TaskRecord> getTasks() {
+      return mTasks;
+    }
+
+    public long getDurationMillis() {
+      return mDurationMillis;
+    }
+
+    // Whether the job asked to be run again with backoff.
+    public boolean isRescheduled() {
+      return mRescheduled;
+    }
+
+    // Whether the system stopped the job before all its tasks ran.
+    public boolean isStopped() {
+      return mStopped;
+    }
+
+    private JSONObject toJson() throws JSONException {
+      JSONArray tasks = new JSONArray();
+      for (TaskRecord task : mTasks) {
+        JSONObject object = new JSONObject();
+        object.put("name", task.getName());
+        object.put("result", task.getResult());
+        object.put("millis", task.getDurationMillis());
+        if (task.getError() != null) {
+          object.put("error", task.getError());
+        }
+        tasks.put(object);
+      }
+      JSONObject object = new JSONObject();
+      object.put("job", mJobId);
+      object.put("one_off", mIsOneOffJob);
+      object.put("start", mStartTime);
+      object.put("millis", mDurationMillis);
+      object.put("rescheduled", mRescheduled);
+      object.put("stopped", mStopped);
+      object.put("tasks", tasks);
+      return object;
+    }
+
+    private static Run fromJson(JSONObject object) throws JSONException {
+      Run run =
+          new Run(object.getInt("job"), object.getBoolean("one_off"), object.getLong("start"));
+      JSONArray tasks = object.getJSONArray("tasks");
+      for (int i = 0; i < tasks.length(); i++) {
+        JSONObject task = tasks.getJSONObject(i);
+        run.addTask(
+            new TaskRecord(
+                task.getString("name"),
+                task.getString("result"),
+                task.getLong("millis"),
+                task.optString("error", null)));
+      }
+      run.finish(
+          object.getLong("millis"), object.getBoolean("rescheduled"), object.getBoolean("stopped"));
+      return run;
+    }
+  }
+
+  /** Returns the logged runs, the most recent first. */
+  public static synchronized List<Run> getRuns(Context context) {
+    List<Run> runs = new ArrayList<Run>();
+    try {
+      JSONArray array = readRuns(context);
+      for (int i = 0; i < array.length(); i++) {
+        runs.add(Run.fromJson(array.getJSONObject(i)));
+      }
+    } catch (JSONException e) {
+      Log.e(TAG, "Failed to read sync log.", e);
+    }
+    Collections.reverse(runs);
+    return runs;
+  }
+
+  /** Appends a run to the log, dropping the oldest runs beyond the limit. */
+  static synchronized void record(Context context, Run run) {
+    try {
+      JSONArray runs = readRuns(context);
+      JSONArray kept = new JSONArray();
+      for (int i = Math.max(0, runs.length() - (MAX_RUNS - 1)); i < runs.length(); i++) {
+        kept.put(runs.get(i));
+      }
+      kept.put(run.toJson());
+      getPrefs(context).edit().putString(KEY_RUNS, kept.toString()).apply();
+    } catch (JSONException e) {
+      Log.e(TAG, "Failed to write sync log.", e);
+    }
+  }
+
+  /** Returns the wall clock time at which the given task last succeeded, or 0 if it never has. */
+  static long getLastSuccessTime(Context context, String taskName) {
+    return getPrefs(context).getLong(KEY_LAST_SUCCESS_PREFIX + taskName, /* default */ 0);
+  }
+
+  static void setLastSuccessTime(Context context, String taskName, long time) {
+    getPrefs(context).edit().putLong(KEY_LAST_SUCCESS_PREFIX + taskName, time).apply();
+  }
+
+  private static JSONArray readRuns(Context context) throws JSONException {
+    String runs = getPrefs(context).getString(KEY_RUNS, /* default */ null);
+    return runs == null ? new JSONArray() : new JSONArray(runs);
+  }
+
+  private static SharedPreferences getPrefs(Context context) {
+    return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+  }
+}
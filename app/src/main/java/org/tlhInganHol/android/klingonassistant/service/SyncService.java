@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs all of the background fetches (the KWOTD and the database update) back to back in a single
+ * job, so that the device wakes up and turns on the radio once for all of them. The persisted job
+ * runs every task which is turned on and due; a one-off job runs the tasks the user asked for.
+ */
+public class SyncService extends JobService {
+  private static final String TAG = "SyncService";
+
+  // Key for indicating whether this is a "one-off" job, which runs the tasks named in
+  // KEY_TASK_NAMES right away, even if they aren't due or have been turned off.
+  public static final String KEY_IS_ONE_OFF_JOB = "is_one_off_job";
+  public static final String KEY_TASK_NAMES = "task_names";
+
+  // The names of the tasks.
+  public static final String TASK_KWOTD = KwotdTask.NAME;
+  public static final String TASK_UPDATE_DATABASE = UpdateDatabaseTask.NAME;
+
+  // The tasks run by the persisted job, in order. The KWOTD is small, so it goes first.
+  private static final String[] ALL_TASK_NAMES = {TASK_KWOTD, TASK_UPDATE_DATABASE};
+
+  // The number of jobs which can wait for the sync thread. There are only a few job IDs, and the
+  // system never runs two jobs with the same ID at once, so this is never reached in practice.
+  private static final int MAX_QUEUED_JOBS = 4;
+
+  // How long the sync thread is kept after the last job, before it exits.
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  // A single thread runs the jobs one at a time, so that a one-off job and the persisted job never
+  // compete for the network or the database.
+  private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+  // The jobs which have started and not yet finished, by job ID.
+  private final ConcurrentMap<Integer, SyncJob> mJobs = new ConcurrentHashMap<Integer, SyncJob>();
+
+  @Override
+  public void onCreate() {
+    super.onCreate();
+    Log.d(TAG, "SyncService created");
+  }
+
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+    Log.d(TAG, "SyncService destroyed");
+  }
+
+  @Override
+  public boolean onStartJob(final JobParameters params) {
+    Log.d(TAG, "on start job: " + params.getJobId());
+    SyncJob job = new SyncJob(params);
+    mJobs.put(params.getJobId(), job);
+    try {
+      sExecutor.execute(job);
+    } catch (RejectedExecutionException e) {
+      Log.w(TAG, "Too many sync jobs queued, dropping job " + params.getJobId() + ".");
+      mJobs.remove(params.getJobId());
+      return false;
+    }
+
+    // Return true to hold the wake lock. This is released when the job finishes.
+    return true;
+  }
+
+  @Override
+  public boolean onStopJob(JobParameters params) {
+    Log.d(TAG, "on stop job: " + params.getJobId());
+    SyncJob job = mJobs.remove(params.getJobId());
+    if (job != null) {
+      // The task which is running is allowed to finish, but no more are started.
+      job.stop();
+    }
+
+    // Return true to run the job again later, since the tasks which didn't run are still due.
+    return true;
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            /* corePoolSize */ 1,
+            /* maximumPoolSize */ 1,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(MAX_QUEUED_JOBS),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "KlingonSync");
+              }
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static SyncTask createTask(String name) {
+    if (TASK_KWOTD.equals(name)) {
+      return new KwotdTask();
+    } else if (TASK_UPDATE_DATABASE.equals(name)) {
+      return new UpdateDatabaseTask();
+    }
+    return null;
+  }
+
+  private class SyncJob implements Runnable {
+    private final JobParameters mParams;
+    private volatile boolean mStopped = false;
+
+    SyncJob(JobParameters params) {
+      mParams = params;
+    }
+
+    void stop() {
+      mStopped = true;
+    }
+
+    @Override
+    public void run() {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      Context context = getApplicationContext();
+      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+      boolean isOneOffJob = mParams.getExtras().getBoolean(KEY_IS_ONE_OFF_JOB);
+      String[] taskNames =
+          isOneOffJob ? mParams.getExtras().getStringArray(KEY_TASK_NAMES) : ALL_TASK_NAMES;
+      if (taskNames == null) {
+        taskNames = new String[0];
+      }
+
+      SyncLog.Run run =
+          new SyncLog.Run(mParams.getJobId(), isOneOffJob, System.currentTimeMillis());
+      long jobStart = SystemClock.elapsedRealtime();
+
+      // Set to true if any task failed or has to try again later. The tasks which succeeded won't
+      // be due when the job is run again.
+      boolean rescheduleJob = false;
+      for (String taskName : taskNames) {
+        if (mStopped) {
+          break;
+        }
+        SyncTask task = createTask(taskName);
+        if (task == null) {
+          Log.w(TAG, "Unknown sync task: " + taskName);
+          continue;
+        }
+        long now = System.currentTimeMillis();
+        long lastSuccess = SyncLog.getLastSuccessTime(context, taskName);
+        if (!isOneOffJob
+            && (!task.isEnabled(sharedPrefs)
+                || (lastSuccess <= now && now - lastSuccess < task.getIntervalMillis()))) {
+          continue;
+        }
+
+        long taskStart = SystemClock.elapsedRealtime();
+        String result;
+        String error = null;
+        try {
+          SyncTask.Result taskResult = task.run(context, isOneOffJob);
+          result = taskResult.name();
+          if (taskResult == SyncTask.Result.PENDING) {
+            rescheduleJob = true;
+          } else {
+            SyncLog.setLastSuccessTime(context, taskName, now);
+          }
+        } catch (Exception e) {
+          Log.e(TAG, "Sync task " + taskName + " failed.", e);
+          result = "FAILED";
+          error = e.toString();
+          rescheduleJob = true;
+        }
+        long taskDuration = SystemClock.elapsedRealtime() - taskStart;
+        Log.d(TAG, "Sync task " + taskName + ": " + result + " in " + taskDuration + " ms.");
+        run.addTask(new SyncLog.TaskRecord(taskName, result, taskDuration, error));
+      }
+
+      run.finish(SystemClock.elapsedRealtime() - jobStart, rescheduleJob, mStopped);
+      SyncLog.record(context, run);
+
+      // A job which was stopped has already been released by the system.
+      if (mJobs.remove(mParams.getJobId(), this)) {
+        // Release the wakelock, and indicate whether rescheduling the job is needed.
+        Log.d(TAG, "jobFinished called with rescheduleJob: " + rescheduleJob);
+        jobFinished(mParams, rescheduleJob);
+      }
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/** A fetch which SyncService runs, together with the others, in a single network window. */
+interface SyncTask {
+
+  /** What a task did. A task which fails throws instead. */
+  enum Result {
+    // New data was fetched and handled.
+    UPDATED,
+    // There was nothing new on the server.
+    UNCHANGED,
+    // There was nothing new on the server yet, but there should be soon, so try again later.
+    PENDING
+  }
+
+  /** The name under which the task is requested and logged. */
+  String getName();
+
+  /** Whether the user has turned the task on in the preferences. */
+  boolean isEnabled(SharedPreferences sharedPrefs);
+
+  /** How long to wait after the task last ran successfully before running it again. */
+  long getIntervalMillis();
+
+  /**
+   * Runs the task on a background thread.
+   *
+   * @param isOneOffJob Whether the user asked for the task to run now, in which case the data is
+   *     handled even if it was handled before
+   */
+  Result run(Context context, boolean isOneOffJob) throws Exception;
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2017 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.Build;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipInputStream;
+import org.json.JSONException;
+import org.tlhInganHol.android.klingonassistant.KlingonContentDatabase;
+import org.tlhInganHol.android.klingonassistant.KlingonContentProvider;
+import org.tlhInganHol.android.klingonassistant.Preferences;
+import org.tlhInganHol.android.klingonassistant.R;
+
+/**
+ * Checks the manifest on the update server, and if there is a newer database, downloads it (or
+ * deltas to it) and switches the app over to it.
+ */
+class UpdateDatabaseTask implements SyncTask {
+  private static final String TAG = "UpdateDatabaseTask";
+
+  static final String NAME = "update_db";
+
+  // Keys for saving the validators of the last manifest which was handled, and its latest version.
+  private static final String KEY_MANIFEST = "update_manifest";
+  private static final String KEY_MANIFEST_LATEST_VERSION = "update_manifest_latest_version";
+
+  // Online database upgrade URL.
+  private static final String ONLINE_UPGRADE_PATH = "https://De7vID.github.io/qawHaq/";
+
+  // Arbitrary limit on the length of the zipped and unzipped database, to prevent filling the
+  // disk if something goes wrong.
+  private static final long MAX_DATABASE_LENGTH = 64 * 1024 * 1024;
+
+  // The buffer for unzipping the database.
+  private static final int UNZIP_BUFFER_LENGTH = 64 * 1024;
+
+  // The notification which shows the progress of downloading the database. Its ID must differ from
+  // the KWOTD notification's.
+  private static final int NOTIFICATION_ID = 1;
+  private static final String NOTIFICATION_CHANNEL_ID = "database_update_channel_id";
+
+  // How often to update the notification, since updates which come too quickly are dropped.
+  private static final long NOTIFICATION_INTERVAL_MS = 1000;
+
+  // The last percentage of the download reported, and when.
+  private int mLastPercent = -1;
+  private long mLastNotificationTime = 0;
+
+  // Where the manifest and deltas are downloaded from.
+  private final UpdateSource mSource =
+      new UpdateSource() {
+        @Override
+        public InputStream open(String path) throws IOException {
+          return HttpFetcher.openStream(new URL(ONLINE_UPGRADE_PATH + path));
+        }
+      };
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean isEnabled(SharedPreferences sharedPrefs) {
+    return sharedPrefs.getBoolean(
+        Preferences.KEY_UPDATE_DB_CHECKBOX_PREFERENCE, /* default */ true);
+  }
+
+  // The database is checked about once a month. This is a day short of 30 days, so that a daily
+  // sync job which happens to run a little early doesn't put the check off for another day.
+  @Override
+  public long getIntervalMillis() {
+    return TimeUnit.DAYS.toMillis(29);
+  }
+
+  @Override
+  public Result run(Context context, boolean isOneOffJob) throws Exception {
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+    String installedVersion =
+        sharedPrefs.getString(
+            KlingonContentDatabase.KEY_INSTALLED_DATABASE_VERSION,
+            /* default */ KlingonContentDatabase.getBundledDatabaseVersion());
+    String updatedVersion =
+        KlingonContentDatabase.hasUpdatedDatabase(context)
+            ? sharedPrefs.getString(
+                KlingonContentDatabase.KEY_UPDATED_DATABASE_VERSION,
+                /* default */ installedVersion)
+            : installedVersion;
+
+    // Fetch the manifest, unless it hasn't changed since it was last handled and the database
+    // on the device was already up to date then.
+    URL manifestUrl = new URL(ONLINE_UPGRADE_PATH + UpdateManifest.MANIFEST_PATH);
+    HttpFetcher.Response response =
+        HttpFetcher.fetchIfChanged(
+            manifestUrl, sharedPrefs, KEY_MANIFEST, UpdateManifest.MAX_MANIFEST_LENGTH);
+    if (response.isNotModified()) {
+      String handledLatest = sharedPrefs.getString(KEY_MANIFEST_LATEST_VERSION, /* default */ null);
+      if (handledLatest != null && handledLatest.compareToIgnoreCase(updatedVersion) <= 0) {
+        Log.d(TAG, "Manifest hasn't changed.");
+        return Result.UNCHANGED;
+      }
+      response =
+          HttpFetcher.fetch(
+              manifestUrl,
+              /* eTag */ null,
+              /* lastModified */ null,
+              UpdateManifest.MAX_MANIFEST_LENGTH);
+    }
+    UpdateManifest manifest = UpdateManifest.parse(response.getBody());
+    String latest = manifest.getLatestVersion();
+    Log.d(TAG, "Latest database version: " + latest);
+
+    // Only download the database if the latest version is lexicographically greater than the
+    // installed one and it hasn't already been downloaded.
+    boolean updated = latest.compareToIgnoreCase(updatedVersion) > 0;
+    if (updated) {
+      // Get the metadata for the latest database for Android.
+      int firstExtraEntryId = manifest.getFirstExtraEntryId(latest);
+      Log.d(TAG, "Id of first extra entry: " + Integer.toString(firstExtraEntryId));
+
+      // If the server has deltas from the newest database on the device to the latest one,
+      // apply them to a copy of it. Otherwise, download the whole database.
+      File stagingFile = null;
+      List<String> deltaPaths = manifest.findDeltaChain(updatedVersion, latest);
+      if (deltaPaths != null) {
+        try {
+          stagingFile = applyDeltas(context, updatedVersion, latest, deltaPaths);
+        } catch (IOException | JSONException | SQLiteException e) {
+          Log.e(TAG, "Failed to apply deltas, downloading the whole database instead.", e);
+        }
+      }
+      if (stagingFile == null) {
+        String databaseZipUrl = ONLINE_UPGRADE_PATH + manifest.getPath(latest);
+        Log.d(TAG, "Database zip URL: " + databaseZipUrl);
+        stagingFile = copyDBFromZipUrl(context, databaseZipUrl, manifest.getSha256(latest), latest);
+      }
+
+      // Check the new database, move it into place, and save its version and first extra
+      // entry ID. Then ask the provider to switch to it while the app is running.
+      KlingonContentDatabase.stageReplacementDatabase(
+          context, stagingFile, latest, firstExtraEntryId);
+      context
+          .getContentResolver()
+          .call(
+              KlingonContentProvider.CONTENT_URI,
+              KlingonContentProvider.METHOD_INSTALL_UPDATED_DATABASE,
+              null,
+              null);
+    }
+
+    // Remember the manifest which was handled.
+    SharedPreferences.Editor sharedPrefsEd = sharedPrefs.edit();
+    HttpFetcher.saveValidators(sharedPrefsEd, KEY_MANIFEST, response);
+    sharedPrefsEd.putString(KEY_MANIFEST_LATEST_VERSION, latest);
+    sharedPrefsEd.apply();
+
+    return updated ? Result.UPDATED : Result.UNCHANGED;
+  }
+
+  /**
+   * Applies a chain of deltas to a copy of the newest database on the device, all in a single
+   * transaction, so that only the rows which changed have to be downloaded.
+   *
+   * @return The staging file holding the updated copy
+   */
+  private File applyDeltas(
+      Context context, String fromVersion, String toVersion, List<String> deltaPaths)
+      throws IOException, JSONException {
+    File stagingFile = context.getDatabasePath(KlingonContentDatabase.STAGING_DATABASE_NAME);
+    try (FileChannel inChannel =
+            new FileInputStream(KlingonContentDatabase.getNewestDatabaseFile(context)).getChannel();
+        FileChannel outChannel = new FileOutputStream(stagingFile).getChannel()) {
+      long size = inChannel.size();
+      long position = 0;
+      while (position < size) {
+        position += inChannel.transferTo(position, size - position, outChannel);
+      }
+    }
+
+    boolean applied = false;
+    SQLiteDatabase db =
+        SQLiteDatabase.openDatabase(stagingFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+    try {
+      db.beginTransaction();
+      try {
+        String version = fromVersion;
+        for (String deltaPath : deltaPaths) {
+          DatabaseDelta delta = DatabaseDelta.read(mSource, deltaPath);
+          if (!delta.getFromVersion().equals(version)) {
+            throw new IOException("Delta " + deltaPath + " doesn't apply to v" + version + ".");
+          }
+          delta.applyTo(db);
+          version = delta.getToVersion();
+          Log.d(
+              TAG,
+              "Applied delta "
+                  + deltaPath
+                  + ": "
+                  + delta.getRows().size()
+                  + " rows changed, "
+                  + delta.getDeletedIds().length
+                  + " deleted.");
+        }
+        if (!version.equals(toVersion)) {
+          throw new IOException("Deltas end at v" + version + ", not v" + toVersion + ".");
+        }
+        db.setTransactionSuccessful();
+        applied = true;
+      } finally {
+        db.endTransaction();
+      }
+    } finally {
+      db.close();
+      if (!applied) {
+        stagingFile.delete();
+      }
+    }
+    return stagingFile;
+  }
+
+  /**
+   * Downloads the zipped database, resuming a previous download of the same version if there is
+   * one, checks it against the SHA-256 from the manifest, and unzips it to the staging file.
+   *
+   * @return The staging file holding the database
+   */
+  private File copyDBFromZipUrl(
+      Context context, String databaseZipUrl, String sha256, String version) throws IOException {
+    // The partial download is kept in the cache until it's complete. Any others are for older
+    // versions, so remove them.
+    String zipFileName = "qawHaq-" + version + ".zip.part";
+    File zipFile = new File(context.getCacheDir(), zipFileName);
+    File[] cacheFiles = context.getCacheDir().listFiles();
+    if (cacheFiles != null) {
+      for (File cacheFile : cacheFiles) {
+        if (cacheFile.getName().endsWith(".zip.part") && !cacheFile.equals(zipFile)) {
+          cacheFile.delete();
+        }
+      }
+    }
+    if (sha256 == null) {
+      Log.w(TAG, "The manifest has no checksum for database v" + version + ".");
+    }
+
+    final NotificationManager manager =
+        (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    final NotificationCompat.Builder builder =
+        createDownloadNotification(context, manager, version);
+    manager.notify(NOTIFICATION_ID, builder.build());
+    mLastPercent = -1;
+    mLastNotificationTime = SystemClock.uptimeMillis();
+    try {
+      new ResumableDownloader(MAX_DATABASE_LENGTH)
+          .download(
+              new URL(databaseZipUrl),
+              zipFile,
+              sha256,
+              new ResumableDownloader.ProgressListener() {
+                @Override
+                public void onProgress(long downloadedLength, long totalLength) {
+                  if (totalLength <= 0) {
+                    return;
+                  }
+                  int percent = (int) (downloadedLength * 100 / totalLength);
+                  long now = SystemClock.uptimeMillis();
+                  if (percent != mLastPercent
+                      && now - mLastNotificationTime >= NOTIFICATION_INTERVAL_MS) {
+                    mLastPercent = percent;
+                    mLastNotificationTime = now;
+                    Log.d(TAG, "Downloaded " + percent + "% of the database.");
+                    builder.setProgress(/* max */ 100, percent, /* indeterminate */ false);
+                    manager.notify(NOTIFICATION_ID, builder.build());
+                  }
+                }
+              });
+    } finally {
+      manager.cancel(NOTIFICATION_ID);
+    }
+
+    // Write to a staging file, so that a partial database is never mistaken for the replacement
+    // database.
+    File stagingFile = context.getDatabasePath(KlingonContentDatabase.STAGING_DATABASE_NAME);
+    Log.d(TAG, "stagingFile: " + stagingFile);
+    long total = 0;
+    try (ZipInputStream inStream = new ZipInputStream(new FileInputStream(zipFile));
+        FileOutputStream outStream = new FileOutputStream(stagingFile)) {
+      if (inStream.getNextEntry() == null) {
+        throw new IOException("Downloaded zip file is empty.");
+      }
+      byte[] buffer = new byte[UNZIP_BUFFER_LENGTH];
+      int length;
+      while ((length = inStream.read(buffer)) > 0) {
+        outStream.write(buffer, 0, length);
+        total += length;
+        if (total > MAX_DATABASE_LENGTH) {
+          throw new IOException("Downloaded database is too long.");
+        }
+      }
+      inStream.closeEntry();
+
+      // Make sure the file is on disk before it is renamed into place.
+      outStream.flush();
+      outStream.getFD().sync();
+    } catch (IOException e) {
+      // The zip file passed its checksum (if there was one), so it won't be any better if it's
+      // downloaded again.
+      stagingFile.delete();
+      zipFile.delete();
+      throw e;
+    }
+    Log.d(TAG, "Copied database from " + databaseZipUrl + ", " + total + " bytes written.");
+    zipFile.delete();
+    return stagingFile;
+  }
+
+  // Creates the notification which shows the progress of downloading the database. It starts off
+  // indeterminate, until the length of the download is known.
+  private static NotificationCompat.Builder createDownloadNotification(
+      Context context, NotificationManager manager, String version) {
+    NotificationCompat.Builder builder =
+        new NotificationCompat.Builder(context)
+            .setSmallIcon(android.R.drawable.stat_sys_download)
+            .setContentTitle(
+                context.getResources().getString(R.string.database_downloading, version))
+            .setProgress(/* max */ 100, /* progress */ 0, /* indeterminate */ true)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true);
+
+    // A notification channel is both needed and only supported on Android 8.0 (API 26) and up.
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      NotificationChannel channel =
+          new NotificationChannel(
+              NOTIFICATION_CHANNEL_ID,
+              context.getResources().getString(R.string.database_update_notification_channel_name),
+              NotificationManager.IMPORTANCE_LOW);
+      manager.createNotificationChannel(channel);
+      builder = builder.setChannelId(NOTIFICATION_CHANNEL_ID);
+    }
+    return builder;
+  }
+}
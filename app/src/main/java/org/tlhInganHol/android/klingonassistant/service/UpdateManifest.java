@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The manifest of the databases available on the update server. For each version, it gives the
+ * path and SHA-256 of the zipped database, and the ID of its first extra entry. A version may also
+ * list the paths of deltas which turn an older version into it, for example:
+ *
+ * <pre>
+ * "Android-4": {
+ *   "latest": "2022.01.01a",
+ *   "2022.01.01a": {
+ *     "path": "qawHaq-2022.01.01a.db.zip",
+ *     "sha256": "9f86d081884c7d65...",
+ *     "extra": 15080,
+ *     "deltas": { "2021.12.01a": "deltas/2021.12.01a-2022.01.01a.json.gz" }
+ *   },
+ *   ...
+ * }
+ * </pre>
+ */
+class UpdateManifest {
+
+  // The path of the manifest on the server, and the object in it for this version of the app.
+  static final String MANIFEST_PATH = "manifest.json";
+  private static final String PLATFORM_KEY = "Android-4";
+
+  // Arbitrary limit on the length of the manifest, to prevent overflows and such.
+  static final int MAX_MANIFEST_LENGTH = 64 * 1024;
+
+  // Arbitrary limit on the number of deltas to apply in a row, beyond which it's better to download
+  // the whole database.
+  private static final int MAX_DELTA_CHAIN_LENGTH = 8;
+
+  private final JSONObject mPlatformObject;
+
+  UpdateManifest(JSONObject platformObject) {
+    mPlatformObject = platformObject;
+  }
+
+  /** Reads the manifest from the given source. */
+  static UpdateManifest read(UpdateSource source) throws IOException, JSONException {
+    StringBuilder sb = new StringBuilder();
+    try (BufferedReader bufferedReader =
+        new BufferedReader(new InputStreamReader(source.open(MANIFEST_PATH), "UTF-8"))) {
+      String line;
+      while ((line = bufferedReader.readLine()) != null) {
+        sb.append(line);
+        sb.append('\n');
+        if (sb.length() > MAX_MANIFEST_LENGTH) {
+          throw new IOException("Manifest is too long.");
+        }
+      }
+    }
+    return parse(sb.toString());
+  }
+
+  /** Parses the manifest from its text. */
+  static UpdateManifest parse(String data) throws JSONException {
+    return new UpdateManifest(new JSONObject(data).getJSONObject(PLATFORM_KEY));
+  }
+
+  String getLatestVersion() throws JSONException {
+    return mPlatformObject.getString("latest");
+  }
+
+  /** Returns the path of the zipped database of the given version. */
+  String getPath(String version) throws JSONException {
+    return mPlatformObject.getJSONObject(version).getString("path");
+  }
+
+  /** Returns the SHA-256 of the zipped database of the given version, or null if it isn't given. */
+  String getSha256(String version) throws JSONException {
+    return mPlatformObject.getJSONObject(version).optString("sha256", null);
+  }
+
+  int getFirstExtraEntryId(String version) throws JSONException {
+    return mPlatformObject.getJSONObject(version).getInt("extra");
+  }
+
+  /**
+   * Finds the shortest chain of deltas which turns one version of the database into another.
+   *
+   * @return The paths of the deltas, in the order to apply them, or null if there is no chain
+   */
+  List<String> findDeltaChain(String fromVersion, String toVersion) {
+    return findDeltaChain(fromVersion, toVersion, MAX_DELTA_CHAIN_LENGTH);
+  }
+
+  private List<String> findDeltaChain(String fromVersion, String toVersion, int maxLength) {
+    JSONObject toObject = mPlatformObject.optJSONObject(toVersion);
+    JSONObject deltasObject = toObject == null ? null : toObject.optJSONObject("deltas");
+    if (deltasObject == null || maxLength == 0) {
+      return null;
+    }
+    String directPath = deltasObject.optString(fromVersion, null);
+    if (directPath != null) {
+      ArrayList<String> chain = new ArrayList<String>();
+      chain.add(directPath);
+      return chain;
+    }
+
+    // Otherwise, go back through the intermediate versions (which must be newer than fromVersion).
+    List<String> bestChain = null;
+    Iterator<String> intermediateVersions = deltasObject.keys();
+    while (intermediateVersions.hasNext()) {
+      String intermediateVersion = intermediateVersions.next();
+      if (intermediateVersion.compareToIgnoreCase(fromVersion) <= 0
+          || intermediateVersion.compareToIgnoreCase(toVersion) >= 0) {
+        continue;
+      }
+      int remainingLength = bestChain == null ? maxLength - 1 : bestChain.size() - 2;
+      List<String> chain = findDeltaChain(fromVersion, intermediateVersion, remainingLength);
+      if (chain != null) {
+        chain.add(deltasObject.optString(intermediateVersion));
+        bestChain = chain;
+      }
+    }
+    return bestChain;
+  }
+}
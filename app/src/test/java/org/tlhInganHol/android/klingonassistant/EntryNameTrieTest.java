@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for EntryNameTrie.
+ */
+public class EntryNameTrieTest {
+
+    private static EntryNameTrie buildTrie() {
+        EntryNameTrie trie = new EntryNameTrie();
+        trie.add("Qapla'", 1);
+        trie.add("qaplaw", 2);
+        trie.add("ghIlab ghew", 3);
+        trie.add("tlhIngan", 4);
+        trie.add("tlhIngan Hol", 5);
+        trie.add("Hol", 6);
+        trie.add("Hol", 7);
+        return trie;
+    }
+
+    @Test
+    public void findNearMatches_prefersCheapKlingonMistakes() throws Exception {
+        List<EntryNameTrie.NearMatch> matches = buildTrie().findNearMatches("qapla", 10);
+        assertEquals(2, matches.size());
+        // A lowercase {Q} and a missing apostrophe cost one edit in total.
+        assertEquals(1, matches.get(0).getId());
+        assertEquals(1.0f, matches.get(0).getDistance(), 0.0f);
+        assertEquals(2, matches.get(1).getId());
+    }
+
+    @Test
+    public void findNearMatches_allowsMissingH() throws Exception {
+        EntryNameTrie trie = buildTrie();
+        List<EntryNameTrie.NearMatch> matches = trie.findNearMatches("tlIngan", 10);
+        assertEquals(4, matches.get(0).getId());
+        assertEquals(0.5f, matches.get(0).getDistance(), 0.0f);
+        matches = trie.findNearMatches("gIlab gew", 10);
+        assertEquals(3, matches.get(0).getId());
+        assertEquals(1.0f, matches.get(0).getDistance(), 0.0f);
+    }
+
+    @Test
+    public void findNearMatches_returnsHomophonesAndRespectsLimits() throws Exception {
+        EntryNameTrie trie = buildTrie();
+        List<EntryNameTrie.NearMatch> matches = trie.findNearMatches("Hop", 10);
+        assertEquals(6, matches.get(0).getId());
+        assertEquals(7, matches.get(1).getId());
+        assertEquals(1, trie.findNearMatches("Hop", 1).size());
+        assertTrue(trie.findNearMatches("ghew", 10).isEmpty());
+    }
+
+    @Test
+    public void findExact_returnsHomophonesOnly() throws Exception {
+        EntryNameTrie trie = buildTrie();
+        assertArrayEquals(new int[] {6, 7}, trie.findExact("Hol"));
+        assertArrayEquals(new int[] {4}, trie.findExact("tlhIngan"));
+        // Neither a prefix nor a near match is an exact match.
+        assertEquals(0, trie.findExact("tlhIngan H").length);
+        assertEquals(0, trie.findExact("Qapla").length);
+    }
+}
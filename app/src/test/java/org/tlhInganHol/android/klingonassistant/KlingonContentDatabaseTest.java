@@ -37,4 +37,42 @@ public class KlingonContentDatabaseTest {
         assertEquals(result.getCount(), 0);
     }
 
+    @Test
+    public void findAdjacentEntryIds_skipsGaps() {
+        int[] ids = {1, 2, 5, 9};
+        assertArrayEquals(new int[] {1, 5}, KlingonContentDatabase.findAdjacentEntryIds(ids, 2));
+        // An ID which doesn't exist still has neighbours.
+        assertArrayEquals(new int[] {5, 9}, KlingonContentDatabase.findAdjacentEntryIds(ids, 7));
+        assertArrayEquals(
+                new int[] {KlingonContentDatabase.NO_ADJACENT_ENTRY, 2},
+                KlingonContentDatabase.findAdjacentEntryIds(ids, 1));
+        assertArrayEquals(
+                new int[] {9, KlingonContentDatabase.NO_ADJACENT_ENTRY},
+                KlingonContentDatabase.findAdjacentEntryIds(ids, 12));
+    }
+
+    @Test
+    public void columnIndices_matchAllKeys() {
+        assertEquals(KlingonContentDatabase.KEY_SEARCH_TAGS_SV,
+                KlingonContentDatabase.ALL_KEYS[KlingonContentDatabase.COLUMN_SEARCH_TAGS_SV]);
+        assertEquals(KlingonContentDatabase.KEY_DEFINITION_RU,
+                KlingonContentDatabase.ALL_KEYS[KlingonContentDatabase.COLUMN_DEFINITION_RU]);
+        assertEquals(KlingonContentDatabase.KEY_SEARCH_TAGS_FI,
+                KlingonContentDatabase.ALL_KEYS[KlingonContentDatabase.COLUMN_SEARCH_TAGS_FI]);
+    }
+
+    @Test
+    public void getListKeys_addsOtherLanguageDefinition() {
+        assertArrayEquals(
+                new String[] {
+                    KlingonContentDatabase.KEY_ID,
+                    KlingonContentDatabase.KEY_ENTRY_NAME,
+                    KlingonContentDatabase.KEY_PART_OF_SPEECH,
+                    KlingonContentDatabase.KEY_DEFINITION,
+                    KlingonContentDatabase.KEY_DEFINITION_DE
+                },
+                KlingonContentDatabase.getListKeys("de"));
+        assertEquals(4, KlingonContentDatabase.getListKeys("NONE").length);
+    }
+
 }
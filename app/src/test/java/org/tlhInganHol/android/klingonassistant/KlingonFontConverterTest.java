@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for KlingonFontConverter.
+ */
+public class KlingonFontConverterTest {
+
+    // Strings which exercise the digraphs, the affix separators, and runs of periods.
+    private static final List<String> STRINGS = Arrays.asList(
+            "tlhIngan Hol", "nenghep", "Qongha'", "chuchHa'", "ngeng", "-wI'", "jI-", "ghItlh",
+            "be' - -pu'", "-   ghach", "yI- ...", "Hu'tegh!!!!", "nuqneH? ....", "(mu'mey)",
+            "Qapla'! 1999, 2020; \"ghobe'\"", "\u00DCberCamp 10+1", "");
+
+    // The chain of replacements which the converter replaces, used as a reference.
+    private static String convertWithRegularExpressions(String s) {
+        String klingonString = s.replaceAll("[^A-Za-z0-9 '\\\":;,\\.\\-?!_/()@=%&\\*]", "");
+        klingonString = klingonString
+                .replaceAll(" + -", " \u25C3 ")
+                .replaceAll("- + ", " \u25B9 ")
+                .replaceAll("^-", "\u25C3 ")
+                .replaceAll("-$", " \u25B9");
+        return klingonString
+                .replaceAll("gh", "\uF8D5")
+                .replaceAll("ng", "\uF8DC")
+                .replaceAll("tlh", "\uF8E4")
+                .replaceAll("a", "\uF8D0")
+                .replaceAll("b", "\uF8D1")
+                .replaceAll("ch", "\uF8D2")
+                .replaceAll("D", "\uF8D3")
+                .replaceAll("e", "\uF8D4")
+                .replaceAll("H", "\uF8D6")
+                .replaceAll("I", "\uF8D7")
+                .replaceAll("j", "\uF8D8")
+                .replaceAll("l", "\uF8D9")
+                .replaceAll("m", "\uF8DA")
+                .replaceAll("n", "\uF8DB")
+                .replaceAll("o", "\uF8DD")
+                .replaceAll("p", "\uF8DE")
+                .replaceAll("q", "\uF8DF")
+                .replaceAll("Q", "\uF8E0")
+                .replaceAll("r", "\uF8E1")
+                .replaceAll("S", "\uF8E2")
+                .replaceAll("t", "\uF8E3")
+                .replaceAll("u", "\uF8E5")
+                .replaceAll("v", "\uF8E6")
+                .replaceAll("w", "\uF8E7")
+                .replaceAll("y", "\uF8E8")
+                .replaceAll("'", "\uF8E9")
+                .replaceAll("0", "\uF8F0")
+                .replaceAll("1", "\uF8F1")
+                .replaceAll("2", "\uF8F2")
+                .replaceAll("3", "\uF8F3")
+                .replaceAll("4", "\uF8F4")
+                .replaceAll("5", "\uF8F5")
+                .replaceAll("6", "\uF8F6")
+                .replaceAll("7", "\uF8F7")
+                .replaceAll("8", "\uF8F8")
+                .replaceAll("9", "\uF8F9")
+                .replaceAll(",", "\uF8FD")
+                .replaceAll(";", "\uF8FD")
+                .replaceAll("!", "\uF8FE")
+                .replaceAll("\\(", "\u25B9")
+                .replaceAll("\\)", "\u25C3")
+                .replaceAll("-", "\u25C3")
+                .replaceAll("\\?", "\uF8FE")
+                .replaceAll("\\.", "\uF8FE")
+                .replaceAll("\uF8FE\uF8FE\uF8FE", "\u22EF");
+    }
+
+    @Test
+    public void convert_digraphs() throws Exception {
+        assertEquals("\uF8D5\uF8D7\uF8E4", KlingonFontConverter.convert("ghItlh"));
+        // {ngh} is {n} + {gh}, not {ng} + {H}.
+        assertEquals("\uF8DB\uF8D4\uF8DB\uF8D5\uF8D4\uF8DE",
+                KlingonFontConverter.convert("nenghep"));
+        assertEquals("\uF8D2\uF8E5\uF8D2", KlingonFontConverter.convert("chuch"));
+    }
+
+    @Test
+    public void convert_matchesRegularExpressionsOnFixedStrings() throws Exception {
+        for (String s : STRINGS) {
+            assertEquals(s, convertWithRegularExpressions(s), KlingonFontConverter.convert(s));
+        }
+    }
+
+    @Test
+    public void convert_matchesRegularExpressionsOnRandomStrings() throws Exception {
+        // Weighted towards the characters which interact: spaces, hyphens, periods, and the letters
+        // of the digraphs.
+        String alphabet = "abcDeghHIjlmnopqQrStuvwy'0123456789 ---...?!,;:()\"_/@=%&*+\u00FC";
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(16);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String s = sb.toString();
+            assertEquals(s, convertWithRegularExpressions(s), KlingonFontConverter.convert(s));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RandomEntrySampler.
+ */
+public class RandomEntrySamplerTest {
+
+    private static RandomEntrySampler buildSampler() {
+        return new RandomEntrySampler.Builder()
+                .add(10000, Arrays.asList(RandomEntrySampler.CATEGORY_ALL,
+                        RandomEntrySampler.CATEGORY_CANON, RandomEntrySampler.CATEGORY_VERB))
+                .add(10007, Arrays.asList(RandomEntrySampler.CATEGORY_ALL,
+                        RandomEntrySampler.CATEGORY_CANON, RandomEntrySampler.CATEGORY_NOUN))
+                .add(15100, Arrays.asList(RandomEntrySampler.CATEGORY_ALL))
+                .build();
+    }
+
+    @Test
+    public void sample_onlyPicksFromCategory() {
+        RandomEntrySampler sampler = buildSampler();
+        Random random = new Random(1);
+        Set<Integer> canon = new HashSet<Integer>();
+        for (int i = 0; i < 100; i++) {
+            canon.add(sampler.sample(RandomEntrySampler.CATEGORY_CANON, random));
+            assertEquals(10000, sampler.sample(RandomEntrySampler.CATEGORY_VERB, random));
+        }
+        // Both canon entries are picked, despite the gap between their IDs.
+        assertEquals(new HashSet<Integer>(Arrays.asList(10000, 10007)), canon);
+        assertEquals(3, sampler.size(RandomEntrySampler.CATEGORY_ALL));
+    }
+
+    @Test
+    public void sample_emptyCategory() {
+        assertEquals(RandomEntrySampler.NO_ENTRY,
+                buildSampler().sample(RandomEntrySampler.CATEGORY_SENTENCE, new Random()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sample_unknownCategory() {
+        buildSampler().sample("adverb", new Random());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ResultSessions.
+ */
+public class ResultSessionsTest {
+
+    @Test
+    public void get_checksEntryAtPosition() {
+        int[] entryIds = {10003, 10042, 10007};
+        long sessionId = ResultSessions.register(entryIds);
+        assertNotEquals(ResultSessions.NO_SESSION, sessionId);
+        assertSame(entryIds, ResultSessions.get(sessionId, 1, "10042"));
+        // A stale intent whose entry isn't at its position doesn't get the session.
+        assertNull(ResultSessions.get(sessionId, 1, "10007"));
+        assertNull(ResultSessions.get(sessionId, 3, "10042"));
+        assertNull(ResultSessions.get(ResultSessions.NO_SESSION, 0, "10003"));
+    }
+}
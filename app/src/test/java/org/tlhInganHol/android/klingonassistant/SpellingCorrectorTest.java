@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SpellingCorrector.
+ */
+public class SpellingCorrectorTest {
+
+    private static SpellingCorrector buildCorrector() {
+        return SpellingCorrector.build(
+                "warrior",
+                "warrior (female), woman warrior",
+                "war, warfare",
+                "wary, be wary",
+                "honour, honor",
+                "Krieger, Kriegerin");
+    }
+
+    @Test
+    public void correctsMisspelledWords() {
+        SpellingCorrector corrector = buildCorrector();
+        assertEquals("warrior", corrector.correct("warior"));
+        assertEquals("warrior", corrector.correct("Wrarior"));
+        assertEquals("female", corrector.correct("fmeale"));
+        assertEquals("krieger", corrector.correct("kreiger"));
+        // "wars" is one edit from both "war" and "wary", but "wary" is more frequent.
+        assertEquals("wary", corrector.correct("wars"));
+    }
+
+    @Test
+    public void leavesOtherWordsAlone() {
+        SpellingCorrector corrector = buildCorrector();
+        assertNull(corrector.correct("warrior"));
+        assertNull(corrector.correct("woman"));
+        assertNull(corrector.correct("xyzzy"));
+        assertNull(corrector.correct("wa"));
+        assertNull(corrector.correct("wa'rior"));
+    }
+
+    @Test
+    public void survivesSaving() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        buildCorrector().writeTo(new DataOutputStream(bytes));
+        SpellingCorrector corrector = SpellingCorrector.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals("warrior", corrector.correct("warior"));
+        assertNull(corrector.correct("warrior"));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for XifanHolExpander.
+ */
+public class XifanHolExpanderTest {
+
+    // The entry names with {ng} + {H} or {n} + {gh}, at the time the exceptions were hard-coded.
+    private static final List<String> ENTRY_NAMES = Arrays.asList(
+            "chungHa'wI'", "mangHom", "qengHoD", "tungHa'", "vengHom",
+            "Hanghuq", "nenghep", "QIngheb", "tlhonghaD", "ngeng", "Qong");
+
+    // The chain of replacements which the expander replaces, used as a reference.
+    private static String expandWithRegularExpressions(String shorthand, boolean swapQs) {
+        if (swapQs) {
+            shorthand = shorthand.replaceAll("q", "Q").replaceAll("k", "q");
+        }
+        return shorthand
+                .replaceAll("ngH", "NGH")
+                .replaceAll("h", "H")
+                .replaceAll("cH", "ch")
+                .replaceAll("gH", "gh")
+                .replaceAll("tlH", "tlh")
+                .replaceAll("g", "gX")
+                .replaceAll("gXh", "gh")
+                .replaceAll("ngX", "ng")
+                .replaceAll("gX", "gh")
+                .replaceAll("NGH", "ngH")
+                .replaceAll("c", "cX")
+                .replaceAll("cXh", "ch")
+                .replaceAll("cX", "ch")
+                .replaceAll("d", "D")
+                .replaceAll("f", "ng")
+                .replaceAll("i", "I")
+                .replaceAll("k", "Q")
+                .replaceAll("s", "S")
+                .replaceAll("z", "'")
+                .replaceAll("x", "tlh")
+                .replaceAll("(chung|mang|qeng|tung|veng)h", "$1H")
+                .replaceAll("Hanguq", "Hanghuq")
+                .replaceAll("nengep", "nenghep")
+                .replaceAll("QIngeb", "QIngheb")
+                .replaceAll("tlhongaD", "tlhonghaD");
+    }
+
+    @Test
+    public void buildExceptions_derivesExceptionsFromEntryNames() throws Exception {
+        Map<String, String> exceptions = XifanHolExpander.buildExceptions(ENTRY_NAMES);
+        assertEquals("mangH", exceptions.get("mangh"));
+        assertEquals("nenghep", exceptions.get("nengep"));
+        assertEquals("tlhonghaD", exceptions.get("tlhongaD"));
+        assertEquals(9, exceptions.size());
+    }
+
+    @Test
+    public void expand_resolvesAmbiguousNgh() throws Exception {
+        XifanHolExpander expander =
+                new XifanHolExpander(false, XifanHolExpander.buildExceptions(ENTRY_NAMES));
+        assertEquals("mangHom", expander.expand("manghom"));
+        assertEquals("nenghep", expander.expand("nengep"));
+        assertEquals("tlhonghaD", expander.expand("xongad"));
+        assertEquals("QIngheb", expander.expand("kingeb"));
+        assertEquals("tlhIngan Hol", expander.expand("xifan hol"));
+    }
+
+    @Test
+    public void expand_matchesRegularExpressions() throws Exception {
+        Map<String, String> exceptions = XifanHolExpander.buildExceptions(ENTRY_NAMES);
+        String alphabet = "abcdefghijklmnopqrstuvwxyzDHIQS' ";
+        Random random = new Random(42);
+        for (boolean swapQs : new boolean[] {false, true}) {
+            XifanHolExpander expander = new XifanHolExpander(swapQs, exceptions);
+            for (int i = 0; i < 20000; i++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(12);
+                for (int j = 0; j < length; j++) {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                String shorthand = sb.toString();
+                assertEquals(shorthand, expandWithRegularExpressions(shorthand, swapQs),
+                        expander.expand(shorthand));
+            }
+        }
+    }
+}
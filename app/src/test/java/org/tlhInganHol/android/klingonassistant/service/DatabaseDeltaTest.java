@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for UpdateManifest and DatabaseDelta, read from a directory standing in for the
+ * update server.
+ */
+public class DatabaseDeltaTest {
+
+    @Rule
+    public TemporaryFolder mServer = new TemporaryFolder();
+
+    private final UpdateSource mSource = new UpdateSource() {
+        @Override
+        public InputStream open(String path) throws IOException {
+            return new FileInputStream(new File(mServer.getRoot(), path));
+        }
+    };
+
+    private void writeFile(String path, String contents, boolean gzip) throws IOException {
+        File file = new File(mServer.getRoot(), path);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        out.write(contents.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private void writeManifest() throws IOException {
+        writeFile("manifest.json",
+                "{\"Android-4\": {"
+                        + "\"latest\": \"2022.03.01a\","
+                        + "\"2022.01.01a\": {\"path\": \"qawHaq-2022.01.01a.db.zip\", \"extra\": 15070,"
+                        + " \"deltas\": {\"2021.11.09a\": \"deltas/a-b.json.gz\"}},"
+                        + "\"2022.02.01a\": {\"path\": \"qawHaq-2022.02.01a.db.zip\", \"extra\": 15075,"
+                        + " \"deltas\": {\"2022.01.01a\": \"deltas/b-c.json.gz\"}},"
+                        + "\"2022.03.01a\": {\"path\": \"qawHaq-2022.03.01a.db.zip\", \"extra\": 15080,"
+                        + " \"deltas\": {\"2022.02.01a\": \"deltas/c-d.json.gz\","
+                        + " \"2022.01.01a\": \"deltas/b-d.json.gz\"}}"
+                        + "}}",
+                /* gzip */ false);
+    }
+
+    @Test
+    public void findsShortestDeltaChain() throws Exception {
+        writeManifest();
+        UpdateManifest manifest = UpdateManifest.read(mSource);
+        assertEquals("2022.03.01a", manifest.getLatestVersion());
+        assertEquals(15080, manifest.getFirstExtraEntryId("2022.03.01a"));
+        assertEquals("qawHaq-2022.03.01a.db.zip", manifest.getPath("2022.03.01a"));
+
+        assertEquals(Arrays.asList("deltas/c-d.json.gz"),
+                manifest.findDeltaChain("2022.02.01a", "2022.03.01a"));
+        // Going through 2022.01.01a skips a step compared to going through 2022.02.01a.
+        assertEquals(Arrays.asList("deltas/a-b.json.gz", "deltas/b-d.json.gz"),
+                manifest.findDeltaChain("2021.11.09a", "2022.03.01a"));
+    }
+
+    @Test
+    public void fallsBackWithoutDeltaChain() throws Exception {
+        writeManifest();
+        UpdateManifest manifest = UpdateManifest.read(mSource);
+        assertNull(manifest.findDeltaChain("2021.06.01a", "2022.03.01a"));
+        assertNull(manifest.findDeltaChain("2022.03.01a", "2022.04.01a"));
+    }
+
+    @Test
+    public void readsDelta() throws Exception {
+        writeFile("deltas/c-d.json.gz",
+                "{\"from\": \"2022.02.01a\", \"to\": \"2022.03.01a\", \"deleted\": [10123, 10456],"
+                        + " \"rows\": [{\"_id\": 10007, \"entry_name\": \"Qapla'\"}]}",
+                /* gzip */ true);
+        DatabaseDelta delta = DatabaseDelta.read(mSource, "deltas/c-d.json.gz");
+        assertEquals("2022.02.01a", delta.getFromVersion());
+        assertEquals("2022.03.01a", delta.getToVersion());
+        assertArrayEquals(new int[] {10123, 10456}, delta.getDeletedIds());
+        assertEquals(1, delta.getRows().size());
+        assertEquals("Qapla'", delta.getRows().get(0).getString("entry_name"));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for HttpFetcher, against a local HTTP server which supports conditional requests and
+ * gzip.
+ */
+public class HttpFetcherTest {
+
+    private static final String BODY = "{\"kword\": \"Qapla'\", \"type\": \"excl\"}";
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Tue, 09 Nov 2021 00:00:00 GMT";
+
+    private HttpServer mServer;
+    private URL mUrl;
+    private int mBodiesSent = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/kwotd", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+                if (ETAG.equals(ifNoneMatch) || LAST_MODIFIED.equals(ifModifiedSince)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = BODY.getBytes("UTF-8");
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                    gzip.write(body);
+                    gzip.close();
+                    body = bytes.toByteArray();
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+                mBodiesSent++;
+            }
+        });
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/kwotd");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void fetchesGzippedBodyWithValidators() throws Exception {
+        HttpFetcher.Response response = HttpFetcher.fetch(mUrl, null, null, 1024);
+        assertFalse(response.isNotModified());
+        assertEquals(BODY, response.getBody());
+        assertEquals(ETAG, response.getETag());
+        assertEquals(LAST_MODIFIED, response.getLastModified());
+    }
+
+    @Test
+    public void unchangedResourceIsNotModified() throws Exception {
+        HttpFetcher.Response response = HttpFetcher.fetch(mUrl, null, null, 1024);
+        HttpFetcher.Response again =
+                HttpFetcher.fetch(mUrl, response.getETag(), response.getLastModified(), 1024);
+        assertTrue(again.isNotModified());
+        assertNull(again.getBody());
+        assertEquals(ETAG, again.getETag());
+        assertEquals(1, mBodiesSent);
+
+        // Either validator is enough.
+        assertTrue(HttpFetcher.fetch(mUrl, null, LAST_MODIFIED, 1024).isNotModified());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTooLongBody() throws Exception {
+        HttpFetcher.fetch(mUrl, null, null, 10);
+    }
+}
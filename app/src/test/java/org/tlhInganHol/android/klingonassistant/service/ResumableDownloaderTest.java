@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2026 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ResumableDownloader, against a local HTTP server which supports Range requests
+ * and can be made to drop the connection partway through a response.
+ */
+public class ResumableDownloaderTest {
+
+    private static final int FILE_LENGTH = 200 * 1024;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private HttpServer mServer;
+    private URL mUrl;
+    private byte[] mContents;
+
+    // The number of bytes after which to drop each of the next connections, and the ranges asked
+    // for so far.
+    private final List<Integer> mDropAfter = new ArrayList<Integer>();
+    private final List<String> mRanges = new ArrayList<String>();
+
+    @Before
+    public void setUp() throws Exception {
+        mContents = new byte[FILE_LENGTH];
+        new Random(42).nextBytes(mContents);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/qawHaq.zip", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                mRanges.add(range);
+                int start = range == null ? 0 : Integer.parseInt(range.replaceAll("\\D", ""));
+                if (range != null) {
+                    exchange.getResponseHeaders().add("Content-Range",
+                            "bytes " + start + "-" + (FILE_LENGTH - 1) + "/" + FILE_LENGTH);
+                }
+                exchange.sendResponseHeaders(range == null ? 200 : 206, FILE_LENGTH - start);
+                OutputStream out = exchange.getResponseBody();
+                int end = mDropAfter.isEmpty() ? FILE_LENGTH : start + mDropAfter.remove(0);
+                out.write(mContents, start, end - start);
+                out.flush();
+                // Closing the exchange before the whole body is sent drops the connection.
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/qawHaq.zip");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    private String sha256() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(mContents)) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void resumesAfterDroppedConnection() throws Exception {
+        File file = new File(mFolder.getRoot(), "qawHaq.zip.part");
+        mDropAfter.add(50 * 1024);
+        new ResumableDownloader(FILE_LENGTH).download(mUrl, file, sha256(), null);
+        assertArrayEquals(mContents, Files.readAllBytes(file.toPath()));
+        assertEquals(2, mRanges.size());
+        assertNull(mRanges.get(0));
+        assertEquals("bytes=" + (50 * 1024) + "-", mRanges.get(1));
+    }
+
+    @Test
+    public void resumesPreviousPartialDownload() throws Exception {
+        File file = new File(mFolder.getRoot(), "qawHaq.zip.part");
+        byte[] partial = new byte[FILE_LENGTH / 4];
+        System.arraycopy(mContents, 0, partial, 0, partial.length);
+        Files.write(file.toPath(), partial);
+        new ResumableDownloader(FILE_LENGTH).download(mUrl, file, sha256(), null);
+        assertArrayEquals(mContents, Files.readAllBytes(file.toPath()));
+        assertEquals("bytes=" + partial.length + "-", mRanges.get(0));
+    }
+
+    @Test
+    public void rejectsWrongChecksum() throws Exception {
+        File file = new File(mFolder.getRoot(), "qawHaq.zip.part");
+        try {
+            new ResumableDownloader(FILE_LENGTH).download(mUrl, file, "0123456789abcdef", null);
+            fail("Expected the checksum to be wrong.");
+        } catch (IOException e) {
+            assertFalse(file.exists());
+        }
+    }
+
+    @Test
+    public void rejectsTooLongDownload() throws Exception {
+        File file = new File(mFolder.getRoot(), "qawHaq.zip.part");
+        try {
+            new ResumableDownloader(FILE_LENGTH - 1).download(mUrl, file, sha256(), null);
+            fail("Expected the download to be too long.");
+        } catch (IOException e) {
+            assertFalse(file.exists());
+        }
+    }
+}
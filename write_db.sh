@@ -5,5 +5,6 @@ git stash push --quiet
 git reset --hard
 ./generate_db.sh --noninteractive
 cp qawHaq.db ../app/src/main/assets/
+shasum -a 256 qawHaq.db | cut -d " " -f 1 > ../app/src/main/assets/qawHaq.db.sha256
 ./stats.sh
 cd ..